@@ -0,0 +1,31 @@
+package kieranbrown.bitemp.database;
+
+import org.apache.commons.lang3.Validate;
+
+/*
+ * SQL aggregate expressions for use as columns in SelectQueryBuilder.select, typically alongside groupBy
+ */
+public final class Aggregates {
+    private Aggregates() {
+    }
+
+    public static String count() {
+        return "count(*)";
+    }
+
+    public static String sum(final String column) {
+        return aggregate("sum", column);
+    }
+
+    public static String min(final String column) {
+        return aggregate("min", column);
+    }
+
+    public static String max(final String column) {
+        return aggregate("max", column);
+    }
+
+    private static String aggregate(final String function, final String column) {
+        return function + "(" + Validate.notBlank(column, "column cannot be null/blank") + ")";
+    }
+}
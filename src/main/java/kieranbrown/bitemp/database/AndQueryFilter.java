@@ -22,7 +22,34 @@ public class AndQueryFilter implements QueryFilter {
     }
 
     public String getFilters() {
-        final List<String> filters = filterList.map(QueryFilter::getFilters);
+        return join(filterList.map(QueryFilter::getFilters));
+    }
+
+    @Override
+    public String getParameterisedFilters() {
+        return join(filterList.map(QueryFilter::getParameterisedFilters));
+    }
+
+    @Override
+    public List<Object> getParameters() {
+        return filterList.flatMap(QueryFilter::getParameters);
+    }
+
+    @Override
+    public QueryShape getShape() {
+        return QueryShape.of("AND", filterList.map(QueryFilter::getShape));
+    }
+
+    @Override
+    public void accept(final QueryFilterVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    public List<QueryFilter> getFilterList() {
+        return filterList;
+    }
+
+    private String join(final List<String> filters) {
         if (filters.length() == 0) {
             return "";
         } else if (filters.length() == 1) {
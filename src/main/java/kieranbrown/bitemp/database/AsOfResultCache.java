@@ -0,0 +1,180 @@
+package kieranbrown.bitemp.database;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import io.vavr.Tuple3;
+import io.vavr.collection.HashSet;
+import io.vavr.collection.List;
+import io.vavr.collection.Set;
+import io.vavr.control.Option;
+import kieranbrown.bitemp.models.BitemporalModel;
+import kieranbrown.bitemp.models.ModelCopier;
+import kieranbrown.bitemp.utils.QueryUtils;
+import org.apache.commons.lang3.Validate;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/*
+ * Results of entity queries that can no longer change because they only look at the past. Versioned writes only add
+ * to history: a new version starts now and closing a version moves its system_time_end from MARIADB_END_SYSTEM_TIME
+ * to now. So a query whose system time filters rule out every version starting from now on, and accept or reject
+ * every end from now to the end of time alike, always matches the same versions. Of those only the ones still open
+ * can change, when they are closed, so results holding an open version are not cached either. In practice this caches
+ * systemTimeAsOf and systemTimeBetween with times before now over history that has since been superseded, and never
+ * queries open to the present or using CURRENT_TIMESTAMP.
+ *
+ * Not every write is versioned. Physical deletes remove closed versions and a physical valid time delete cuts
+ * valid_time_end in place, rewriting history that may be cached. Cached results are kept correct through these by
+ * invalidation alone: writes made through the query builders invalidate the entries for their class before and after
+ * their statements run, and again once their transaction completes so rows it rolls back are not left cached. Writes
+ * made any other way, e.g. by another process, are not seen and need invalidateAll.
+ *
+ * Entries are keyed on the class and the shape and parameters of the optimised filters, and weighed by their rows so
+ * the cache holds about maximumRows rows however many queries that is. Now is read from the application's clock while
+ * the database stamps the versions, so the two are assumed to agree.
+ */
+final class AsOfResultCache {
+    private static final long MAXIMUM_ROWS = 100_000;
+    private static final Set<String> SYSTEM_TIME_COLUMNS = HashSet.of("system_time_start", "system_time_end");
+
+    private static final AsOfResultCache SHARED = new AsOfResultCache(MAXIMUM_ROWS, Clock.systemDefaultZone());
+
+    private final Cache<List<Object>, List<?>> results;
+    private final Clock clock;
+    //bumped by every invalidation, so a query that ran across one does not put what it read
+    private final AtomicLong generation;
+
+    AsOfResultCache(final long maximumRows, final Clock clock) {
+        Validate.isTrue(maximumRows > 0, "maximumRows must be positive");
+        //an entry costs one more than its rows so empty results still count
+        this.results = CacheBuilder.newBuilder()
+                .maximumWeight(maximumRows)
+                .<List<Object>, List<?>>weigher((key, value) -> 1 + value.length())
+                .recordStats()
+                .build();
+        this.clock = requireNonNull(clock, "clock cannot be null");
+        this.generation = new AtomicLong();
+    }
+
+    static AsOfResultCache shared() {
+        return SHARED;
+    }
+
+    /*
+     * The cached results of the filters if there are any, otherwise the results of the query, which are cached when
+     * they cannot change. The filters should be optimised, so that equivalent queries share an entry. Each call returns
+     * its own copies of the rows.
+     */
+    @SuppressWarnings("unchecked")
+    <T extends BitemporalModel<T>> List<T> get(final Class<T> clazz, final List<QueryFilter> filters, final Supplier<List<T>> query) {
+        requireNonNull(clazz, "clazz cannot be null");
+        requireNonNull(query, "query cannot be null");
+        final LocalDateTime now = LocalDateTime.now(clock);
+        final Option<List<Object>> key = key(clazz, filters, now);
+        if (key.isEmpty()) {
+            return query.get();
+        }
+        final ModelCopier<T> copier = ModelCopier.forClass(clazz);
+        final List<T> cached = (List<T>) results.getIfPresent(key.get());
+        if (cached != null) {
+            return cached.map(copier::copy);
+        }
+        final long before = generation.get();
+        final List<T> rows = query.get();
+        if (rows.forAll(x -> x.getSystemTimeEnd().isBefore(now)) && generation.get() == before) {
+            results.put(key.get(), rows.map(copier::copy));
+        }
+        return rows;
+    }
+
+    /*
+     * Drops the entries for the class now, and once the current transaction completes if there is one. Writers call this
+     * before and after their statements. The first call drops what was cached before the write, the second whatever a
+     * query put while the statements ran, and a query still running across either sees the generation move and does
+     * not put what it read.
+     */
+    void invalidate(final Class<?> clazz) {
+        requireNonNull(clazz, "clazz cannot be null");
+        invalidateNow(clazz);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(final int status) {
+                    invalidateNow(clazz);
+                }
+            });
+        }
+    }
+
+    void invalidateAll() {
+        generation.incrementAndGet();
+        results.invalidateAll();
+    }
+
+    CacheStats stats() {
+        return results.stats();
+    }
+
+    long size() {
+        return results.size();
+    }
+
+    private void invalidateNow(final Class<?> clazz) {
+        generation.incrementAndGet();
+        results.asMap().keySet().removeIf(x -> x.head() == clazz);
+    }
+
+    /*
+     * None if the filters can match versions that are yet to be written or closed. Times are compared as epoch
+     * microseconds, as PeriodBounds gives them, so a bound before now's microsecond is before now.
+     */
+    static Option<List<Object>> key(final Class<?> clazz, final List<QueryFilter> filters, final LocalDateTime now) {
+        requireNonNull(filters, "filters cannot be null");
+        if (!filters.forAll(x -> isKeyable(x, true))) {
+            return Option.none();
+        }
+        final PeriodBounds bounds = PeriodBounds.systemTime(filters, now);
+        final long present = PeriodBounds.toEpochMicros(now);
+        //every version has system_time_start <= system_time_end
+        final boolean startsBefore = bounds.startMax < present || bounds.endMax < present;
+        final boolean endsAlike = bounds.endMax < present || bounds.endMin < present && bounds.endMax == Long.MAX_VALUE;
+        if (!startsBefore || !endsAlike) {
+            return Option.none();
+        }
+        return Option.of(List.of(clazz, filters.map(QueryFilter::getShape), filters.flatMap(QueryFilter::getParameters)));
+    }
+
+    /*
+     * Whether the filter's values identify it and the system time bounds taken from the conjuncts are all it says about
+     * system time. Filters of other types may not, so are never cached.
+     */
+    private static boolean isKeyable(final QueryFilter filter, final boolean conjunct) {
+        if (filter instanceof SingleQueryFilter) {
+            final Tuple3<String, QueryEquality, Object> x = ((SingleQueryFilter) filter).getFilter();
+            if (QueryUtils.isSqlExpression(x._3)) {
+                return false;
+            }
+            return !SYSTEM_TIME_COLUMNS.contains(x._1)
+                    || conjunct && x._2 != QueryEquality.DOES_NOT_EQUAL && x._3 instanceof LocalDateTime;
+        } else if (filter instanceof AndQueryFilter) {
+            return ((AndQueryFilter) filter).getFilterList().forAll(x -> isKeyable(x, conjunct));
+        } else if (filter instanceof OrQueryFilter) {
+            return ((OrQueryFilter) filter).getFilterList().forAll(x -> isKeyable(x, false));
+        } else if (filter instanceof NotQueryFilter) {
+            return isKeyable(((NotQueryFilter) filter).getFilter(), false);
+        } else if (filter instanceof KeySetQueryFilter) {
+            final KeySetQueryFilter keySet = (KeySetQueryFilter) filter;
+            //staged keys are not parameters, so two staged sets would share a key
+            return !keySet.isStaged() && !SYSTEM_TIME_COLUMNS.contains(keySet.getColumn());
+        }
+        return false;
+    }
+}
@@ -0,0 +1,327 @@
+package kieranbrown.bitemp.database;
+
+import kieranbrown.bitemp.models.BitemporalModel;
+import org.apache.commons.lang3.Validate;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/*
+ * Loads a CSV file in three stages joined by bounded queues: one thread reads the file into chunks of lines, a pool of
+ * workers decodes and validates each chunk, and a set of writers each ingests rows through an InsertQueryBuilder on a
+ * connection of its own, committing every batch. A full queue blocks the stage feeding it, so no more than
+ * queueCapacity chunks are waiting on any one queue however large the file is.
+ *
+ * The workers route each row to a writer by its id, so every version of an id is written by the same writer in turn.
+ * The overlap check only sees committed rows, so two writers given the same id could each pass it and both commit
+ * overlapping versions. Loads running concurrently with this one, in this process or another, are not checked against
+ * each other either, see OverlapValidator.
+ *
+ * Rows are written in no particular order, and a failure in any stage stops the others and leaves the batches already
+ * committed in place.
+ */
+public final class CsvIngestPipeline<T extends BitemporalModel<T>> {
+    /*
+     * Marks the end of the input on a queue. Each consumer takes exactly one.
+     */
+    private static final List<?> END = Collections.emptyList();
+
+    private final Class<T> queryClass;
+    private final Function<String, T> decoder;
+    private int skipLines;
+    private int chunkSize;
+    private int workers;
+    private int writers;
+    private int batchSize;
+    private int queueCapacity;
+
+    public CsvIngestPipeline(final Class<T> queryClass, final Function<String, T> decoder) {
+        this.queryClass = requireNonNull(queryClass, "class cannot be null");
+        this.decoder = requireNonNull(decoder, "decoder cannot be null");
+        this.skipLines = 1;
+        this.chunkSize = 1000;
+        this.workers = Runtime.getRuntime().availableProcessors();
+        this.writers = 4;
+        this.batchSize = 1000;
+        this.queueCapacity = 16;
+    }
+
+    /*
+     * The number of header lines to skip, 1 by default
+     */
+    public CsvIngestPipeline<T> skipLines(final int skipLines) {
+        Validate.isTrue(skipLines >= 0, "skipLines cannot be negative");
+        this.skipLines = skipLines;
+        return this;
+    }
+
+    public CsvIngestPipeline<T> chunkSize(final int chunkSize) {
+        Validate.isTrue(chunkSize > 0, "chunkSize must be positive");
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /*
+     * The number of decode workers, one per available processor by default
+     */
+    public CsvIngestPipeline<T> workers(final int workers) {
+        Validate.isTrue(workers > 0, "workers must be positive");
+        this.workers = workers;
+        return this;
+    }
+
+    /*
+     * The number of writers, each holding a connection for the whole load
+     */
+    public CsvIngestPipeline<T> writers(final int writers) {
+        Validate.isTrue(writers > 0, "writers must be positive");
+        this.writers = writers;
+        return this;
+    }
+
+    public CsvIngestPipeline<T> batchSize(final int batchSize) {
+        Validate.isTrue(batchSize > 0, "batchSize must be positive");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /*
+     * The number of chunks each queue holds before the stage feeding it blocks
+     */
+    public CsvIngestPipeline<T> queueCapacity(final int queueCapacity) {
+        Validate.isTrue(queueCapacity > 0, "queueCapacity must be positive");
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /*
+     * Loads every line of the input, closing it when done. The writers commit on their own connections, so this cannot
+     * be run inside a transaction.
+     */
+    public Result run(final EntityManager entityManager, final Reader input) throws IOException, InvalidPeriodException {
+        requireNonNull(entityManager, "entityManager cannot be null");
+        requireNonNull(input, "input cannot be null");
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("batches cannot be committed inside an existing transaction");
+        }
+
+        final BlockingQueue<List<String>> lines = new ArrayBlockingQueue<>(queueCapacity);
+        final List<BlockingQueue<List<T>>> rows = new ArrayList<>(writers);
+        for (int i = 0; i < writers; i++) {
+            rows.add(new ArrayBlockingQueue<>(queueCapacity));
+        }
+        final AtomicInteger runningWorkers = new AtomicInteger(workers);
+        final AtomicLong written = new AtomicLong();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(1 + workers + writers);
+        final CompletionService<Void> stages = new ExecutorCompletionService<>(executor);
+        final long start = System.nanoTime();
+        try (final BufferedReader reader = new BufferedReader(input)) {
+            stages.submit(stage(() -> read(reader, lines)));
+            for (int i = 0; i < workers; i++) {
+                stages.submit(stage(() -> decode(lines, rows, runningWorkers)));
+            }
+            for (final BlockingQueue<List<T>> writerRows : rows) {
+                stages.submit(stage(() -> write(entityManager, writerRows, written)));
+            }
+            for (int i = 0; i < 1 + workers + writers; i++) {
+                stages.take().get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while loading", e);
+        } catch (final ExecutionException e) {
+            throw rethrow(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Result(written.get(), System.nanoTime() - start);
+    }
+
+    private void read(final BufferedReader reader, final BlockingQueue<List<String>> lines) throws IOException, InterruptedException {
+        for (int i = 0; i < skipLines && reader.readLine() != null; i++) {
+            //skipped
+        }
+        List<String> chunk = new ArrayList<>(chunkSize);
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            chunk.add(line);
+            if (chunk.size() == chunkSize) {
+                lines.put(chunk);
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            lines.put(chunk);
+        }
+        for (int i = 0; i < workers; i++) {
+            lines.put(end());
+        }
+    }
+
+    /*
+     * Each chunk is split between the writers by id. The last worker to finish passes the end of the input on to the
+     * writers.
+     */
+    private void decode(final BlockingQueue<List<String>> lines, final List<BlockingQueue<List<T>>> rows,
+                        final AtomicInteger runningWorkers) throws InvalidPeriodException, InterruptedException {
+        for (List<String> chunk = lines.take(); chunk != END; chunk = lines.take()) {
+            final List<List<T>> decoded = new ArrayList<>(writers);
+            for (int i = 0; i < writers; i++) {
+                decoded.add(new ArrayList<>(chunk.size() / writers + 1));
+            }
+            for (final String line : chunk) {
+                final T row = InsertQueryBuilder.validate(decoder.apply(line));
+                decoded.get(Math.floorMod(row.getBitemporalKey().getId().hashCode(), writers)).add(row);
+            }
+            for (int i = 0; i < writers; i++) {
+                if (!decoded.get(i).isEmpty()) {
+                    rows.get(i).put(decoded.get(i));
+                }
+            }
+        }
+        if (runningWorkers.decrementAndGet() == 0) {
+            for (final BlockingQueue<List<T>> writerRows : rows) {
+                writerRows.put(end());
+            }
+        }
+    }
+
+    private void write(final EntityManager entityManager, final BlockingQueue<List<T>> rows, final AtomicLong written)
+            throws InvalidPeriodException {
+        written.addAndGet(QueryBuilderFactory.insert(queryClass)
+                .batchSize(batchSize)
+                .commitEachBatch()
+                .ingest(entityManager, new QueueIterator<>(rows)));
+    }
+
+    /*
+     * InvalidPeriodException is not an Exception, so it is carried out of the Callable in an ExecutionException
+     */
+    private static Callable<Void> stage(final Stage stage) {
+        return () -> {
+            try {
+                stage.run();
+            } catch (final InvalidPeriodException e) {
+                throw new ExecutionException(e);
+            }
+            return null;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> List<E> end() {
+        return (List<E>) END;
+    }
+
+    private static RuntimeException rethrow(final Throwable cause) throws IOException, InvalidPeriodException {
+        if (cause instanceof ExecutionException) {
+            return rethrow(cause.getCause());
+        } else if (cause instanceof IOException) {
+            throw (IOException) cause;
+        } else if (cause instanceof InvalidPeriodException) {
+            throw (InvalidPeriodException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalStateException("error loading rows", cause);
+    }
+
+    private interface Stage {
+        void run() throws Exception, InvalidPeriodException;
+    }
+
+    /*
+     * The rows of each chunk taken from the queue in turn, up to the end marker
+     */
+    private static final class QueueIterator<E> implements Iterator<E> {
+        private final BlockingQueue<List<E>> queue;
+        private Iterator<E> chunk;
+        private boolean ended;
+
+        private QueueIterator(final BlockingQueue<List<E>> queue) {
+            this.queue = queue;
+            this.chunk = Collections.emptyIterator();
+            this.ended = false;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!ended && !chunk.hasNext()) {
+                final List<E> next = take();
+                ended = next == END;
+                chunk = next.iterator();
+            }
+            return !ended;
+        }
+
+        @Override
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return chunk.next();
+        }
+
+        private List<E> take() {
+            try {
+                return queue.take();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for rows", e);
+            }
+        }
+    }
+
+    public static final class Result {
+        private final long rows;
+        private final long elapsedNanos;
+
+        private Result(final long rows, final long elapsedNanos) {
+            this.rows = rows;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rows * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%,d rows in %,d ms (%,.0f rows/sec)", rows, elapsedNanos / 1_000_000, getRowsPerSecond());
+        }
+    }
+}
@@ -2,8 +2,8 @@ package kieranbrown.bitemp.database;
 
 import io.vavr.collection.List;
 import kieranbrown.bitemp.models.BitemporalModel;
+import kieranbrown.bitemp.models.EntityMetamodel;
 
-import javax.persistence.Entity;
 
 import static java.util.Objects.requireNonNull;
 
@@ -25,15 +25,25 @@ class DeleteQuery<T extends BitemporalModel<T>> {
         return "DELETE FROM " +
                 getTableName() +
                 " WHERE " +
-                getFilters();
+                getFilters(QueryFilterRenderer.literal());
+    }
+
+    String buildParameterised() {
+        return "DELETE FROM " +
+                getTableName() +
+                " WHERE " +
+                getFilters(QueryFilterRenderer.parameterised());
+    }
+
+    List<Object> getParameters() {
+        return filters.flatMap(QueryFilter::getParameters);
     }
 
     private String getTableName() {
-        return queryClass.getAnnotation(Entity.class).name();
+        return EntityMetamodel.forClass(queryClass).getTableName();
     }
 
-    private String getFilters() {
-        return filters.map(QueryFilter::getFilters)
-                .mkString(" AND ");
+    private String getFilters(final QueryFilterRenderer renderer) {
+        return renderer.render(filters, " AND ").toString();
     }
 }
@@ -1,32 +1,33 @@
 package kieranbrown.bitemp.database;
 
-import com.rits.cloning.Cloner;
 import io.vavr.Tuple2;
 import io.vavr.collection.List;
 import io.vavr.control.Option;
-import kieranbrown.bitemp.models.BitemporalKey;
 import kieranbrown.bitemp.models.BitemporalModel;
+import kieranbrown.bitemp.models.EntityMetamodel;
+import kieranbrown.bitemp.utils.Constants;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.orm.jpa.EntityManagerFactoryInfo;
 
 import javax.persistence.EntityManager;
 import javax.sql.DataSource;
 import java.time.LocalDate;
-import java.util.ArrayList;
 
 import static java.util.Objects.requireNonNull;
+import static kieranbrown.bitemp.database.JdbcStatements.*;
 
 public class DeleteQueryBuilder<T extends BitemporalModel<T>> {
     private final Class<T> queryClass;
     private List<Tuple2<String, Object>> fields;
     private List<QueryFilter> filters;
     private Option<Tuple2<LocalDate, LocalDate>> validTimePeriod;
+    private boolean logical;
 
     public DeleteQueryBuilder(final Class<T> clazz) {
         queryClass = requireNonNull(clazz, "class cannot be null");
         this.fields = List.empty();
         this.filters = List.empty();
         this.validTimePeriod = Option.none();
+        this.logical = false;
     }
 
     public DeleteQueryBuilder<T> forValidTimePeriod(final LocalDate startDate, final LocalDate endDate) {
@@ -34,6 +35,15 @@ public class DeleteQueryBuilder<T extends BitemporalModel<T>> {
         return this;
     }
 
+    /*
+     * Ends the system time of the current version of each matching row instead of removing it, so the rows stay in the
+     * table as history and drop out of queries as of now
+     */
+    public DeleteQueryBuilder<T> logically() {
+        this.logical = true;
+        return this;
+    }
+
     public DeleteQueryBuilder<T> where(final QueryFilter queryFilter) {
         this.filters = this.filters.append(queryFilter);
         return this;
@@ -41,8 +51,18 @@ public class DeleteQueryBuilder<T extends BitemporalModel<T>> {
 
     public void execute(final EntityManager entityManager) throws InvalidPeriodException {
         final DataSource dataSource = getDataSource(entityManager);
-        validTimePeriod.peek(validTime -> updateValidTimePeriod(validTime, entityManager, dataSource))
-                .onEmpty(() -> update(dataSource));
+        AsOfResultCache.shared().invalidate(queryClass);
+        try {
+            if (logical) {
+                validTimePeriod.peek(validTime -> closeValidTimePeriod(validTime, dataSource))
+                        .onEmpty(() -> close(dataSource));
+                return;
+            }
+            validTimePeriod.peek(validTime -> updateValidTimePeriod(validTime, entityManager, dataSource))
+                    .onEmpty(() -> update(dataSource));
+        } finally {
+            AsOfResultCache.shared().invalidate(queryClass);
+        }
 
 //        final List<T> results = new SelectQueryBuilder<>(queryClass).where(filters)
 //                .execute(entityManager)
@@ -64,71 +84,135 @@ public class DeleteQueryBuilder<T extends BitemporalModel<T>> {
 //        new JdbcTemplate(dataSource).execute(updateQuery);
     }
 
+    /*
+     * Applies the delete to the versions held in the store. Deleting a period removes just that period from each
+     * matching version, leaving the parts either side of it.
+     */
+    public void execute(final InMemoryStore<T> store) throws InvalidPeriodException {
+        requireNonNull(store, "store cannot be null");
+        if (logical) {
+            validTimePeriod.peek(validTime -> store.closeValidTimePeriod(filters, validTime._1, validTime._2))
+                    .onEmpty(() -> store.close(filters));
+            return;
+        }
+        validTimePeriod.peek(validTime -> store.deleteValidTimePeriod(filters, validTime._1, validTime._2))
+                .onEmpty(() -> store.delete(filters));
+    }
+
+    /*
+     * Removes the period from every matching row overlapping it, all in one transaction so a failure part way leaves
+     * nothing changed:
+     *
+     *   1. rows ending after the period get a copy covering [end, valid_time_end), which does not overlap the period
+     *   2. rows starting before the period are cut at its start
+     *   3. the rows left overlapping the period, those starting inside it, are deleted
+     *
+     * Matching rows of ids with no row overlapping the period are then deleted whole.
+     */
     private void updateValidTimePeriod(final Tuple2<LocalDate, LocalDate> validTime, final EntityManager entityManager, final DataSource dataSource) {
-        final SelectQueryBuilder<T> selectQueryBuilder = new SelectQueryBuilder<>(queryClass).where(filters);
-        final List<T> noTimeResults = selectQueryBuilder.execute(entityManager).getResults();
-        final List<T> timeResults = selectQueryBuilder.validTimeOverlaps(validTime._1, validTime._2).execute(entityManager).getResults();
-
-        if (timeResults.length() > 0) {
-            timeResults.forEach(entityManager::detach);
-
-            final String firstSql = new UpdateQuery<>(queryClass)
-                    .addFields(List.of(new Tuple2<>("valid_time_end", validTime._1)))
-                    .addFilters(filters.append(
-                            new OrQueryFilter(timeResults.map(y -> new SingleQueryFilter("id", QueryEquality.EQUALS, y.getBitemporalKey().getId())))
-                    ))
-                    .build();
-            new JdbcTemplate(dataSource).execute(firstSql);
-
-            final java.util.List<T> toInsert = new ArrayList<>();
-
-            timeResults.forEach(result -> {
-                final BitemporalKey key = result.getBitemporalKey();
-
-                toInsert.add(new Cloner().deepClone(result).setBitemporalKey(new BitemporalKey.Builder()
-                        .setTradeId(key.getId())
-                        .setValidTimeStart(validTime._2)
-                        .setValidTimeEnd(key.getValidTimeEnd())
-                        .build()));
-            });
-
-            try {
-
-                new JdbcTemplate(dataSource).execute(new DeleteQuery<>(queryClass)
-                        .addFilters(
-                                List.of(
-                                        new OrQueryFilter(
-                                                List.ofAll(timeResults).map(x -> new SingleQueryFilter("id", QueryEquality.EQUALS, x.getBitemporalKey().getId()))),
-                                        SelectQueryBuilder.validTimeOverlaps.apply(validTime._1, validTime._2)))
-                        .build()
-                );
-
-                new InsertQueryBuilder<>(queryClass)
-                        .fromAll(List.ofAll(toInsert))
-                        .execute(entityManager);
-            } catch (final InvalidPeriodException e) {
+        final LocalDate start = validTime._1;
+        final LocalDate end = validTime._2;
+        final List<QueryFilter> overlapping = filters.append(SelectQueryBuilder.validTimeOverlaps.apply(start, end));
+
+        final InsertSelectQuery<T> copyQuery = new InsertSelectQuery<>(queryClass)
+                .addCopiedColumns(EntityMetamodel.forClass(queryClass).getDataColumnNames().prepend("id").append("valid_time_end"))
+                .addFields(List.of(
+                        new Tuple2<>("valid_time_start", end),
+                        new Tuple2<>("system_time_start", "CURRENT_TIMESTAMP"),
+                        new Tuple2<>("system_time_end", Constants.MARIADB_END_SYSTEM_TIME)))
+                .addFilters(overlapping.append(new SingleQueryFilter("valid_time_end", QueryEquality.GREATER_THAN, end)));
+        final UpdateQuery<T> cutQuery = new UpdateQuery<>(queryClass)
+                .addFields(List.of(new Tuple2<>("valid_time_end", start)))
+                .addFilters(overlapping.append(new SingleQueryFilter("valid_time_start", QueryEquality.LESS_THAN, start)));
+        final DeleteQuery<T> deleteQuery = new DeleteQuery<>(queryClass)
+                .addFilters(overlapping.append(new SingleQueryFilter("valid_time_start", QueryEquality.GREATER_THAN_EQUAL_TO, start)));
+
+        inTransaction(dataSource, () -> {
+            final SelectQueryBuilder<T> selectQueryBuilder = new SelectQueryBuilder<>(queryClass).where(filters);
+            final List<T> noTimeResults = selectQueryBuilder.executeUnmanaged(entityManager).getResults();
+            final List<T> timeResults = selectQueryBuilder.validTimeOverlaps(start, end).executeUnmanaged(entityManager).getResults();
+
+            if (timeResults.length() > 0) {
+                executeUpdate(dataSource, copyQuery.buildParameterised(), copyQuery.getParameters());
+                executeUpdate(dataSource, cutQuery.buildParameterised(), cutQuery.getParameters());
+                executeUpdate(dataSource, deleteQuery.buildParameterised(), deleteQuery.getParameters());
             }
-        }
-        if (noTimeResults.removeAll(timeResults).length() > 0) {
-            final String updateOthersSql = new DeleteQuery<>(queryClass)
-                    .addFilters(filters.append(
-                            new NotQueryFilter(new OrQueryFilter(timeResults.map(y -> new SingleQueryFilter("id", QueryEquality.EQUALS, y.getBitemporalKey().getId()))))
-                    ))
-                    .build();
-            new JdbcTemplate(dataSource).execute(updateOthersSql);
-        }
+            if (noTimeResults.removeAll(timeResults).length() > 0) {
+                final DeleteQuery<T> deleteOthersQuery = new DeleteQuery<>(queryClass)
+                        .addFilters(filters.append(
+                                new NotQueryFilter(getIds(timeResults, dataSource))
+                        ));
+                executeUpdate(dataSource, deleteOthersQuery.buildParameterised(), deleteOthersQuery.getParameters());
+            }
+        });
     }
 
     private void update(final DataSource dataSource) {
-        final String sql = new DeleteQuery<>(queryClass)
-                .addFilters(filters)
-                .build();
+        final DeleteQuery<T> query = new DeleteQuery<>(queryClass)
+                .addFilters(filters);
+
+        executeUpdate(dataSource, query.buildParameterised(), query.getParameters());
+    }
+
+    /*
+     * A single UPDATE, finding the open versions through the index on system_time_end
+     */
+    private void close(final DataSource dataSource) {
+        final UpdateQuery<T> query = new UpdateQuery<>(queryClass)
+                .addFields(List.of(new Tuple2<>("system_time_end", "CURRENT_TIMESTAMP")))
+                .addFilters(filters.append(isOpen()));
+
+        executeUpdate(dataSource, query.buildParameterised(), query.getParameters());
+    }
+
+    /*
+     * The parts of each open version either side of the period are copied as new open versions, then every open
+     * version overlapping the period is closed. Neither copy overlaps the period, so the close leaves them alone.
+     */
+    private void closeValidTimePeriod(final Tuple2<LocalDate, LocalDate> validTime, final DataSource dataSource) {
+        final LocalDate start = validTime._1;
+        final LocalDate end = validTime._2;
+        final List<QueryFilter> overlapping = filters.append(isOpen())
+                .append(SelectQueryBuilder.validTimeOverlaps.apply(start, end));
+        final List<String> columns = EntityMetamodel.forClass(queryClass).getDataColumnNames().prepend("id");
+        final List<Tuple2<String, Object>> newSystemTime = List.of(
+                new Tuple2<>("system_time_start", "CURRENT_TIMESTAMP"),
+                new Tuple2<>("system_time_end", Constants.MARIADB_END_SYSTEM_TIME));
+
+        final List<InsertSelectQuery<T>> copies = List.of(
+                new InsertSelectQuery<>(queryClass)
+                        .addCopiedColumns(columns.append("valid_time_start"))
+                        .addFields(newSystemTime.prepend(new Tuple2<>("valid_time_end", start)))
+                        .addFilters(overlapping.append(new SingleQueryFilter("valid_time_start", QueryEquality.LESS_THAN, start))),
+                new InsertSelectQuery<>(queryClass)
+                        .addCopiedColumns(columns.append("valid_time_end"))
+                        .addFields(newSystemTime.prepend(new Tuple2<>("valid_time_start", end)))
+                        .addFilters(overlapping.append(new SingleQueryFilter("valid_time_end", QueryEquality.GREATER_THAN, end))));
+
+        final UpdateQuery<T> closeQuery = new UpdateQuery<>(queryClass)
+                .addFields(List.of(new Tuple2<>("system_time_end", "CURRENT_TIMESTAMP")))
+                .addFilters(overlapping);
+
+        inTransaction(dataSource, () -> {
+            copies.forEach(x -> executeUpdate(dataSource, x.buildParameterised(), x.getParameters()));
+            executeUpdate(dataSource, closeQuery.buildParameterised(), closeQuery.getParameters());
+        });
+    }
 
-//        System.out.println(sql);
-        new JdbcTemplate(dataSource).execute(sql);
+    /*
+     * Compared against the clock rather than the end of time sentinel, which does not survive the round trip through
+     * every database's timestamp precision unchanged
+     */
+    private SingleQueryFilter isOpen() {
+        return new SingleQueryFilter("system_time_end", QueryEquality.GREATER_THAN, "CURRENT_TIMESTAMP");
     }
 
-    private DataSource getDataSource(final EntityManager entityManager) {
-        return ((EntityManagerFactoryInfo) entityManager.getEntityManagerFactory()).getDataSource();
+    /*
+     * Staged into a temporary table when there are enough ids, which is only seen by the connection that staged it.
+     * Called inside the transaction the statements using it run in, so they all share that connection.
+     */
+    private KeySetQueryFilter getIds(final List<T> results, final DataSource dataSource) {
+        return new KeySetQueryFilter("id", results.map(x -> x.getBitemporalKey().getId()))
+                .stage(new JdbcTemplate(dataSource), EntityMetamodel.forClass(queryClass).getTableName() + "_keys");
     }
 }
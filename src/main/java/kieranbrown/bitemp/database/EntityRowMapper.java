@@ -0,0 +1,49 @@
+package kieranbrown.bitemp.database;
+
+import kieranbrown.bitemp.models.BitemporalModel;
+import kieranbrown.bitemp.models.EntityMetamodel;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Locale;
+
+import static java.util.Objects.requireNonNull;
+
+/*
+ * Maps rows straight into new models through the entity metamodel, without Hibernate hydrating them or tracking them in
+ * a persistence context. Result set columns are matched to the model's columns by label, ignoring case, when the first
+ * row is mapped; columns the model does not have are skipped.
+ */
+public class EntityRowMapper<T extends BitemporalModel<T>> implements RowMapper<T> {
+    private final EntityMetamodel<T> metamodel;
+    private EntityMetamodel.Attribute<T>[] attributes;
+
+    public EntityRowMapper(final Class<T> clazz) {
+        this.metamodel = EntityMetamodel.forClass(requireNonNull(clazz, "class cannot be null"));
+    }
+
+    @Override
+    public T mapRow(final ResultSet resultSet, final int rowNum) throws SQLException {
+        if (attributes == null) {
+            attributes = resolve(resultSet.getMetaData());
+        }
+        final T model = metamodel.newInstance();
+        for (int i = 0; i < attributes.length; i++) {
+            if (attributes[i] != null) {
+                attributes[i].read(resultSet, i + 1, model);
+            }
+        }
+        return model;
+    }
+
+    @SuppressWarnings("unchecked")
+    private EntityMetamodel.Attribute<T>[] resolve(final ResultSetMetaData metaData) throws SQLException {
+        final EntityMetamodel.Attribute<T>[] resolved = new EntityMetamodel.Attribute[metaData.getColumnCount()];
+        for (int i = 0; i < resolved.length; i++) {
+            resolved[i] = metamodel.getColumn(metaData.getColumnLabel(i + 1).toLowerCase(Locale.ROOT)).getOrNull();
+        }
+        return resolved;
+    }
+}
@@ -0,0 +1,262 @@
+package kieranbrown.bitemp.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/*
+ * A two dimensional index of versions as rectangles of valid time by system time. Entries are packed into a static
+ * R-tree: sorted by the Hilbert value of their centre, which keeps rectangles close in both dimensions close in the
+ * array, and grouped NODE_CAPACITY at a time into nodes, and those nodes into parents, up to a single root. Each node
+ * keeps the range of starts and ends of its entries in both dimensions, so a search can skip any node that cannot hold
+ * a match.
+ *
+ * Changes go into a delta buffer of added entries and a set of removed ones, both checked on every search, and the tree
+ * is packed again once they grow past a fraction of its size.
+ *
+ * Values are matched by identity when removed. Not thread safe.
+ */
+final class HilbertRTree<V> {
+    private static final int NODE_CAPACITY = 32;
+    private static final int MIN_DELTA = 1024;
+    private static final int DELTA_FRACTION = 8;
+    private static final int HILBERT_ORDER = 16;
+
+    private Entry<V>[] entries;
+    //bounds[level][node * 8 + i], level 0 being the nodes over the entries
+    private long[][] bounds;
+    private final Map<V, Entry<V>> added;
+    private final Set<V> removed;
+    private int size;
+
+    HilbertRTree() {
+        this.added = new IdentityHashMap<>();
+        this.removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        clear();
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    void clear() {
+        entries = new Entry[0];
+        bounds = new long[0][];
+        added.clear();
+        removed.clear();
+        size = 0;
+    }
+
+    void add(final long validStart, final long validEnd, final long systemStart, final long systemEnd, final V value) {
+        added.put(value, new Entry<>(new long[]{validStart, validEnd, systemStart, systemEnd}, value));
+        size++;
+        packIfNeeded();
+    }
+
+    /*
+     * The value must have been added, with the same coordinates
+     */
+    void remove(final V value) {
+        if (added.remove(value) == null) {
+            removed.add(value);
+        }
+        size--;
+        packIfNeeded();
+    }
+
+    /*
+     * Every value whose valid time is within the first bounds and whose system time is within the second
+     */
+    void search(final PeriodBounds validTime, final PeriodBounds systemTime, final Consumer<? super V> consumer) {
+        final long[] query = {
+                validTime.startMin, validTime.startMax, validTime.endMin, validTime.endMax,
+                systemTime.startMin, systemTime.startMax, systemTime.endMin, systemTime.endMax};
+        if (bounds.length > 0) {
+            search(bounds.length - 1, 0, query, consumer);
+        }
+        for (final Entry<V> x : added.values()) {
+            if (matches(x.rectangle, query)) {
+                consumer.accept(x.value);
+            }
+        }
+    }
+
+    private void search(final int level, final int node, final long[] query, final Consumer<? super V> consumer) {
+        if (!intersects(bounds[level], node, query)) {
+            return;
+        }
+        final int first = node * NODE_CAPACITY;
+        if (level == 0) {
+            final int last = Math.min(first + NODE_CAPACITY, entries.length);
+            for (int i = first; i < last; i++) {
+                final Entry<V> x = entries[i];
+                if (matches(x.rectangle, query) && (removed.isEmpty() || !removed.contains(x.value))) {
+                    consumer.accept(x.value);
+                }
+            }
+            return;
+        }
+        final int last = Math.min(first + NODE_CAPACITY, bounds[level - 1].length / 8);
+        for (int i = first; i < last; i++) {
+            search(level - 1, i, query, consumer);
+        }
+    }
+
+    /*
+     * A node can hold a match if, in both dimensions, its starts and the query's start range overlap and so do its ends
+     * and the query's end range
+     */
+    private static boolean intersects(final long[] bounds, final int node, final long[] query) {
+        final int offset = node * 8;
+        for (int i = 0; i < 8; i += 2) {
+            if (bounds[offset + i] > query[i + 1] || bounds[offset + i + 1] < query[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(final long[] rectangle, final long[] query) {
+        for (int i = 0; i < 4; i++) {
+            if (rectangle[i] < query[i * 2] || rectangle[i] > query[i * 2 + 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void packIfNeeded() {
+        if (added.size() + removed.size() > Math.max(MIN_DELTA, entries.length / DELTA_FRACTION)) {
+            pack();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void pack() {
+        final java.util.List<Entry<V>> live = new ArrayList<>(size);
+        for (final Entry<V> x : entries) {
+            if (!removed.contains(x.value)) {
+                live.add(x);
+            }
+        }
+        live.addAll(added.values());
+        added.clear();
+        removed.clear();
+
+        sortByHilbertValue(live);
+        entries = live.toArray(new Entry[0]);
+
+        final java.util.List<long[]> levels = new ArrayList<>();
+        long[] level = packEntries(entries);
+        levels.add(level);
+        while (level.length > 8) {
+            level = packNodes(level);
+            levels.add(level);
+        }
+        bounds = entries.length == 0 ? new long[0][] : levels.toArray(new long[0][]);
+    }
+
+    private static <V> long[] packEntries(final Entry<V>[] entries) {
+        final long[] level = new long[(entries.length + NODE_CAPACITY - 1) / NODE_CAPACITY * 8];
+        for (int i = 0; i < entries.length; i++) {
+            final int offset = i / NODE_CAPACITY * 8;
+            final long[] rectangle = entries[i].rectangle;
+            for (int j = 0; j < 4; j++) {
+                extend(level, offset + j * 2, rectangle[j], rectangle[j], i % NODE_CAPACITY == 0);
+            }
+        }
+        return level;
+    }
+
+    private static long[] packNodes(final long[] children) {
+        final int count = children.length / 8;
+        final long[] level = new long[(count + NODE_CAPACITY - 1) / NODE_CAPACITY * 8];
+        for (int i = 0; i < count; i++) {
+            final int offset = i / NODE_CAPACITY * 8;
+            for (int j = 0; j < 8; j += 2) {
+                extend(level, offset + j, children[i * 8 + j], children[i * 8 + j + 1], i % NODE_CAPACITY == 0);
+            }
+        }
+        return level;
+    }
+
+    private static void extend(final long[] level, final int index, final long min, final long max, final boolean first) {
+        level[index] = first ? min : Math.min(level[index], min);
+        level[index + 1] = first ? max : Math.max(level[index + 1], max);
+    }
+
+    /*
+     * Centres are scaled onto a 2^HILBERT_ORDER grid over the range they cover before taking their distance along the
+     * curve
+     */
+    private static <V> void sortByHilbertValue(final java.util.List<Entry<V>> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        final double[] range = {Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (final Entry<V> x : entries) {
+            range[0] = Math.min(range[0], x.validCentre());
+            range[1] = Math.max(range[1], x.validCentre());
+            range[2] = Math.min(range[2], x.systemCentre());
+            range[3] = Math.max(range[3], x.systemCentre());
+        }
+        final int cells = (1 << HILBERT_ORDER) - 1;
+        for (final Entry<V> x : entries) {
+            x.hilbert = hilbert(scale(x.validCentre(), range[0], range[1], cells), scale(x.systemCentre(), range[2], range[3], cells));
+        }
+        entries.sort(Comparator.comparingLong(x -> x.hilbert));
+    }
+
+    private static int scale(final double value, final double min, final double max, final int cells) {
+        return max == min ? 0 : (int) ((value - min) / (max - min) * cells);
+    }
+
+    /*
+     * The distance of (x, y) along a Hilbert curve filling the 2^HILBERT_ORDER square
+     */
+    static long hilbert(final int x, final int y) {
+        final int side = 1 << HILBERT_ORDER;
+        int cx = x;
+        int cy = y;
+        long distance = 0;
+        for (int s = side >> 1; s > 0; s >>= 1) {
+            final int rx = (cx & s) > 0 ? 1 : 0;
+            final int ry = (cy & s) > 0 ? 1 : 0;
+            distance += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    cx = side - 1 - cx;
+                    cy = side - 1 - cy;
+                }
+                final int swap = cx;
+                cx = cy;
+                cy = swap;
+            }
+        }
+        return distance;
+    }
+
+    private static final class Entry<V> {
+        private final long[] rectangle;
+        private final V value;
+        private long hilbert;
+
+        private Entry(final long[] rectangle, final V value) {
+            this.rectangle = rectangle;
+            this.value = value;
+        }
+
+        private double validCentre() {
+            return rectangle[0] / 2.0 + rectangle[1] / 2.0;
+        }
+
+        private double systemCentre() {
+            return rectangle[2] / 2.0 + rectangle[3] / 2.0;
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.Tuple2;
+import io.vavr.Tuple3;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import kieranbrown.bitemp.models.BitemporalKey;
+import kieranbrown.bitemp.models.BitemporalModel;
+import kieranbrown.bitemp.models.EntityMetamodel;
+import kieranbrown.bitemp.models.ModelCopier;
+import kieranbrown.bitemp.utils.Constants;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/*
+ * A heap resident table of versions that the query builders can be executed against in place of an EntityManager,
+ * with the builders' filters and temporal methods compiled by QueryFilterCompiler and evaluated in memory. It can be
+ * used as a test double, or loaded with the hot set of a table to answer reads without a round trip.
+ *
+ * Versions are indexed by valid time in an IntervalTree per id and one over every version, so filters on id = x or an
+ * id key set only look at those ids, and comparisons on valid_time_start and valid_time_end (the valid time methods of
+ * SelectQueryBuilder among them) only look at the versions in range. Filters that also bound system time, as
+ * systemTimeAsOf and the other system time methods do, are answered from a HilbertRTree over both dimensions instead,
+ * which skips the closed versions of history an as of query would otherwise have to step over.
+ *
+ * Every version is a copy owned by the store and is never changed once added: changes replace it with a new copy, and
+ * results are copies too. CURRENT_TIMESTAMP is the store's clock, read once per operation. Reads share a lock and
+ * writes take it exclusively.
+ */
+public class InMemoryStore<T extends BitemporalModel<T>> {
+    private static final Comparator<BitemporalKey> BY_ID_AND_START = Comparator
+            .comparing(BitemporalKey::getId)
+            .thenComparing(BitemporalKey::getValidTimeStart);
+
+    private final EntityMetamodel<T> metamodel;
+    private final ModelCopier<T> copier;
+    private final Clock clock;
+    private final ReadWriteLock lock;
+    private final Map<UUID, IntervalTree<T>> versionsById;
+    private final IntervalTree<T> validTimeIndex;
+    private final HilbertRTree<T> bitemporalIndex;
+
+    public InMemoryStore(final Class<T> clazz) {
+        this(clazz, Clock.systemDefaultZone());
+    }
+
+    public InMemoryStore(final Class<T> clazz, final Clock clock) {
+        requireNonNull(clazz, "class cannot be null");
+        this.metamodel = EntityMetamodel.forClass(clazz);
+        this.copier = ModelCopier.forClass(clazz);
+        this.clock = requireNonNull(clock, "clock cannot be null");
+        this.lock = new ReentrantReadWriteLock();
+        this.versionsById = new LinkedHashMap<>();
+        this.validTimeIndex = new IntervalTree<>();
+        this.bitemporalIndex = new HilbertRTree<>();
+    }
+
+    /*
+     * Adds versions exactly as they are, system times included, e.g. rows read from the database with
+     * SelectQueryBuilder.executeUnmanaged. No validation is done.
+     */
+    public InMemoryStore<T> load(final Iterable<? extends T> rows) {
+        requireNonNull(rows, "rows cannot be null");
+        write(() -> rows.forEach(x -> add(copy(x))));
+        return this;
+    }
+
+    public int size() {
+        return read(validTimeIndex::size);
+    }
+
+    public void clear() {
+        write(() -> {
+            versionsById.clear();
+            validTimeIndex.clear();
+            bitemporalIndex.clear();
+        });
+    }
+
+    List<T> select(final List<QueryFilter> filters) {
+        return read(() -> {
+            final LocalDateTime now = now();
+            final Predicate<T> predicate = QueryFilterCompiler.compile(metamodel, filters, now);
+            final java.util.List<T> matches = new ArrayList<>();
+            for (final T x : candidates(filters, now)) {
+                if (predicate.test(x)) {
+                    matches.add(copy(x));
+                }
+            }
+            return List.ofAll(matches);
+        });
+    }
+
+    /*
+     * Rows are checked the same way InsertQueryBuilder checks them against the database, then added as open versions
+     * starting now
+     */
+    void insert(final java.util.List<T> rows) throws InvalidPeriodException {
+        lock.writeLock().lock();
+        try {
+            final LocalDateTime now = now();
+            checkOverlaps(rows, now);
+            for (final T row : rows) {
+                add(copy(row).setSystemTimeStart(now).setSystemTimeEnd(Constants.MARIADB_END_SYSTEM_TIME));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void update(final List<QueryFilter> filters, final List<Tuple2<String, Object>> fields) {
+        write(() -> {
+            final LocalDateTime now = now();
+            forEachMatch(filters, now, x -> replace(x, set(copy(x), fields, now)));
+        });
+    }
+
+    /*
+     * Splits each matching version overlapping the period at the period's bounds, as UpdateQueryBuilder does with SQL:
+     * the part before the period keeps the version, the part inside it gets the new values (as a new version if the
+     * original started before the period) and the part after it becomes a new version with the old values
+     */
+    void updateValidTimePeriod(final List<QueryFilter> filters, final List<Tuple2<String, Object>> fields,
+                               final LocalDate start, final LocalDate end) {
+        write(() -> {
+            final LocalDateTime now = now();
+            forEachMatch(overlapping(filters, start, end), now, x -> {
+                final BitemporalKey key = x.getBitemporalKey();
+                if (key.getValidTimeEnd().isAfter(end)) {
+                    add(open(withPeriod(x, end, key.getValidTimeEnd()), now));
+                }
+                final LocalDate middleEnd = key.getValidTimeEnd().isAfter(end) ? end : key.getValidTimeEnd();
+                if (key.getValidTimeStart().isBefore(start)) {
+                    add(open(set(withPeriod(x, start, middleEnd), fields, now), now));
+                    replace(x, withPeriod(x, key.getValidTimeStart(), start));
+                } else {
+                    replace(x, set(withPeriod(x, key.getValidTimeStart(), middleEnd), fields, now));
+                }
+            });
+        });
+    }
+
+    void delete(final List<QueryFilter> filters) {
+        write(() -> forEachMatch(filters, now(), this::remove));
+    }
+
+    /*
+     * Removes the period from each matching version overlapping it, leaving the parts either side. As
+     * DeleteQueryBuilder does with SQL, matching versions of ids with no version overlapping the period are removed
+     * whole.
+     */
+    void deleteValidTimePeriod(final List<QueryFilter> filters, final LocalDate start, final LocalDate end) {
+        write(() -> {
+            final LocalDateTime now = now();
+            final Set<UUID> cut = new HashSet<>();
+            final java.util.List<T> outside = new ArrayList<>();
+            forEachMatch(filters, now, x -> {
+                final BitemporalKey key = x.getBitemporalKey();
+                if (!key.getValidTimeStart().isBefore(end) || !key.getValidTimeEnd().isAfter(start)) {
+                    outside.add(x);
+                    return;
+                }
+                cut.add(key.getId());
+                if (key.getValidTimeEnd().isAfter(end)) {
+                    add(open(withPeriod(x, end, key.getValidTimeEnd()), now));
+                }
+                if (key.getValidTimeStart().isBefore(start)) {
+                    replace(x, withPeriod(x, key.getValidTimeStart(), start));
+                } else {
+                    remove(x);
+                }
+            });
+            outside.stream().filter(x -> !cut.contains(x.getBitemporalKey().getId())).forEach(this::remove);
+        });
+    }
+
+    void close(final List<QueryFilter> filters) {
+        write(() -> {
+            final LocalDateTime now = now();
+            forEachMatch(filters.append(isOpen()), now, x -> replace(x, copy(x).setSystemTimeEnd(now)));
+        });
+    }
+
+    /*
+     * The parts of each open version either side of the period become new open versions, then every open version
+     * overlapping the period is closed
+     */
+    void closeValidTimePeriod(final List<QueryFilter> filters, final LocalDate start, final LocalDate end) {
+        write(() -> {
+            final LocalDateTime now = now();
+            forEachMatch(overlapping(filters.append(isOpen()), start, end), now, x -> {
+                final BitemporalKey key = x.getBitemporalKey();
+                if (key.getValidTimeStart().isBefore(start)) {
+                    add(open(withPeriod(x, key.getValidTimeStart(), start), now));
+                }
+                if (key.getValidTimeEnd().isAfter(end)) {
+                    add(open(withPeriod(x, end, key.getValidTimeEnd()), now));
+                }
+                replace(x, copy(x).setSystemTimeEnd(now));
+            });
+        });
+    }
+
+    LocalDateTime now() {
+        return LocalDateTime.now(clock);
+    }
+
+    /*
+     * The matches are found before any are handed to the action, so versions the action adds are not revisited
+     */
+    private void forEachMatch(final List<QueryFilter> filters, final LocalDateTime now, final Consumer<T> action) {
+        final java.util.List<T> matches = new ArrayList<>();
+        final Predicate<T> predicate = QueryFilterCompiler.compile(metamodel, filters, now);
+        for (final T x : candidates(filters, now)) {
+            if (predicate.test(x)) {
+                matches.add(x);
+            }
+        }
+        matches.forEach(action);
+    }
+
+    /*
+     * The versions within the valid time bounds of the filters, taken from the index of each id a top level filter
+     * restricts the query to, or if there is no such filter from the index of both dimensions when system time is
+     * bounded and the valid time index otherwise
+     */
+    private Iterable<T> candidates(final List<QueryFilter> filters, final LocalDateTime now) {
+        final PeriodBounds bounds = PeriodBounds.validTime(filters);
+        final PeriodBounds systemTimeBounds = PeriodBounds.systemTime(filters, now);
+        if (bounds.isEmpty() || systemTimeBounds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final Option<List<UUID>> ids = filters.map(InMemoryStore::getIds).find(Option::isDefined).flatMap(x -> x);
+        final java.util.List<T> versions = new ArrayList<>();
+        if (ids.isEmpty() && systemTimeBounds.isBounded()) {
+            bitemporalIndex.search(bounds, systemTimeBounds, versions::add);
+            return versions;
+        }
+        if (ids.isEmpty() && !bounds.isBounded()) {
+            return validTimeIndex;
+        }
+        for (final IntervalTree<T> index : ids.isEmpty()
+                ? List.of(validTimeIndex)
+                : ids.get().distinct().flatMap(x -> Option.of(versionsById.get(x)))) {
+            index.search(bounds.startMin, bounds.startMax, bounds.endMin, bounds.endMax, versions::add);
+        }
+        return versions;
+    }
+
+    private static Option<List<UUID>> getIds(final QueryFilter filter) {
+        if (filter instanceof SingleQueryFilter) {
+            final Tuple3<String, QueryEquality, Object> single = ((SingleQueryFilter) filter).getFilter();
+            if ("id".equals(single._1) && single._2 == QueryEquality.EQUALS) {
+                return toUuid(single._3).map(List::of);
+            }
+        } else if (filter instanceof KeySetQueryFilter && "id".equals(((KeySetQueryFilter) filter).getColumn())) {
+            final List<Option<UUID>> keys = ((KeySetQueryFilter) filter).getKeys().map(InMemoryStore::toUuid);
+            return keys.exists(Option::isEmpty) ? Option.none() : Option.of(keys.map(Option::get));
+        }
+        return Option.none();
+    }
+
+    private static Option<UUID> toUuid(final Object value) {
+        if (value instanceof UUID) {
+            return Option.of((UUID) value);
+        }
+        return value instanceof String ? Option.of((String) value).toTry().map(UUID::fromString).toOption() : Option.none();
+    }
+
+    /*
+     * Sorts the new keys together with the open versions of the same ids by (id, valid_time_start) and sweeps them once
+     */
+    private void checkOverlaps(final java.util.List<T> rows, final LocalDateTime now) throws OverlappingKeyException {
+        final java.util.List<BitemporalKey> keys = new ArrayList<>();
+        final Set<UUID> ids = new HashSet<>();
+        for (final T row : rows) {
+            keys.add(row.getBitemporalKey());
+            ids.add(row.getBitemporalKey().getId());
+        }
+        for (final UUID id : ids) {
+            final IntervalTree<T> versions = versionsById.get(id);
+            if (versions == null) {
+                continue;
+            }
+            for (final T version : versions) {
+                if (version.getSystemTimeEnd().isAfter(now)) {
+                    keys.add(version.getBitemporalKey());
+                }
+            }
+        }
+        keys.sort(BY_ID_AND_START);
+
+        for (int i = 1; i < keys.size(); i++) {
+            final BitemporalKey previous = keys.get(i - 1);
+            final BitemporalKey current = keys.get(i);
+            if (current.getId().equals(previous.getId()) && current.getValidTimeStart().isBefore(previous.getValidTimeEnd())) {
+                throw new OverlappingKeyException(String.format("Valid Time overlaps another version for ID = '%s'", current.getId()));
+            }
+        }
+    }
+
+    private List<QueryFilter> overlapping(final List<QueryFilter> filters, final LocalDate start, final LocalDate end) {
+        return filters.append(SelectQueryBuilder.validTimeOverlaps.apply(start, end));
+    }
+
+    private static SingleQueryFilter isOpen() {
+        return new SingleQueryFilter("system_time_end", QueryEquality.GREATER_THAN, "CURRENT_TIMESTAMP");
+    }
+
+    private T set(final T row, final List<Tuple2<String, Object>> fields, final LocalDateTime now) {
+        for (final Tuple2<String, Object> field : fields) {
+            final EntityMetamodel.Attribute<T> column = QueryFilterEvaluator.getColumn(metamodel, field._1);
+            column.set(row, QueryFilterEvaluator.coerce(column.getType(), field._2, now));
+        }
+        return row;
+    }
+
+    private T open(final T row, final LocalDateTime now) {
+        return row.setSystemTimeStart(now).setSystemTimeEnd(Constants.MARIADB_END_SYSTEM_TIME);
+    }
+
+    private T withPeriod(final T row, final LocalDate start, final LocalDate end) {
+        return copier.copy(row).setBitemporalKey(new BitemporalKey.Builder()
+                .setTradeId(row.getBitemporalKey().getId())
+                .setValidTimeStart(start)
+                .setValidTimeEnd(end)
+                .build());
+    }
+
+    /*
+     * Copies share nothing mutable with the original, the key included, so either can be changed freely
+     */
+    private T copy(final T row) {
+        final BitemporalKey key = row.getBitemporalKey();
+        return withPeriod(row, key.getValidTimeStart(), key.getValidTimeEnd());
+    }
+
+    /*
+     * Every change goes through add and remove, which keep the id, valid time and bitemporal indexes in step
+     */
+    private void add(final T row) {
+        final BitemporalKey key = row.getBitemporalKey();
+        final long start = key.getValidTimeStart().toEpochDay();
+        final long end = key.getValidTimeEnd().toEpochDay();
+        versionsById.computeIfAbsent(key.getId(), x -> new IntervalTree<>()).add(start, end, row);
+        validTimeIndex.add(start, end, row);
+        bitemporalIndex.add(start, end, PeriodBounds.toEpochMicros(row.getSystemTimeStart()),
+                PeriodBounds.toEpochMicros(row.getSystemTimeEnd()), row);
+    }
+
+    private void remove(final T row) {
+        final BitemporalKey key = row.getBitemporalKey();
+        final long start = key.getValidTimeStart().toEpochDay();
+        final long end = key.getValidTimeEnd().toEpochDay();
+        final IntervalTree<T> versions = versionsById.get(key.getId());
+        if (versions != null && versions.remove(start, end, row)) {
+            validTimeIndex.remove(start, end, row);
+            bitemporalIndex.remove(row);
+            if (versions.isEmpty()) {
+                versionsById.remove(key.getId());
+            }
+        }
+    }
+
+    private void replace(final T current, final T replacement) {
+        remove(current);
+        add(replacement);
+    }
+
+    private <R> R read(final Supplier<R> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void write(final Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -3,9 +3,10 @@ package kieranbrown.bitemp.database;
 import io.vavr.Tuple2;
 import io.vavr.collection.List;
 import kieranbrown.bitemp.models.BitemporalModel;
+import kieranbrown.bitemp.models.EntityMetamodel;
 import kieranbrown.bitemp.utils.QueryUtils;
 
-import javax.persistence.Entity;
+import java.util.function.Function;
 
 import static java.util.Objects.requireNonNull;
 
@@ -29,20 +30,35 @@ class InsertQuery<T extends BitemporalModel<T>> {
                 " (" +
                 getFields() +
                 ") VALUES (" +
-                getValues() +
+                getValues(QueryUtils::toString) +
                 ")";
     }
 
+    String buildParameterised() {
+        return "INSERT INTO " +
+                getTableName() +
+                " (" +
+                getFields() +
+                ") VALUES (" +
+                getValues(QueryUtils::toPlaceholder) +
+                ")";
+    }
+
+    List<Object> getParameters() {
+        return fields.flatMap(x -> x.map(Tuple2::_2))
+                .filter(x -> !QueryUtils.isSqlExpression(x));
+    }
+
     private String getTableName() {
-        return queryClass.getAnnotation(Entity.class).name();
+        return EntityMetamodel.forClass(queryClass).getTableName();
     }
 
     private Object getFields() {
         return fields.get(0).map(Tuple2::_1).mkString(", ");
     }
 
-    private String getValues() {
-        return fields.map(x -> x.map(Tuple2::_2).map(QueryUtils::toString).mkString(", "))
+    private String getValues(final Function<Object, String> mapValue) {
+        return fields.map(x -> x.map(Tuple2::_2).map(mapValue).mkString(", "))
                 .mkString("), (");
     }
 }
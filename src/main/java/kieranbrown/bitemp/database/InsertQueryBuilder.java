@@ -3,24 +3,72 @@ package kieranbrown.bitemp.database;
 import io.vavr.Tuple2;
 import io.vavr.collection.List;
 import io.vavr.collection.Stream;
+import io.vavr.control.Option;
 import kieranbrown.bitemp.models.BitemporalKey;
 import kieranbrown.bitemp.models.BitemporalModel;
+import kieranbrown.bitemp.models.EntityMetamodel;
 import kieranbrown.bitemp.utils.Constants;
+import kieranbrown.bitemp.utils.QueryUtils;
+import org.apache.commons.lang3.Validate;
+import org.hibernate.Session;
+import org.springframework.orm.jpa.EntityManagerFactoryInfo;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import javax.persistence.Column;
 import javax.persistence.EntityManager;
-import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+import static java.util.Objects.requireNonNull;
 
 public class InsertQueryBuilder<T extends BitemporalModel<T>> {
+    /*
+     * Rows are written in fixed-size groups so that every full group shares the same statement text and stays well
+     * inside driver limits on the number of bind parameters
+     */
+    private static final int ROWS_PER_STATEMENT = 1000;
+
     private final Class<T> queryClass;
+    private final EntityMetamodel<T> metamodel;
+    private final OverlapValidator<T> overlapValidator;
     private InsertQuery<T> query;
     private Stream<T> objects;
+    private int batchSize;
+    private boolean commitBatches;
 
     InsertQueryBuilder(final Class<T> queryClass) {
         this.queryClass = queryClass;
+        this.metamodel = EntityMetamodel.forClass(queryClass);
+        this.overlapValidator = new OverlapValidator<>(queryClass);
         this.query = new InsertQuery<>(queryClass);
         objects = Stream.of();
+        batchSize = 0;
+        commitBatches = false;
+    }
+
+    /*
+     * Writes the rows through one single-row INSERT with addBatch/executeBatch, sending batchSize rows at a time,
+     * instead of as multi-row VALUES statements. The SQL text stays the same size however many rows there are.
+     */
+    public InsertQueryBuilder<T> batchSize(final int batchSize) {
+        Validate.isTrue(batchSize > 0, "batchSize must be positive");
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /*
+     * Commits after every batch, so a large load does not hold one long transaction open and a failure only loses the
+     * batch it happened in. Batches are written on a connection of their own, so this cannot be used inside a
+     * transaction.
+     */
+    public InsertQueryBuilder<T> commitEachBatch() {
+        this.commitBatches = true;
+        return this;
     }
 
     public InsertQueryBuilder<T> from(final T object) {
@@ -45,53 +93,192 @@ public class InsertQueryBuilder<T extends BitemporalModel<T>> {
     }
 
     public InsertQueryBuilder<T> execute(final EntityManager entityManager) throws InvalidPeriodException {
-        for (T x : objects) {
-            final BitemporalKey key = x.getBitemporalKey();
-            if (key.validTimeEnd.isBefore(key.validTimeStart)) {
-                throw new InvalidPeriodException(String.format("Valid Time End is before Start for ID = '%s'", key.getId()));
-            }
+        AsOfResultCache.shared().invalidate(queryClass);
+        try {
+            write(entityManager);
+        } finally {
+            AsOfResultCache.shared().invalidate(queryClass);
+        }
+        return this;
+    }
+
+    private void write(final EntityManager entityManager) throws InvalidPeriodException {
+        for (final T x : objects) {
+            validate(x);
+        }
+        if (batchSize > 0) {
+            ingestWindows(entityManager, objects.iterator());
+            reset();
+            return;
+        }
+        //bound straight onto the statement with the value codecs, on the connection of the current transaction
+        final Session session = entityManager.unwrap(Session.class);
+        for (final List<T> rows : objects.toList().grouped(ROWS_PER_STATEMENT)) {
+            checkOverlaps(session.doReturningWork(connection -> overlapValidator.findOverlap(connection, rows.asJava())));
+            query.addFields(rows.map(this::getFields));
+            final String sql = query.buildParameterised();
+            session.doWork(connection -> {
+                try (final PreparedStatement statement = connection.prepareStatement(sql)) {
+                    int index = 1;
+                    for (final T row : rows) {
+                        index = bind(statement, index, row);
+                    }
+                    statement.executeUpdate();
+                }
+            });
+            query = new InsertQuery<>(queryClass);
         }
-        query.addFields(getFields());
-        entityManager.createNativeQuery(query.build()).executeUpdate();
+        reset();
+    }
+
+    /*
+     * Adds the rows to the store as open versions starting now, checked the same way as rows written to the database
+     */
+    public InsertQueryBuilder<T> execute(final InMemoryStore<T> store) throws InvalidPeriodException {
+        requireNonNull(store, "store cannot be null");
+        for (final T x : objects) {
+            validate(x);
+        }
+        store.insert(objects.toJavaList());
         reset();
         return this;
     }
 
+    /*
+     * Writes rows as they are read, a window of batchSize rows (ROWS_PER_STATEMENT if no batch size is set) at a time,
+     * holding no more than one window in memory whatever the size of the input. Rows queued with from and fromAll are
+     * not included. Each window is validated as it is read and checked for overlapping versions before it is written, so
+     * an InvalidPeriodException leaves the windows before it written, and committed with commitEachBatch.
+     *
+     * Returns the number of rows written.
+     */
+    public long ingest(final EntityManager entityManager, final Iterator<? extends T> rows) throws InvalidPeriodException {
+        requireNonNull(entityManager, "entityManager cannot be null");
+        requireNonNull(rows, "rows cannot be null");
+        AsOfResultCache.shared().invalidate(queryClass);
+        try {
+            return ingestWindows(entityManager, rows);
+        } finally {
+            AsOfResultCache.shared().invalidate(queryClass);
+        }
+    }
+
+    private long ingestWindows(final EntityManager entityManager, final Iterator<? extends T> rows) throws InvalidPeriodException {
+        long written = 0;
+        if (!commitBatches) {
+            final Session session = entityManager.unwrap(Session.class);
+            for (java.util.List<T> window = nextWindow(rows); !window.isEmpty(); window = nextWindow(rows)) {
+                final java.util.List<T> batch = window;
+                checkOverlaps(session.doReturningWork(connection -> overlapValidator.findOverlap(connection, batch)));
+                session.doWork(connection -> writeBatch(connection, batch));
+                written += batch.size();
+            }
+            return written;
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("batches cannot be committed inside an existing transaction");
+        }
+        try (final Connection connection = ((EntityManagerFactoryInfo) entityManager.getEntityManagerFactory())
+                .getDataSource().getConnection()) {
+            final boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                for (java.util.List<T> window = nextWindow(rows); !window.isEmpty(); window = nextWindow(rows)) {
+                    checkOverlaps(overlapValidator.findOverlap(connection, window));
+                    writeBatch(connection, window);
+                    connection.commit();
+                    written += window.size();
+                }
+                return written;
+            } catch (final SQLException | RuntimeException | InvalidPeriodException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (final SQLException e) {
+            throw new IllegalStateException("error writing batch", e);
+        }
+    }
+
+    public long ingest(final EntityManager entityManager, final Spliterator<? extends T> rows) throws InvalidPeriodException {
+        return ingest(entityManager, Spliterators.iterator(requireNonNull(rows, "rows cannot be null")));
+    }
+
+    public long ingest(final EntityManager entityManager, final java.util.stream.Stream<? extends T> rows) throws InvalidPeriodException {
+        return ingest(entityManager, requireNonNull(rows, "rows cannot be null").iterator());
+    }
+
+    private java.util.List<T> nextWindow(final Iterator<? extends T> rows) throws InvalidPeriodException {
+        final int windowSize = batchSize > 0 ? batchSize : ROWS_PER_STATEMENT;
+        final java.util.List<T> window = new ArrayList<>(windowSize);
+        while (window.size() < windowSize && rows.hasNext()) {
+            window.add(validate(rows.next()));
+        }
+        return window;
+    }
+
+    private void writeBatch(final Connection connection, final java.util.List<T> rows) throws SQLException {
+        final String sql = new InsertQuery<>(queryClass).addFields(List.of(getFields(rows.get(0)))).buildParameterised();
+        try (final PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (final T row : rows) {
+                bind(statement, 1, row);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    static <T extends BitemporalModel<T>> T validate(final T row) throws InvalidPeriodException {
+        final BitemporalKey key = row.getBitemporalKey();
+        if (key.validTimeEnd.isBefore(key.validTimeStart)) {
+            throw new InvalidPeriodException(String.format("Valid Time End is before Start for ID = '%s'", key.getId()));
+        }
+        return row;
+    }
+
+    private static void checkOverlaps(final Option<BitemporalKey> overlap) throws OverlappingKeyException {
+        if (overlap.isDefined()) {
+            throw new OverlappingKeyException(String.format("Valid Time overlaps another version for ID = '%s'",
+                    overlap.get().getId()));
+        }
+    }
+
     private void reset() {
         objects = Stream.of();
         query = new InsertQuery<>(queryClass);
     }
 
-    private List<List<Tuple2<String, Object>>> getFields() {
-        return objects.map(o -> List.of(queryClass.getDeclaredFields())
-                .map(x -> new Tuple2<>(x, getFieldName(x)))
-                .map(x -> new Tuple2<>(getColumnName(x._1), getFieldValue(x._2, o)))
-                .appendAll(
-                        List.of(new Tuple2<>("id", o.getBitemporalKey().getId()),
-                                new Tuple2<>("valid_time_start", o.getBitemporalKey().getValidTimeStart()),
-                                new Tuple2<>("valid_time_end", o.getBitemporalKey().getValidTimeEnd()),
-                                new Tuple2<>("system_time_start", "CURRENT_TIMESTAMP"),
-                                new Tuple2<>("system_time_end", Constants.MARIADB_END_SYSTEM_TIME))))
-                .toList();
-    }
-
-    private String getFieldName(final Field field) {
-        return field.getName();
+    /*
+     * Every column of each row, with the system time overridden so the row starts now and is open
+     */
+    private List<Tuple2<String, Object>> getFields(final T object) {
+        return metamodel.getColumns().map(x -> new Tuple2<>(x.getName(), getValue(x, object)));
     }
 
-    private Object getFieldValue(final String fieldName, final T object) {
-        try {
-            final Field declaredField = queryClass.getDeclaredField(fieldName);
-            declaredField.setAccessible(true);
-            return declaredField.get(object);
-        } catch (final NoSuchFieldException | IllegalAccessException e) {
-            e.printStackTrace();
-            throw new RuntimeException(String.format("error retrieving value for field %s", fieldName), e);
+    private Object getValue(final EntityMetamodel.Attribute<T> column, final T object) {
+        switch (column.getName()) {
+            case "system_time_start":
+                return "CURRENT_TIMESTAMP";
+            case "system_time_end":
+                return Constants.MARIADB_END_SYSTEM_TIME;
+            default:
+                return column.get(object);
         }
     }
 
-    private String getColumnName(final Field field) {
-        final String annotationName = field.getAnnotation(Column.class).name();
-        return "".equals(annotationName) ? field.getName() : annotationName;
+    /*
+     * Binds the row's values from the given index on with the codec of each column, straight from the model without
+     * building any intermediate tuples. Returns the index after the last one bound.
+     */
+    private int bind(final PreparedStatement statement, final int index, final T row) throws SQLException {
+        int next = index;
+        for (final EntityMetamodel.Attribute<T> column : metamodel.getColumns()) {
+            final Object value = getValue(column, row);
+            if (!QueryUtils.isSqlExpression(value)) {
+                column.getCodec().bind(statement, next++, value);
+            }
+        }
+        return next;
     }
 }
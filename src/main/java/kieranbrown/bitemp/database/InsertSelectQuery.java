@@ -0,0 +1,78 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
+import kieranbrown.bitemp.models.BitemporalModel;
+import kieranbrown.bitemp.models.EntityMetamodel;
+import kieranbrown.bitemp.utils.QueryUtils;
+
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/*
+ * INSERT INTO table (...) SELECT ... FROM table WHERE ..., copying rows of a table back into itself. Copied columns are
+ * carried over from the source row as they are, fields are written with the given value for every copied row.
+ */
+class InsertSelectQuery<T extends BitemporalModel<T>> {
+    private final Class<T> queryClass;
+    private List<String> copiedColumns;
+    private List<Tuple2<String, Object>> fields;
+    private List<QueryFilter> filters;
+
+    InsertSelectQuery(final Class<T> clazz) {
+        this.queryClass = requireNonNull(clazz, "class cannot be null");
+        this.copiedColumns = List.empty();
+        this.fields = List.empty();
+        this.filters = List.empty();
+    }
+
+    InsertSelectQuery<T> addCopiedColumns(final List<String> columns) {
+        this.copiedColumns = this.copiedColumns.appendAll(columns);
+        return this;
+    }
+
+    InsertSelectQuery<T> addFields(final List<Tuple2<String, Object>> fields) {
+        this.fields = this.fields.appendAll(fields);
+        return this;
+    }
+
+    InsertSelectQuery<T> addFilters(final List<QueryFilter> filters) {
+        this.filters = this.filters.appendAll(filters);
+        return this;
+    }
+
+    String build() {
+        return build(QueryUtils::toString, QueryFilterRenderer.literal());
+    }
+
+    String buildParameterised() {
+        return build(QueryUtils::toPlaceholder, QueryFilterRenderer.parameterised());
+    }
+
+    List<Object> getParameters() {
+        return fields.map(Tuple2::_2)
+                .filter(x -> !QueryUtils.isSqlExpression(x))
+                .appendAll(filters.flatMap(QueryFilter::getParameters));
+    }
+
+    private String build(final Function<Object, String> mapValue, final QueryFilterRenderer renderer) {
+        return "INSERT INTO " +
+                getTableName() +
+                " (" +
+                copiedColumns.appendAll(fields.map(Tuple2::_1)).mkString(", ") +
+                ") SELECT " +
+                copiedColumns.appendAll(fields.map(Tuple2::_2).map(mapValue)).mkString(", ") +
+                " FROM " +
+                getTableName() +
+                getFilters(renderer);
+    }
+
+    private String getTableName() {
+        return EntityMetamodel.forClass(queryClass).getTableName();
+    }
+
+    private String getFilters(final QueryFilterRenderer renderer) {
+        return filters.isEmpty() ? "" : " WHERE " + renderer.render(filters, " AND ");
+    }
+}
@@ -0,0 +1,250 @@
+package kieranbrown.bitemp.database;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/*
+ * An AVL tree of [start, end) intervals ordered by (start, end). Each node holds the values of one distinct interval
+ * and the largest and smallest end in its subtree. A search gives a range for the start and a range for the end. The
+ * start range is walked as a range of keys, and subtrees whose ends all fall outside the end range are skipped. That
+ * covers each Allen relation the query builders use (overlaps, contains, precedes, succeeds, equals and the immediate
+ * forms) in O(log n + k) for k matches on start ranges, and close to it for the end bounds in practice.
+ *
+ * Values are matched by identity when removed. Not thread safe.
+ */
+final class IntervalTree<V> implements Iterable<V> {
+    private Node<V> root;
+    private int size;
+    private boolean removed;
+
+    IntervalTree() {
+        this.root = null;
+        this.size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        root = null;
+        size = 0;
+    }
+
+    void add(final long start, final long end, final V value) {
+        root = add(root, start, end, value);
+        size++;
+    }
+
+    /*
+     * Returns whether the value was found under the interval
+     */
+    boolean remove(final long start, final long end, final V value) {
+        removed = false;
+        root = remove(root, start, end, value);
+        if (removed) {
+            size--;
+        }
+        return removed;
+    }
+
+    /*
+     * Every value whose interval has startMin <= start <= startMax and endMin <= end <= endMax, in interval order
+     */
+    void search(final long startMin, final long startMax, final long endMin, final long endMax, final Consumer<? super V> consumer) {
+        search(root, startMin, startMax, endMin, endMax, consumer);
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+        return new Iterator<V>() {
+            private final Deque<Node<V>> path = new ArrayDeque<>();
+            private Iterator<V> values = Collections.emptyIterator();
+
+            {
+                descend(root);
+            }
+
+            @Override
+            public boolean hasNext() {
+                while (!values.hasNext() && !path.isEmpty()) {
+                    final Node<V> next = path.pop();
+                    descend(next.right);
+                    values = next.values.iterator();
+                }
+                return values.hasNext();
+            }
+
+            @Override
+            public V next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return values.next();
+            }
+
+            private void descend(final Node<V> node) {
+                for (Node<V> x = node; x != null; x = x.left) {
+                    path.push(x);
+                }
+            }
+        };
+    }
+
+    private static <V> void search(final Node<V> node, final long startMin, final long startMax, final long endMin,
+                                   final long endMax, final Consumer<? super V> consumer) {
+        if (node == null || node.maxEnd < endMin || node.minEnd > endMax) {
+            return;
+        }
+        //keys to the left are smaller, but can share the node's start
+        if (startMin <= node.start) {
+            search(node.left, startMin, startMax, endMin, endMax, consumer);
+        }
+        if (node.start >= startMin && node.start <= startMax && node.end >= endMin && node.end <= endMax) {
+            node.values.forEach(consumer);
+        }
+        if (startMax >= node.start) {
+            search(node.right, startMin, startMax, endMin, endMax, consumer);
+        }
+    }
+
+    private static <V> Node<V> add(final Node<V> node, final long start, final long end, final V value) {
+        if (node == null) {
+            return new Node<>(start, end, value);
+        }
+        final int comparison = compare(start, end, node);
+        if (comparison == 0) {
+            node.values.add(value);
+            return node;
+        } else if (comparison < 0) {
+            node.left = add(node.left, start, end, value);
+        } else {
+            node.right = add(node.right, start, end, value);
+        }
+        return balance(node);
+    }
+
+    private Node<V> remove(final Node<V> node, final long start, final long end, final V value) {
+        if (node == null) {
+            return null;
+        }
+        final int comparison = compare(start, end, node);
+        if (comparison < 0) {
+            node.left = remove(node.left, start, end, value);
+        } else if (comparison > 0) {
+            node.right = remove(node.right, start, end, value);
+        } else {
+            removed = node.values.removeIf(x -> x == value);
+            if (!node.values.isEmpty()) {
+                return node;
+            }
+            if (node.left == null || node.right == null) {
+                return node.left == null ? node.right : node.left;
+            }
+            Node<V> successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = removeMin(node.right);
+            successor.left = node.left;
+            return balance(successor);
+        }
+        return balance(node);
+    }
+
+    private static <V> Node<V> removeMin(final Node<V> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        node.left = removeMin(node.left);
+        return balance(node);
+    }
+
+    private static <V> int compare(final long start, final long end, final Node<V> node) {
+        final int comparison = Long.compare(start, node.start);
+        return comparison != 0 ? comparison : Long.compare(end, node.end);
+    }
+
+    private static <V> Node<V> balance(final Node<V> node) {
+        update(node);
+        final int factor = height(node.left) - height(node.right);
+        if (factor > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        } else if (factor < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private static <V> Node<V> rotateRight(final Node<V> node) {
+        final Node<V> left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private static <V> Node<V> rotateLeft(final Node<V> node) {
+        final Node<V> right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    private static <V> void update(final Node<V> node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        node.maxEnd = node.end;
+        node.minEnd = node.end;
+        if (node.left != null) {
+            node.maxEnd = Math.max(node.maxEnd, node.left.maxEnd);
+            node.minEnd = Math.min(node.minEnd, node.left.minEnd);
+        }
+        if (node.right != null) {
+            node.maxEnd = Math.max(node.maxEnd, node.right.maxEnd);
+            node.minEnd = Math.min(node.minEnd, node.right.minEnd);
+        }
+    }
+
+    private static int height(final Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static final class Node<V> {
+        private final long start;
+        private final long end;
+        private final java.util.List<V> values;
+        private Node<V> left;
+        private Node<V> right;
+        private int height;
+        private long maxEnd;
+        private long minEnd;
+
+        private Node(final long start, final long end, final V value) {
+            this.start = start;
+            this.end = end;
+            this.values = new ArrayList<>(1);
+            this.values.add(value);
+            this.height = 1;
+            this.maxEnd = end;
+            this.minEnd = end;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.collection.List;
+import kieranbrown.bitemp.utils.QueryUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.orm.jpa.EntityManagerFactoryInfo;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+
+/*
+ * The JDBC plumbing the update and delete builders share for running their statements outside Hibernate
+ */
+final class JdbcStatements {
+
+    private JdbcStatements() {
+    }
+
+    static DataSource getDataSource(final EntityManager entityManager) {
+        return ((EntityManagerFactoryInfo) entityManager.getEntityManagerFactory()).getDataSource();
+    }
+
+    static void executeUpdate(final DataSource dataSource, final String sql, final List<Object> parameters) {
+        new JdbcTemplate(dataSource).update(sql, statement -> QueryUtils.bindAll(statement, parameters));
+    }
+
+    /*
+     * Joins the transaction the caller is already in, otherwise runs the statements in one of their own so they are
+     * never left half done
+     */
+    static void inTransaction(final DataSource dataSource, final Runnable statements) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            statements.run();
+        } else {
+            new TransactionTemplate(new DataSourceTransactionManager(dataSource))
+                    .executeWithoutResult(status -> statements.run());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import kieranbrown.bitemp.utils.QueryUtils;
+import org.apache.commons.lang3.Validate;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static java.util.Objects.requireNonNull;
+
+/*
+ * Matches rows whose column is one of a set of keys. Small sets render as id IN (...) lists, split into chunks to stay
+ * inside driver and optimiser limits on list size. Sets larger than STAGING_THRESHOLD can be staged into a session
+ * temporary table, after which the filter renders as a semi-join against it and binds no parameters.
+ *
+ * Inline sets bind their keys padded with repeats of the last one, up to a power of two within a chunk and a whole
+ * number of chunks beyond it, so sets of similar sizes share a shape and with it a cached template.
+ */
+public class KeySetQueryFilter implements QueryFilter {
+    static final int CHUNK_SIZE = 1000;
+    static final int STAGING_THRESHOLD = 10000;
+
+    static final String KEY_COLUMN = "key_value";
+
+    private final String column;
+    private final List<Object> keys;
+    private final Option<String> stagedTable;
+
+    public KeySetQueryFilter(final String column, final Iterable<?> keys) {
+        this(column, List.<Object>ofAll(requireNonNull(keys, "keys cannot be null")).distinct(), Option.none());
+    }
+
+    private KeySetQueryFilter(final String column, final List<Object> keys, final Option<String> stagedTable) {
+        this.column = Validate.notBlank(column, "column cannot be null/blank");
+        this.keys = keys;
+        this.stagedTable = stagedTable;
+    }
+
+    /*
+     * Loads the keys into the given temporary table if there are enough of them to be worth it, returning a filter that
+     * joins against that table. The table is created on first use and emptied each time, so it is reused for the rest
+     * of the session. MariaDB temporary tables belong to the connection that created them and H2's are shared by every
+     * connection, so staging and every statement using the filter must run on one connection inside one transaction,
+     * e.g. a JdbcTemplate within a Spring managed transaction.
+     */
+    public KeySetQueryFilter stage(final JdbcTemplate jdbcTemplate, final String tableName) {
+        requireNonNull(jdbcTemplate, "jdbcTemplate cannot be null");
+        Validate.notBlank(tableName, "tableName cannot be null/blank");
+
+        if (keys.length() <= STAGING_THRESHOLD) {
+            return this;
+        }
+
+        jdbcTemplate.execute(String.format("CREATE TEMPORARY TABLE IF NOT EXISTS %s (%s varchar(128) primary key)", tableName, KEY_COLUMN));
+        jdbcTemplate.update("DELETE FROM " + tableName);
+        jdbcTemplate.batchUpdate(String.format("INSERT INTO %s (%s) VALUES (?)", tableName, KEY_COLUMN),
+                keys.toJavaList(), CHUNK_SIZE, (statement, key) -> QueryUtils.bind(statement, 1, key));
+
+        return new KeySetQueryFilter(column, keys, Option.of(tableName));
+    }
+
+    public boolean isStaged() {
+        return stagedTable.isDefined();
+    }
+
+    @Override
+    public String getFilters() {
+        return QueryFilterRenderer.literal().render(this).toString();
+    }
+
+    @Override
+    public String getParameterisedFilters() {
+        return QueryFilterRenderer.parameterised().render(this).toString();
+    }
+
+    @Override
+    public List<Object> getParameters() {
+        return isStaged() ? List.empty() : getBoundKeys();
+    }
+
+    @Override
+    public QueryShape getShape() {
+        final Object source = stagedTable.isDefined() ? stagedTable.get() : getBoundKeys().length();
+        return QueryShape.of("IN " + column + " " + source, List.empty());
+    }
+
+    @Override
+    public void accept(final QueryFilterVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public List<Object> getKeys() {
+        return keys;
+    }
+
+    /*
+     * The keys as bound by the parameterised filter, padded to the length of their shape
+     */
+    List<Object> getBoundKeys() {
+        return keys.isEmpty() ? keys : keys.padTo(boundLength(keys.length()), keys.last());
+    }
+
+    public Option<String> getStagedTable() {
+        return stagedTable;
+    }
+
+    private static int boundLength(final int length) {
+        if (length > CHUNK_SIZE) {
+            return (length + CHUNK_SIZE - 1) / CHUNK_SIZE * CHUNK_SIZE;
+        }
+        return length <= 1 ? length : Math.min(Integer.highestOneBit(length - 1) << 1, CHUNK_SIZE);
+    }
+}
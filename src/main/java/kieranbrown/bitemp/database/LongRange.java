@@ -0,0 +1,51 @@
+package kieranbrown.bitemp.database;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/*
+ * The whole numbers a comparison with a value accepts, or rejects if negated, so a column of whole numbers can be
+ * compared with two primitive comparisons whatever the type of the value. The value can fall between whole numbers, e.g.
+ * a price of 1.005 is 100.5 hundredths, which nothing equals and > accepts from 101.
+ */
+final class LongRange {
+    private static final BigDecimal MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+    private static final BigDecimal MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    final long min;
+    final long max;
+    final boolean negated;
+
+    private LongRange(final BigDecimal min, final BigDecimal max, final boolean negated) {
+        this.min = clamp(min);
+        this.max = clamp(max);
+        this.negated = negated;
+    }
+
+    static LongRange of(final QueryEquality equality, final BigDecimal value) {
+        final BigDecimal floor = value.setScale(0, RoundingMode.FLOOR);
+        final BigDecimal ceiling = value.setScale(0, RoundingMode.CEILING);
+        switch (equality) {
+            case EQUALS:
+                return new LongRange(ceiling, floor, false);
+            case DOES_NOT_EQUAL:
+                return new LongRange(ceiling, floor, true);
+            case GREATER_THAN:
+                return new LongRange(floor.add(BigDecimal.ONE), MAX, false);
+            case GREATER_THAN_EQUAL_TO:
+                return new LongRange(ceiling, MAX, false);
+            case LESS_THAN:
+                return new LongRange(MIN, ceiling.subtract(BigDecimal.ONE), false);
+            default:
+                return new LongRange(MIN, floor, false);
+        }
+    }
+
+    boolean contains(final long x) {
+        return (x >= min && x <= max) != negated;
+    }
+
+    private static long clamp(final BigDecimal value) {
+        return value.max(MIN).min(MAX).longValueExact();
+    }
+}
@@ -1,5 +1,7 @@
 package kieranbrown.bitemp.database;
 
+import io.vavr.collection.List;
+
 import static java.util.Objects.requireNonNull;
 
 public class NotQueryFilter implements QueryFilter {
@@ -13,4 +15,28 @@ public class NotQueryFilter implements QueryFilter {
     public String getFilters() {
         return "NOT " + filter.getFilters();
     }
+
+    @Override
+    public String getParameterisedFilters() {
+        return "NOT " + filter.getParameterisedFilters();
+    }
+
+    @Override
+    public List<Object> getParameters() {
+        return filter.getParameters();
+    }
+
+    @Override
+    public QueryShape getShape() {
+        return QueryShape.of("NOT", List.of(filter.getShape()));
+    }
+
+    @Override
+    public void accept(final QueryFilterVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    public QueryFilter getFilter() {
+        return filter;
+    }
 }
@@ -0,0 +1,145 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.collection.LinkedHashMap;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import kieranbrown.bitemp.models.BitemporalKey;
+import kieranbrown.bitemp.models.BitemporalModel;
+import kieranbrown.bitemp.models.EntityMetamodel;
+import kieranbrown.bitemp.utils.QueryUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static kieranbrown.bitemp.database.QueryEquality.GREATER_THAN;
+import static kieranbrown.bitemp.database.QueryEquality.LESS_THAN;
+
+/*
+ * Finds rows that would give an id two open versions over the same valid time. A batch is sorted by (id,
+ * valid_time_start) and swept once for overlaps between its own rows, then checked against the stored open versions
+ * with one range query per KeySetQueryFilter.CHUNK_SIZE ids, so a batch of n rows costs O(n log n) rather than a query
+ * per row.
+ *
+ * Only what the connection can see is checked, so rows being written concurrently on other connections are not: two
+ * inserts of the same id running at once can both pass and commit overlapping open versions. The table has no unique
+ * or exclusion constraint to catch this, so concurrent writers must not share ids. CsvIngestPipeline routes each id to
+ * one writer for this reason.
+ */
+final class OverlapValidator<T extends BitemporalModel<T>> {
+    private static final Comparator<BitemporalKey> BY_ID_AND_START = Comparator
+            .comparing(BitemporalKey::getId)
+            .thenComparing(BitemporalKey::getValidTimeStart);
+
+    private final Class<T> queryClass;
+    private final EntityMetamodel<T> metamodel;
+
+    OverlapValidator(final Class<T> queryClass) {
+        this.queryClass = queryClass;
+        this.metamodel = EntityMetamodel.forClass(queryClass);
+    }
+
+    /*
+     * The key of the first row found to overlap another, if any
+     */
+    Option<BitemporalKey> findOverlap(final Connection connection, final java.util.List<T> rows) throws SQLException {
+        final BitemporalKey[] keys = rows.stream().map(BitemporalModel::getBitemporalKey).toArray(BitemporalKey[]::new);
+        Arrays.sort(keys, BY_ID_AND_START);
+
+        final Option<BitemporalKey> withinBatch = sweep(keys);
+        if (withinBatch.isDefined()) {
+            return withinBatch;
+        }
+
+        //the keys of each id are now sorted and disjoint, so their ends are in order too
+        final Map<UUID, BitemporalKey[]> keysById = new HashMap<>();
+        for (int start = 0, end; start < keys.length; start = end) {
+            end = start + 1;
+            while (end < keys.length && keys[end].getId().equals(keys[start].getId())) {
+                end++;
+            }
+            keysById.put(keys[start].getId(), Arrays.copyOfRange(keys, start, end));
+        }
+
+        for (final List<UUID> ids : List.ofAll(keysById.keySet()).grouped(KeySetQueryFilter.CHUNK_SIZE)) {
+            final Option<BitemporalKey> stored = findStoredOverlap(connection, ids, keysById);
+            if (stored.isDefined()) {
+                return stored;
+            }
+        }
+        return Option.none();
+    }
+
+    private static Option<BitemporalKey> sweep(final BitemporalKey[] keys) {
+        for (int i = 1; i < keys.length; i++) {
+            final BitemporalKey previous = keys[i - 1];
+            if (keys[i].getId().equals(previous.getId()) && keys[i].getValidTimeStart().isBefore(previous.getValidTimeEnd())) {
+                return Option.of(keys[i]);
+            }
+        }
+        return Option.none();
+    }
+
+    private Option<BitemporalKey> findStoredOverlap(final Connection connection, final List<UUID> ids,
+                                                    final Map<UUID, BitemporalKey[]> keysById) throws SQLException {
+        final List<BitemporalKey[]> chunk = ids.map(keysById::get);
+        final LocalDate from = chunk.map(x -> x[0].getValidTimeStart()).min().get();
+        final LocalDate to = chunk.map(x -> x[x.length - 1].getValidTimeEnd()).max().get();
+
+        final SelectQuery<T> query = new SelectQuery<>(queryClass)
+                .setFields(LinkedHashMap.of("id", "id", "valid_time_start", "valid_time_start", "valid_time_end", "valid_time_end"))
+                .setFilters(List.of(
+                        new KeySetQueryFilter("id", ids),
+                        new SingleQueryFilter("system_time_end", GREATER_THAN, "CURRENT_TIMESTAMP"),
+                        new SingleQueryFilter("valid_time_start", LESS_THAN, to),
+                        new SingleQueryFilter("valid_time_end", GREATER_THAN, from)));
+
+        try (final PreparedStatement statement = connection.prepareStatement(query.buildParameterised())) {
+            QueryUtils.bindAll(statement, query.getParameters());
+            try (final ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    final UUID id = (UUID) read(resultSet, "id", 1);
+                    final LocalDate start = (LocalDate) read(resultSet, "valid_time_start", 2);
+                    final LocalDate end = (LocalDate) read(resultSet, "valid_time_end", 3);
+                    final Option<BitemporalKey> overlap = overlapping(keysById.get(id), start, end);
+                    if (overlap.isDefined()) {
+                        return overlap;
+                    }
+                }
+            }
+        }
+        return Option.none();
+    }
+
+    /*
+     * Binary searches for the first key ending after the stored period starts, which overlaps it if it also starts
+     * before the stored period ends
+     */
+    private static Option<BitemporalKey> overlapping(final BitemporalKey[] keys, final LocalDate start, final LocalDate end) {
+        if (keys == null) {
+            return Option.none();
+        }
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (keys[middle].getValidTimeEnd().isAfter(start)) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low < keys.length && keys[low].getValidTimeStart().isBefore(end) ? Option.of(keys[low]) : Option.none();
+    }
+
+    private Object read(final ResultSet resultSet, final String column, final int index) throws SQLException {
+        return metamodel.getColumn(column).get().getCodec().read(resultSet, index);
+    }
+}
@@ -1,6 +1,9 @@
 package kieranbrown.bitemp.database;
 
-public class OverlappingKeyException extends Exception {
+/*
+ * Thrown when a row would give its id a second open version over part of the same valid time
+ */
+public class OverlappingKeyException extends InvalidPeriodException {
     public OverlappingKeyException(final String message) {
         super(message);
     }
@@ -0,0 +1,61 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.Tuple3;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import kieranbrown.bitemp.models.BitemporalModel;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+import static java.util.Objects.requireNonNull;
+
+/*
+ * One page of results, ordered by (id, valid_time_start, system_time_start). The continuation token encodes the last of
+ * these on the page and is only present if there are more results to fetch.
+ */
+public class Page<T extends BitemporalModel<T>> {
+    private static final String SEPARATOR = "|";
+
+    private final List<T> results;
+    private final Option<String> continuationToken;
+
+    Page(final List<T> results, final boolean hasNext) {
+        this.results = requireNonNull(results, "results cannot be null");
+        this.continuationToken = hasNext && !results.isEmpty()
+                ? Option.of(encode(results.last()))
+                : Option.none();
+    }
+
+    public List<T> getResults() {
+        return results;
+    }
+
+    public Option<String> getContinuationToken() {
+        return continuationToken;
+    }
+
+    public boolean hasNext() {
+        return continuationToken.isDefined();
+    }
+
+    static String encode(final BitemporalModel<?> model) {
+        final String position = model.getBitemporalKey().getId() + SEPARATOR +
+                model.getBitemporalKey().getValidTimeStart() + SEPARATOR +
+                model.getSystemTimeStart();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Tuple3<UUID, LocalDate, LocalDateTime> decode(final String continuationToken) {
+        requireNonNull(continuationToken, "continuationToken cannot be null");
+        return Try.of(() -> {
+            final String[] position = new String(Base64.getUrlDecoder().decode(continuationToken), StandardCharsets.UTF_8)
+                    .split("\\|", -1);
+            return new Tuple3<>(UUID.fromString(position[0]), LocalDate.parse(position[1]), LocalDateTime.parse(position[2]));
+        }).getOrElseThrow(e -> new IllegalArgumentException("invalid continuation token", e));
+    }
+}
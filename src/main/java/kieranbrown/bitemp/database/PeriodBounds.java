@@ -0,0 +1,133 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.Tuple3;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.function.Function;
+
+/*
+ * The ranges a period's start and end must lie in to pass the comparisons on its start and end columns among a list of
+ * filters, taking only the comparisons every matching row must pass: those at the top level or inside top level ANDs.
+ * Discrete points (epoch days for dates) turn strict bounds into inclusive ones a point further in. Times are floored
+ * to epoch microseconds, where two times can share a point, so strict bounds on them are left inclusive.
+ *
+ * Bounds narrow the rows an index returns, they never widen them, so the filters still have to be evaluated on what it
+ * returns.
+ */
+final class PeriodBounds {
+    private static final PeriodBounds UNBOUNDED = new PeriodBounds(Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE);
+
+    final long startMin;
+    final long startMax;
+    final long endMin;
+    final long endMax;
+
+    PeriodBounds(final long startMin, final long startMax, final long endMin, final long endMax) {
+        this.startMin = startMin;
+        this.startMax = startMax;
+        this.endMin = endMin;
+        this.endMax = endMax;
+    }
+
+    static PeriodBounds validTime(final List<QueryFilter> filters) {
+        return of(filters, "valid_time_start", "valid_time_end", true,
+                x -> x instanceof LocalDate ? Option.of(((LocalDate) x).toEpochDay()) : Option.none());
+    }
+
+    /*
+     * CURRENT_TIMESTAMP is taken to be now
+     */
+    static PeriodBounds systemTime(final List<QueryFilter> filters, final LocalDateTime now) {
+        return of(filters, "system_time_start", "system_time_end", false, x -> {
+            final Object value = QueryFilterEvaluator.resolve(x, now);
+            return value instanceof LocalDateTime ? Option.of(toEpochMicros((LocalDateTime) value)) : Option.none();
+        });
+    }
+
+    static PeriodBounds of(final List<QueryFilter> filters, final String startColumn, final String endColumn,
+                           final boolean discrete, final Function<Object, Option<Long>> toPoint) {
+        PeriodBounds bounds = UNBOUNDED;
+        for (final SingleQueryFilter filter : conjuncts(filters)) {
+            final Tuple3<String, QueryEquality, Object> x = filter.getFilter();
+            final Option<Long> point = toPoint.apply(x._3);
+            if (point.isEmpty()) {
+                continue;
+            }
+            if (x._1.equals(startColumn)) {
+                bounds = bounds.restrictStart(inclusive(x._2, discrete), point.get());
+            } else if (x._1.equals(endColumn)) {
+                bounds = bounds.restrictEnd(inclusive(x._2, discrete), point.get());
+            }
+        }
+        return bounds;
+    }
+
+    static long toEpochMicros(final LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000;
+    }
+
+    boolean isBounded() {
+        return this != UNBOUNDED;
+    }
+
+    /*
+     * No period can satisfy bounds that cross
+     */
+    boolean isEmpty() {
+        return startMin > startMax || endMin > endMax;
+    }
+
+    boolean contains(final long start, final long end) {
+        return start >= startMin && start <= startMax && end >= endMin && end <= endMax;
+    }
+
+    private static QueryEquality inclusive(final QueryEquality equality, final boolean discrete) {
+        if (discrete) {
+            return equality;
+        } else if (equality == QueryEquality.GREATER_THAN) {
+            return QueryEquality.GREATER_THAN_EQUAL_TO;
+        }
+        return equality == QueryEquality.LESS_THAN ? QueryEquality.LESS_THAN_EQUAL_TO : equality;
+    }
+
+    private PeriodBounds restrictStart(final QueryEquality equality, final long point) {
+        final long[] range = restrict(equality, point, startMin, startMax);
+        return range == null ? this : new PeriodBounds(range[0], range[1], endMin, endMax);
+    }
+
+    private PeriodBounds restrictEnd(final QueryEquality equality, final long point) {
+        final long[] range = restrict(equality, point, endMin, endMax);
+        return range == null ? this : new PeriodBounds(startMin, startMax, range[0], range[1]);
+    }
+
+    //null when the comparison does not bound the range, as for <>
+    private static long[] restrict(final QueryEquality equality, final long point, final long min, final long max) {
+        switch (equality) {
+            case EQUALS:
+                return new long[]{Math.max(min, point), Math.min(max, point)};
+            case GREATER_THAN:
+                return new long[]{Math.max(min, point + 1), max};
+            case GREATER_THAN_EQUAL_TO:
+                return new long[]{Math.max(min, point), max};
+            case LESS_THAN:
+                return new long[]{min, Math.min(max, point - 1)};
+            case LESS_THAN_EQUAL_TO:
+                return new long[]{min, Math.min(max, point)};
+            default:
+                return null;
+        }
+    }
+
+    private static List<SingleQueryFilter> conjuncts(final List<QueryFilter> filters) {
+        return filters.flatMap(x -> {
+            if (x instanceof AndQueryFilter) {
+                return conjuncts(((AndQueryFilter) x).getFilterList());
+            }
+            return x instanceof SingleQueryFilter ? List.of((SingleQueryFilter) x) : List.empty();
+        });
+    }
+}
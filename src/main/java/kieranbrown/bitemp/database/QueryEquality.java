@@ -17,4 +17,21 @@ public enum QueryEquality {
     public String getValue() {
         return value;
     }
+
+    public QueryEquality negate() {
+        switch (this) {
+            case EQUALS:
+                return DOES_NOT_EQUAL;
+            case GREATER_THAN:
+                return LESS_THAN_EQUAL_TO;
+            case LESS_THAN:
+                return GREATER_THAN_EQUAL_TO;
+            case GREATER_THAN_EQUAL_TO:
+                return LESS_THAN;
+            case LESS_THAN_EQUAL_TO:
+                return GREATER_THAN;
+            default:
+                return EQUALS;
+        }
+    }
 }
@@ -1,5 +1,19 @@
 package kieranbrown.bitemp.database;
 
+import io.vavr.collection.List;
+
 public interface QueryFilter {
     String getFilters();
+
+    /*
+     * Renders the filter with a ? placeholder in place of each value, so that queries differing only in their
+     * values share the same SQL text. getParameters returns the values in placeholder order
+     */
+    String getParameterisedFilters();
+
+    List<Object> getParameters();
+
+    QueryShape getShape();
+
+    void accept(QueryFilterVisitor visitor);
 }
@@ -0,0 +1,132 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.Tuple3;
+import io.vavr.collection.List;
+import kieranbrown.bitemp.models.BitemporalModel;
+import kieranbrown.bitemp.models.EntityMetamodel;
+import kieranbrown.bitemp.utils.QueryUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/*
+ * Evaluates filter trees against models in memory, giving the same answers the database gives for the SQL they render
+ * to. CURRENT_TIMESTAMP is the time passed in, numbers of different types are compared by value, single character
+ * strings compare with chars and UUIDs are ordered as their lower case strings are, as they are stored as text.
+ */
+final class QueryFilterEvaluator {
+
+    private QueryFilterEvaluator() {
+    }
+
+    static <T extends BitemporalModel<T>> boolean matches(final EntityMetamodel<T> metamodel, final List<QueryFilter> filters,
+                                                        final T row, final LocalDateTime now) {
+        for (final QueryFilter filter : filters) {
+            if (!matches(metamodel, filter, row, now)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static <T extends BitemporalModel<T>> boolean matches(final EntityMetamodel<T> metamodel, final QueryFilter filter,
+                                                        final T row, final LocalDateTime now) {
+        if (filter instanceof SingleQueryFilter) {
+            final Tuple3<String, QueryEquality, Object> single = ((SingleQueryFilter) filter).getFilter();
+            final Object stored = getColumn(metamodel, single._1).get(row);
+            return test(single._2, compare(stored, resolve(single._3, now)));
+        } else if (filter instanceof AndQueryFilter) {
+            return matches(metamodel, ((AndQueryFilter) filter).getFilterList(), row, now);
+        } else if (filter instanceof OrQueryFilter) {
+            for (final QueryFilter x : ((OrQueryFilter) filter).getFilterList()) {
+                if (matches(metamodel, x, row, now)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if (filter instanceof NotQueryFilter) {
+            return !matches(metamodel, ((NotQueryFilter) filter).getFilter(), row, now);
+        } else if (filter instanceof KeySetQueryFilter) {
+            final KeySetQueryFilter keySet = (KeySetQueryFilter) filter;
+            final Object stored = getColumn(metamodel, keySet.getColumn()).get(row);
+            return keySet.getKeys().exists(x -> compare(stored, x) == 0);
+        }
+        throw new IllegalArgumentException(String.format("%s cannot be evaluated in memory", filter.getClass().getName()));
+    }
+
+    static boolean test(final QueryEquality equality, final int comparison) {
+        switch (equality) {
+            case EQUALS:
+                return comparison == 0;
+            case DOES_NOT_EQUAL:
+                return comparison != 0;
+            case GREATER_THAN:
+                return comparison > 0;
+            case GREATER_THAN_EQUAL_TO:
+                return comparison >= 0;
+            case LESS_THAN:
+                return comparison < 0;
+            default:
+                return comparison <= 0;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static int compare(final Object stored, final Object value) {
+        if (stored.getClass() == value.getClass()) {
+            return stored instanceof UUID
+                    ? compareUuids((UUID) stored, (UUID) value)
+                    : ((Comparable<Object>) stored).compareTo(value);
+        } else if (stored instanceof Number && value instanceof Number) {
+            return toBigDecimal((Number) stored).compareTo(toBigDecimal((Number) value));
+        } else if (stored instanceof Character || stored instanceof UUID) {
+            return stored.toString().compareTo(value.toString());
+        }
+        throw new IllegalArgumentException(String.format("cannot compare %s with %s",
+                stored.getClass().getSimpleName(), value.getClass().getSimpleName()));
+    }
+
+    /*
+     * Converts a value being written to a column to the column's type, as the database would on assignment
+     */
+    static Object coerce(final Class<?> type, final Object value, final LocalDateTime now) {
+        final Object resolved = resolve(value, now);
+        if (type.isInstance(resolved)) {
+            return resolved;
+        } else if (resolved instanceof Number && (type == int.class || type == Integer.class)) {
+            return ((Number) resolved).intValue();
+        } else if (resolved instanceof Number && (type == long.class || type == Long.class)) {
+            return ((Number) resolved).longValue();
+        } else if (resolved instanceof Number && type == BigDecimal.class) {
+            return toBigDecimal((Number) resolved);
+        } else if (resolved instanceof String && ((String) resolved).length() == 1 && (type == char.class || type == Character.class)) {
+            return ((String) resolved).charAt(0);
+        } else if (resolved instanceof Character && (type == char.class)) {
+            return resolved;
+        } else if (resolved instanceof String && type == UUID.class) {
+            return UUID.fromString((String) resolved);
+        }
+        throw new IllegalArgumentException(String.format("cannot assign %s to a %s column",
+                resolved.getClass().getSimpleName(), type.getSimpleName()));
+    }
+
+    static Object resolve(final Object value, final LocalDateTime now) {
+        return QueryUtils.isSqlExpression(value) ? now : value;
+    }
+
+    static <T extends BitemporalModel<T>> EntityMetamodel.Attribute<T> getColumn(final EntityMetamodel<T> metamodel, final String column) {
+        return metamodel.getColumn(column)
+                .getOrElseThrow(() -> new IllegalArgumentException(String.format("unknown column %s", column)));
+    }
+
+    //the order of the lower case hex strings, which is the unsigned order of the two halves
+    private static int compareUuids(final UUID a, final UUID b) {
+        final int most = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return most != 0 ? most : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+
+    private static BigDecimal toBigDecimal(final Number number) {
+        return number instanceof BigDecimal ? (BigDecimal) number : new BigDecimal(number.toString());
+    }
+}
@@ -0,0 +1,181 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.Tuple2;
+import io.vavr.Tuple3;
+import io.vavr.collection.HashSet;
+import io.vavr.collection.LinkedHashMap;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static java.util.Objects.requireNonNull;
+import static kieranbrown.bitemp.database.QueryEquality.*;
+
+/*
+ * Rewrites a filter tree into an equivalent one that the database can plan range scans for. Nested ANDs and ORs are
+ * flattened, NOTs are pushed down to the comparisons with De Morgan's laws, tautologies such as
+ * (x = a OR x <> a) are dropped and the lower/upper bounds on each column within an AND are merged into a single range.
+ *
+ * Option.none() is used internally to represent a filter that is always true.
+ */
+final class QueryFilterOptimiser {
+
+    private QueryFilterOptimiser() {
+    }
+
+    /*
+     * Top level filters are implicitly ANDed together, so they are optimised as one conjunction and returned as its
+     * conjuncts
+     */
+    static List<QueryFilter> optimise(final List<QueryFilter> filters) {
+        requireNonNull(filters, "filters cannot be null");
+        return optimise(new AndQueryFilter(filters))
+                .map(x -> x instanceof AndQueryFilter ? ((AndQueryFilter) x).getFilterList() : List.of(x))
+                .getOrElse(List.empty());
+    }
+
+    private static Option<QueryFilter> optimise(final QueryFilter filter) {
+        if (filter instanceof NotQueryFilter) {
+            final QueryFilter negated = ((NotQueryFilter) filter).getFilter();
+            if (isNegatable(negated)) {
+                return optimise(negate(negated));
+            }
+            //filters with no negated form, such as key sets, keep their NOT. NOT of always true is always false.
+            return Option.of(optimise(negated).<QueryFilter>map(NotQueryFilter::new)
+                    .getOrElse(() -> new OrQueryFilter(List.empty())));
+        } else if (filter instanceof AndQueryFilter) {
+            return optimiseAnd(((AndQueryFilter) filter).getFilterList());
+        } else if (filter instanceof OrQueryFilter) {
+            return optimiseOr(((OrQueryFilter) filter).getFilterList());
+        }
+        return Option.of(filter);
+    }
+
+    private static boolean isNegatable(final QueryFilter filter) {
+        return filter instanceof SingleQueryFilter || filter instanceof NotQueryFilter
+                || filter instanceof AndQueryFilter || filter instanceof OrQueryFilter;
+    }
+
+    private static QueryFilter negate(final QueryFilter filter) {
+        if (filter instanceof SingleQueryFilter) {
+            return new SingleQueryFilter(((SingleQueryFilter) filter).getFilter().map2(QueryEquality::negate));
+        } else if (filter instanceof NotQueryFilter) {
+            return ((NotQueryFilter) filter).getFilter();
+        } else if (filter instanceof AndQueryFilter) {
+            return new OrQueryFilter(((AndQueryFilter) filter).getFilterList().map(QueryFilterOptimiser::negate));
+        } else if (filter instanceof OrQueryFilter) {
+            return new AndQueryFilter(((OrQueryFilter) filter).getFilterList().map(QueryFilterOptimiser::negate));
+        }
+        return new NotQueryFilter(filter);
+    }
+
+    private static Option<QueryFilter> optimiseAnd(final List<QueryFilter> filters) {
+        final List<QueryFilter> conjuncts = mergeRanges(filters
+                .flatMap(QueryFilterOptimiser::optimise)
+                .flatMap(x -> x instanceof AndQueryFilter ? ((AndQueryFilter) x).getFilterList() : List.of(x))
+                .distinct());
+
+        if (conjuncts.isEmpty()) {
+            return Option.none();
+        }
+        return Option.of(conjuncts.length() == 1 ? conjuncts.head() : new AndQueryFilter(conjuncts));
+    }
+
+    private static Option<QueryFilter> optimiseOr(final List<QueryFilter> filters) {
+        if (filters.isEmpty()) {
+            return Option.of(new OrQueryFilter(filters));
+        }
+
+        final List<Option<QueryFilter>> optimised = filters.map(QueryFilterOptimiser::optimise);
+        if (optimised.exists(Option::isEmpty)) {
+            return Option.none();
+        }
+
+        final List<QueryFilter> disjuncts = optimised
+                .flatMap(x -> x)
+                .flatMap(x -> x instanceof OrQueryFilter ? ((OrQueryFilter) x).getFilterList() : List.of(x))
+                .distinct();
+
+        if (containsComplement(disjuncts)) {
+            return Option.none();
+        }
+        return Option.of(disjuncts.length() == 1 ? disjuncts.head() : new OrQueryFilter(disjuncts));
+    }
+
+    /*
+     * x op a OR x !op a is always true (the columns being filtered on are all NOT NULL)
+     */
+    private static boolean containsComplement(final List<QueryFilter> disjuncts) {
+        final List<SingleQueryFilter> singles = singles(disjuncts);
+        return singles.exists(x -> singles.contains(new SingleQueryFilter(x.getFilter().map2(QueryEquality::negate))));
+    }
+
+    /*
+     * Collapses every lower bound (>, >=) on a column to the tightest one, and likewise for upper bounds (<, <=). The
+     * merged range takes the position of the first comparison on that column so the output order is stable.
+     */
+    private static List<QueryFilter> mergeRanges(final List<QueryFilter> conjuncts) {
+        final LinkedHashMap<Tuple3<String, Boolean, Class<?>>, SingleQueryFilter> bounds = singles(conjuncts)
+                .filter(QueryFilterOptimiser::isMergeableBound)
+                .foldLeft(LinkedHashMap.empty(), (acc, x) -> acc.put(boundKey(x),
+                        acc.get(boundKey(x)).map(y -> tighter(y, x)).getOrElse(x)));
+
+        final Tuple2<List<QueryFilter>, HashSet<Tuple3<String, Boolean, Class<?>>>> empty =
+                new Tuple2<>(List.empty(), HashSet.empty());
+
+        return conjuncts.foldLeft(empty, (acc, x) -> {
+            if (!(x instanceof SingleQueryFilter) || !isMergeableBound((SingleQueryFilter) x)) {
+                return acc.map1(y -> y.append(x));
+            }
+            final Tuple3<String, Boolean, Class<?>> key = boundKey((SingleQueryFilter) x);
+            return acc._2.contains(key)
+                    ? acc
+                    : new Tuple2<>(acc._1.append(bounds.get(key).get()), acc._2.add(key));
+        })._1;
+    }
+
+    /*
+     * Bounds are only compared against values of the same type, anything else is left for the database to resolve
+     */
+    private static Tuple3<String, Boolean, Class<?>> boundKey(final SingleQueryFilter filter) {
+        return filter.getFilter().apply((column, equality, value) ->
+                new Tuple3<>(column, isLowerBound(equality), value.getClass()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SingleQueryFilter tighter(final SingleQueryFilter current, final SingleQueryFilter candidate) {
+        final Tuple3<String, QueryEquality, Object> a = current.getFilter();
+        final Tuple3<String, QueryEquality, Object> b = candidate.getFilter();
+        final int comparison = ((Comparable<Object>) b._3).compareTo(a._3);
+
+        if (comparison == 0) {
+            //strict bounds are tighter than inclusive ones at the same value
+            return b._2 == GREATER_THAN || b._2 == LESS_THAN ? candidate : current;
+        }
+        return (comparison > 0) == isLowerBound(a._2) ? candidate : current;
+    }
+
+    private static boolean isMergeableBound(final SingleQueryFilter filter) {
+        final Tuple3<String, QueryEquality, Object> x = filter.getFilter();
+        return x._2 != EQUALS && x._2 != DOES_NOT_EQUAL && isOrderedAsInSql(x._3);
+    }
+
+    /*
+     * Values whose Java order is the database's. UUIDs compare as signed halves in Java but as strings in the database,
+     * and strings and characters compare by the column's collation, so bounds on those are all kept.
+     */
+    private static boolean isOrderedAsInSql(final Object value) {
+        return value instanceof LocalDate || value instanceof LocalDateTime
+                || value instanceof Number && value instanceof Comparable;
+    }
+
+    private static boolean isLowerBound(final QueryEquality equality) {
+        return equality == GREATER_THAN || equality == GREATER_THAN_EQUAL_TO;
+    }
+
+    private static List<SingleQueryFilter> singles(final List<QueryFilter> filters) {
+        return filters.filter(SingleQueryFilter.class::isInstance).map(SingleQueryFilter.class::cast);
+    }
+}
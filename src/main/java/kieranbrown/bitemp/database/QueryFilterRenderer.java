@@ -0,0 +1,145 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.Tuple3;
+import io.vavr.collection.List;
+import kieranbrown.bitemp.utils.QueryUtils;
+
+import static java.util.Objects.requireNonNull;
+
+/*
+ * Renders filter trees in a single walk, appending straight into one StringBuilder rather than building a string per
+ * node. The output matches QueryFilter.getFilters/getParameterisedFilters. A renderer can be reused by calling reset.
+ */
+public final class QueryFilterRenderer implements QueryFilterVisitor {
+    private final StringBuilder builder;
+    private final boolean parameterised;
+
+    private QueryFilterRenderer(final StringBuilder builder, final boolean parameterised) {
+        this.builder = requireNonNull(builder, "builder cannot be null");
+        this.parameterised = parameterised;
+    }
+
+    public static QueryFilterRenderer literal() {
+        return new QueryFilterRenderer(new StringBuilder(), false);
+    }
+
+    public static QueryFilterRenderer parameterised() {
+        return new QueryFilterRenderer(new StringBuilder(), true);
+    }
+
+    public QueryFilterRenderer render(final QueryFilter filter) {
+        requireNonNull(filter, "filter cannot be null").accept(this);
+        return this;
+    }
+
+    public QueryFilterRenderer render(final List<QueryFilter> filters, final String separator) {
+        requireNonNull(filters, "filters cannot be null");
+        boolean first = true;
+        for (final QueryFilter filter : filters) {
+            if (!first) {
+                builder.append(separator);
+            }
+            filter.accept(this);
+            first = false;
+        }
+        return this;
+    }
+
+    public QueryFilterRenderer reset() {
+        builder.setLength(0);
+        return this;
+    }
+
+    @Override
+    public void visit(final SingleQueryFilter filter) {
+        final Tuple3<String, QueryEquality, Object> x = filter.getFilter();
+        builder.append(x._1)
+                .append(' ')
+                .append(x._2.getValue())
+                .append(' ');
+        appendValue(x._3);
+    }
+
+    @Override
+    public void visit(final AndQueryFilter filter) {
+        join(filter.getFilterList(), " AND ");
+    }
+
+    @Override
+    public void visit(final OrQueryFilter filter) {
+        join(filter.getFilterList(), " OR ");
+    }
+
+    @Override
+    public void visit(final NotQueryFilter filter) {
+        builder.append("NOT ");
+        filter.getFilter().accept(this);
+    }
+
+    /*
+     * Staged key sets become a semi-join on their temporary table, an empty key set matches nothing
+     */
+    @Override
+    public void visit(final KeySetQueryFilter filter) {
+        if (filter.getStagedTable().isDefined()) {
+            builder.append(filter.getColumn())
+                    .append(" IN (SELECT ")
+                    .append(KeySetQueryFilter.KEY_COLUMN)
+                    .append(" FROM ")
+                    .append(filter.getStagedTable().get())
+                    .append(')');
+            return;
+        }
+
+        final List<Object> keys = parameterised ? filter.getBoundKeys() : filter.getKeys();
+        if (keys.isEmpty()) {
+            builder.append("1 = 0");
+            return;
+        }
+
+        final boolean chunked = keys.length() > KeySetQueryFilter.CHUNK_SIZE;
+        if (chunked) {
+            builder.append('(');
+        }
+        int index = 0;
+        for (final Object key : keys) {
+            if (index % KeySetQueryFilter.CHUNK_SIZE == 0) {
+                if (index > 0) {
+                    builder.append(") OR ");
+                }
+                builder.append(filter.getColumn()).append(" IN (");
+            } else {
+                builder.append(", ");
+            }
+            appendValue(key);
+            index++;
+        }
+        builder.append(')');
+        if (chunked) {
+            builder.append(')');
+        }
+    }
+
+    @Override
+    public String toString() {
+        return builder.toString();
+    }
+
+    private void appendValue(final Object value) {
+        if (parameterised) {
+            builder.append(QueryUtils.toPlaceholder(value));
+        } else {
+            QueryUtils.appendLiteral(builder, value);
+        }
+    }
+
+    private void join(final List<QueryFilter> filters, final String separator) {
+        if (filters.length() == 1) {
+            filters.head().accept(this);
+        } else if (filters.length() > 1) {
+            builder.append('(');
+            render(filters, separator);
+            builder.append(')');
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package kieranbrown.bitemp.database;
+
+public interface QueryFilterVisitor {
+    void visit(SingleQueryFilter filter);
+
+    void visit(AndQueryFilter filter);
+
+    void visit(OrQueryFilter filter);
+
+    void visit(NotQueryFilter filter);
+
+    void visit(KeySetQueryFilter filter);
+}
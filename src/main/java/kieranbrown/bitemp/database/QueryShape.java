@@ -0,0 +1,62 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.collection.List;
+import kieranbrown.bitemp.utils.QueryUtils;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+
+import java.util.Objects;
+
+import static java.util.Objects.requireNonNull;
+
+/*
+ * The structure of a filter tree with its values removed: node types, columns, operators and nesting. Two filters
+ * with equal shapes render to the same parameterised SQL, so a shape can be used to key pre-rendered templates
+ */
+public final class QueryShape {
+    private final String type;
+    private final String column;
+    private final QueryEquality equality;
+    private final List<QueryShape> children;
+    private final int hashCode;
+
+    private QueryShape(final String type, final String column, final QueryEquality equality, final List<QueryShape> children) {
+        this.type = requireNonNull(type, "type cannot be null");
+        this.column = column;
+        this.equality = equality;
+        this.children = requireNonNull(children, "children cannot be null");
+        this.hashCode = Objects.hash(type, column, equality, children);
+    }
+
+    static QueryShape of(final String column, final QueryEquality equality, final Object value) {
+        return new QueryShape(
+                QueryUtils.isSqlExpression(value) ? "EXPRESSION " + value : "SINGLE",
+                column,
+                equality,
+                List.empty());
+    }
+
+    static QueryShape of(final String type, final List<QueryShape> children) {
+        return new QueryShape(type, null, null, children);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final QueryShape that = (QueryShape) o;
+
+        return hashCode == that.hashCode && new EqualsBuilder()
+                .append(type, that.type)
+                .append(column, that.column)
+                .append(equality, that.equality)
+                .append(children, that.children)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
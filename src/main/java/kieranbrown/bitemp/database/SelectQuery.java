@@ -4,9 +4,9 @@ import io.vavr.collection.HashMap;
 import io.vavr.collection.List;
 import io.vavr.collection.Map;
 import kieranbrown.bitemp.models.BitemporalModel;
+import kieranbrown.bitemp.models.EntityMetamodel;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 
-import javax.persistence.Entity;
 
 import static java.util.Objects.requireNonNull;
 
@@ -15,6 +15,8 @@ class SelectQuery<T extends BitemporalModel<T>> {
     private final Class<T> queryClass;
     private Map<String, Object> fields;
     private List<QueryFilter> filters;
+    private List<String> groupBy = List.empty();
+    private List<String> orderBy = List.empty();
     private int limit = -1;
 
     public SelectQuery(final Class<T> clazz) {
@@ -42,9 +44,9 @@ class SelectQuery<T extends BitemporalModel<T>> {
         return this;
     }
 
-    private String getFilters() {
+    private String getFilters(final QueryFilterRenderer renderer) {
         return filters.length() > 0
-                ? String.format(" where %s", filters.map(this::mapFilter).mkString(" and "))
+                ? " where " + renderer.render(filters, " and ")
                 : "";
     }
 
@@ -55,24 +57,55 @@ class SelectQuery<T extends BitemporalModel<T>> {
         this.limit = limit;
         return this;
     }
+
+    public SelectQuery<T> setGroupBy(final List<String> groupBy) {
+        this.groupBy = requireNonNull(groupBy, "groupBy cannot be null");
+        return this;
+    }
+
+    public SelectQuery<T> setOrderBy(final List<String> orderBy) {
+        this.orderBy = requireNonNull(orderBy, "orderBy cannot be null");
+        return this;
+    }
+
     public String build() {
         return "SELECT " +
                 getFields() +
                 " from " +
                 getTableName() +
-                getFilters() +
+                getFilters(QueryFilterRenderer.literal()) +
+                getGroupBy() +
+                getOrderBy() +
+                getLimit();
+    }
+
+    public String buildParameterised() {
+        return "SELECT " +
+                getFields() +
+                " from " +
+                getTableName() +
+                getFilters(QueryFilterRenderer.parameterised()) +
+                getGroupBy() +
+                getOrderBy() +
                 getLimit();
     }
 
+    public List<Object> getParameters() {
+        return filters.flatMap(QueryFilter::getParameters);
+    }
+
+    /*
+     * Everything that determines the parameterised SQL text, without any of the values bound into it
+     */
+    public List<Object> getShape() {
+        return List.of(queryClass, fields.keySet().toList(), groupBy, orderBy, limit, filters.map(QueryFilter::getShape));
+    }
+
     public SelectQuery<T> setFilters(final List<QueryFilter> filters) {
         this.filters = filters;
         return this;
     }
 
-    private String mapFilter(final QueryFilter filter) {
-        return filter.getFilters();
-    }
-
     private Object getFields() {
         return fields.length() > 0
                 ? fields.keySet().mkString(", ")
@@ -80,7 +113,15 @@ class SelectQuery<T extends BitemporalModel<T>> {
     }
 
     private String getTableName() {
-        return queryClass.getAnnotation(Entity.class).name();
+        return EntityMetamodel.forClass(queryClass).getTableName();
+    }
+
+    private String getGroupBy() {
+        return groupBy.isEmpty() ? "" : " group by " + groupBy.mkString(", ");
+    }
+
+    private String getOrderBy() {
+        return orderBy.isEmpty() ? "" : " order by " + orderBy.mkString(", ");
     }
 
     private String getLimit() {
@@ -1,53 +1,70 @@
 package kieranbrown.bitemp.database;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.vavr.Tuple2;
 import io.vavr.Tuple3;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.LinkedHashMap;
 import io.vavr.collection.List;
 import io.vavr.collection.Stream;
 import io.vavr.control.Option;
 import kieranbrown.bitemp.models.BitemporalModel;
+import kieranbrown.bitemp.utils.QueryUtils;
+import org.apache.commons.lang3.Validate;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.orm.jpa.EntityManagerFactoryInfo;
 
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.sql.DataSource;
+import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 import static java.util.Objects.requireNonNull;
 import static kieranbrown.bitemp.database.QueryEquality.*;
 
 public class SelectQueryBuilder<T extends BitemporalModel<T>> {
+    private static final int TEMPLATE_CACHE_SIZE = 512;
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+    private static final List<String> PAGE_ORDER = List.of("id", "valid_time_start", "system_time_start");
+
+    /*
+     * Parameterised SQL keyed on the shape of the query, so repeated queries that differ only in their values skip
+     * rendering and just bind the new values
+     */
+    private static final Cache<List<Object>, String> TEMPLATES = CacheBuilder.newBuilder()
+            .maximumSize(TEMPLATE_CACHE_SIZE)
+            .recordStats()
+            .build();
+
     private final SelectQuery<T> query;
     private final Class<T> queryClass;
 
     private Option<List<T>> results;
     private List<QueryFilter> filters;
+    private List<String> columns;
+    private List<String> groupBy;
+    private int fetchSize;
 
     //TODO: should all be made into BiFunctions like this and extracted elsewhere?
-    public static final BiFunction<LocalDate, LocalDate, QueryFilter> validTimeOverlaps = (startDate, endDate) -> new OrQueryFilter(
-            new AndQueryFilter(
-                    new SingleQueryFilter("valid_time_start", GREATER_THAN, startDate),
-                    new NotQueryFilter(
-                            new AndQueryFilter(
-                                    new SingleQueryFilter("valid_time_start", GREATER_THAN_EQUAL_TO, endDate),
-                                    new SingleQueryFilter("valid_time_end", GREATER_THAN_EQUAL_TO, endDate)
-                            )
-                    )
-            ),
-            new AndQueryFilter(
-                    new SingleQueryFilter("valid_time_start", LESS_THAN, startDate),
-                    new NotQueryFilter(
-                            new AndQueryFilter(
-                                    new SingleQueryFilter("valid_time_end", LESS_THAN_EQUAL_TO, startDate),
-                                    new SingleQueryFilter("valid_time_end", LESS_THAN_EQUAL_TO, endDate)
-                            )
-                    )
-            ),
-            new AndQueryFilter(
-                    new SingleQueryFilter("valid_time_start", EQUALS, startDate),
-                    new OrQueryFilter(
-                            new SingleQueryFilter("valid_time_end", EQUALS, endDate),
-                            new SingleQueryFilter("valid_time_end", DOES_NOT_EQUAL, endDate)
-                    )
-            )
+    /*
+     * Two half open periods overlap when each starts before the other ends. Kept to one comparison per column so the
+     * database can use a range scan on either bound.
+     */
+    public static final BiFunction<LocalDate, LocalDate, QueryFilter> validTimeOverlaps = (startDate, endDate) -> new AndQueryFilter(
+            new SingleQueryFilter("valid_time_start", LESS_THAN, endDate),
+            new SingleQueryFilter("valid_time_end", GREATER_THAN, startDate)
     );
 
     SelectQueryBuilder(final Class<T> clazz) {
@@ -55,6 +72,19 @@ public class SelectQueryBuilder<T extends BitemporalModel<T>> {
         this.query = new SelectQuery<>(clazz);
         results = Option.none();
         filters = List.empty();
+        columns = List.empty();
+        groupBy = List.empty();
+        fetchSize = DEFAULT_FETCH_SIZE;
+    }
+
+    /*
+     * Restricts the query to the given columns. Projected queries are run with executeTuples or a RowMapper instead of
+     * being hydrated into entities.
+     */
+    public SelectQueryBuilder<T> select(final String... columns) {
+        this.columns = List.of(requireNonNull(columns, "columns cannot be null"))
+                .map(x -> Validate.notBlank(x, "column cannot be null/blank"));
+        return this;
     }
 
     public SelectQueryBuilder<T> where(final String column, final QueryEquality equality, final Object value) {
@@ -181,15 +211,253 @@ public class SelectQueryBuilder<T extends BitemporalModel<T>> {
         return this;
     }
 
+    /*
+     * Groups a projection by the given columns, see Aggregates for the aggregate expressions to select alongside them
+     */
+    public SelectQueryBuilder<T> groupBy(final String... columns) {
+        this.groupBy = List.of(requireNonNull(columns, "columns cannot be null"))
+                .map(x -> Validate.notBlank(x, "column cannot be null/blank"));
+        return this;
+    }
+
+    /*
+     * Number of rows the driver fetches per round trip when streaming results
+     */
+    public SelectQueryBuilder<T> fetchSize(final int fetchSize) {
+        Validate.isTrue(fetchSize > 0, "fetchSize must be positive");
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
     @SuppressWarnings("unchecked")
     public SelectQueryBuilder<T> execute(final EntityManager entityManager) {
+        results = Option.of(List.ofAll(createEntityQuery(entityManager, filters, List.empty(), -1).getResultList()));
+        return this;
+    }
+
+    /*
+     * Like execute, but the rows are mapped straight into new objects over JDBC with an EntityRowMapper rather than
+     * hydrated by Hibernate. Nothing is added to the persistence context and no snapshots are kept for dirty checking,
+     * so the results are plain objects that never need detaching. Pending changes in the persistence context are
+     * flushed first so the query sees them.
+     *
+     * Queries wholly in the past, such as systemTimeAsOf a time before now, are answered from the AsOfResultCache once
+     * they have been run, see getAsOfCacheStats.
+     */
+    public SelectQueryBuilder<T> executeUnmanaged(final EntityManager entityManager) {
         requireNonNull(entityManager, "entityManager cannot be null");
-        query.setFilters(filters);
-        results = Option.of(List.ofAll(entityManager.createNativeQuery(query.build(), queryClass).getResultList()));
-        System.out.println("QUERYBUILT: " + query.build());
+        if (entityManager.isJoinedToTransaction()) {
+            entityManager.flush();
+        }
+        final List<QueryFilter> optimised = prepareEntityQuery(filters, List.empty(), -1);
+        final List<Object> parameters = query.getParameters();
+        results = Option.of(AsOfResultCache.shared().get(queryClass, optimised, () -> List.ofAll(
+                new JdbcTemplate(getDataSource(entityManager)).query(getTemplate(query),
+                        statement -> QueryUtils.bindAll(statement, parameters), new EntityRowMapper<>(queryClass)))));
+        return this;
+    }
+
+    /*
+     * Evaluates the query against the versions held in the store rather than the database. The results are copies, so
+     * changing them does not change the store.
+     */
+    public SelectQueryBuilder<T> execute(final InMemoryStore<T> store) {
+        requireNonNull(store, "store cannot be null");
+        checkNotProjected();
+        results = Option.of(store.select(filters));
         return this;
     }
 
+    /*
+     * Reads the results through a forward only cursor, hydrating one row at a time. Each entity is detached once read
+     * so the persistence context does not grow with the result. The stream holds the cursor open and must be closed,
+     * e.g. with try-with-resources.
+     */
+    @SuppressWarnings("unchecked")
+    public java.util.stream.Stream<T> stream(final EntityManager entityManager) {
+        final java.util.stream.Stream<T> stream = createEntityQuery(entityManager, filters, List.empty(), -1)
+                .setHint(QueryHints.FETCH_SIZE, fetchSize)
+                .getResultStream();
+        return stream.map(x -> {
+            entityManager.detach(x);
+            return x;
+        });
+    }
+
+    public void forEach(final EntityManager entityManager, final Consumer<? super T> consumer) {
+        requireNonNull(consumer, "consumer cannot be null");
+        try (final java.util.stream.Stream<T> stream = stream(entityManager)) {
+            stream.forEach(consumer);
+        }
+    }
+
+    /*
+     * Seek based pagination ordered by (id, valid_time_start, system_time_start). Later pages start strictly after the
+     * position in the continuation token rather than skipping rows, so every page costs the same as the first.
+     */
+    public Page<T> executePage(final EntityManager entityManager, final int pageSize) {
+        return executePage(entityManager, pageSize, List.empty());
+    }
+
+    public Page<T> executePage(final EntityManager entityManager, final int pageSize, final String continuationToken) {
+        final Tuple3<UUID, LocalDate, LocalDateTime> position = Page.decode(continuationToken);
+        return executePage(entityManager, pageSize, List.of(new AndQueryFilter(
+                new SingleQueryFilter("id", GREATER_THAN_EQUAL_TO, position._1),
+                new OrQueryFilter(
+                        new SingleQueryFilter("id", GREATER_THAN, position._1),
+                        new AndQueryFilter(
+                                new SingleQueryFilter("id", EQUALS, position._1),
+                                new OrQueryFilter(
+                                        new SingleQueryFilter("valid_time_start", GREATER_THAN, position._2),
+                                        new AndQueryFilter(
+                                                new SingleQueryFilter("valid_time_start", EQUALS, position._2),
+                                                new SingleQueryFilter("system_time_start", GREATER_THAN, position._3)
+                                        )
+                                )
+                        )
+                )
+        )));
+    }
+
+    //one extra row is fetched to find out whether there is another page
+    @SuppressWarnings("unchecked")
+    private Page<T> executePage(final EntityManager entityManager, final int pageSize, final List<QueryFilter> seekFilters) {
+        Validate.isTrue(pageSize > 0, "pageSize must be positive");
+        final List<T> page = List.ofAll(createEntityQuery(entityManager, filters.appendAll(seekFilters), PAGE_ORDER, pageSize + 1)
+                .getResultList());
+        return new Page<>(page.take(pageSize), page.length() > pageSize);
+    }
+
+    private Query createEntityQuery(final EntityManager entityManager, final List<QueryFilter> filters,
+                                    final List<String> orderBy, final int limit) {
+        requireNonNull(entityManager, "entityManager cannot be null");
+        prepareEntityQuery(filters, orderBy, limit);
+        final Query nativeQuery = entityManager.createNativeQuery(getTemplate(query), queryClass);
+        query.getParameters()
+                .zipWithIndex()
+                .forEach(x -> nativeQuery.setParameter(x._2 + 1, QueryUtils.toJdbcValue(x._1)));
+        return nativeQuery;
+    }
+
+    //returns the optimised filters the query was given
+    private List<QueryFilter> prepareEntityQuery(final List<QueryFilter> filters, final List<String> orderBy, final int limit) {
+        checkNotProjected();
+        final List<QueryFilter> optimised = QueryFilterOptimiser.optimise(filters);
+        query.setFields(HashMap.empty());
+        query.setGroupBy(List.empty());
+        query.setOrderBy(orderBy);
+        query.setLimit(limit);
+        query.setFilters(optimised);
+        return optimised;
+    }
+
+    private void checkNotProjected() {
+        if (!columns.isEmpty() || !groupBy.isEmpty()) {
+            throw new IllegalStateException("projected queries must be executed with executeTuples or a RowMapper");
+        }
+    }
+
+    /*
+     * Each row is returned as an array of the selected columns, in the order they were passed to select
+     */
+    public List<Object[]> executeTuples(final EntityManager entityManager) {
+        return execute(entityManager, (resultSet, rowNum) -> {
+            final Object[] row = new Object[resultSet.getMetaData().getColumnCount()];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = resultSet.getObject(i + 1);
+            }
+            return row;
+        });
+    }
+
+    public <R> List<R> execute(final EntityManager entityManager, final RowMapper<R> rowMapper) {
+        return executeProjection(entityManager, columns, groupBy, -1, rowMapper);
+    }
+
+    /*
+     * AGGREGATE METHODS
+     * These are answered by the database, so no rows are transferred. They apply to the filters only, for grouped
+     * results use groupBy with select and Aggregates.
+     */
+
+    public long count(final EntityManager entityManager) {
+        return executeAggregate(entityManager, Aggregates.count(), (resultSet, rowNum) -> resultSet.getLong(1)).get();
+    }
+
+    public boolean exists(final EntityManager entityManager) {
+        return !executeProjection(entityManager, List.of("1"), List.empty(), 1, (resultSet, rowNum) -> true).isEmpty();
+    }
+
+    public Option<BigDecimal> sum(final EntityManager entityManager, final String column) {
+        return executeAggregate(entityManager, Aggregates.sum(column), (resultSet, rowNum) -> resultSet.getBigDecimal(1));
+    }
+
+    public <R> Option<R> min(final EntityManager entityManager, final String column, final Class<R> type) {
+        requireNonNull(type, "type cannot be null");
+        return executeAggregate(entityManager, Aggregates.min(column), (resultSet, rowNum) -> resultSet.getObject(1, type));
+    }
+
+    public <R> Option<R> max(final EntityManager entityManager, final String column, final Class<R> type) {
+        requireNonNull(type, "type cannot be null");
+        return executeAggregate(entityManager, Aggregates.max(column), (resultSet, rowNum) -> resultSet.getObject(1, type));
+    }
+
+    //aggregates over no rows are null, which comes back as none
+    private <R> Option<R> executeAggregate(final EntityManager entityManager, final String aggregate, final RowMapper<R> rowMapper) {
+        if (!groupBy.isEmpty()) {
+            throw new IllegalStateException("grouped aggregates must be selected and executed with executeTuples or a RowMapper");
+        }
+        return executeProjection(entityManager, List.of(aggregate), List.empty(), -1, rowMapper).headOption().flatMap(Option::of);
+    }
+
+    private <R> List<R> executeProjection(final EntityManager entityManager, final List<String> columns,
+                                          final List<String> groupBy, final int limit, final RowMapper<R> rowMapper) {
+        requireNonNull(entityManager, "entityManager cannot be null");
+        requireNonNull(rowMapper, "rowMapper cannot be null");
+        query.setFields(LinkedHashMap.ofEntries(columns.map(x -> new Tuple2<>(x, (Object) x))));
+        query.setGroupBy(groupBy);
+        query.setOrderBy(List.empty());
+        query.setLimit(limit);
+        query.setFilters(QueryFilterOptimiser.optimise(filters));
+        final List<Object> parameters = query.getParameters();
+        return List.ofAll(new JdbcTemplate(getDataSource(entityManager))
+                .query(getTemplate(query), statement -> QueryUtils.bindAll(statement, parameters), rowMapper));
+    }
+
+    public static CacheStats getTemplateCacheStats() {
+        return TEMPLATES.stats();
+    }
+
+    /*
+     * Hits and misses of the AsOfResultCache used by executeUnmanaged, counting only the queries it can cache
+     */
+    public static CacheStats getAsOfCacheStats() {
+        return AsOfResultCache.shared().stats();
+    }
+
+    /*
+     * Drops every cached result, for when the tables have been written other than through the query builders
+     */
+    public static void invalidateAsOfCache() {
+        AsOfResultCache.shared().invalidateAll();
+    }
+
+    /*
+     * Renders the template for the query's shape once, however many threads ask for it at the same time
+     */
+    private static String getTemplate(final SelectQuery<?> query) {
+        try {
+            return TEMPLATES.get(query.getShape(), query::buildParameterised);
+        } catch (final ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static DataSource getDataSource(final EntityManager entityManager) {
+        return ((EntityManagerFactoryInfo) entityManager.getEntityManagerFactory()).getDataSource();
+    }
+
     public List<T> getResults() {
         return results.getOrElseThrow(
                 () -> new IllegalStateException("call to getResults before executing query"));
@@ -1,6 +1,7 @@
 package kieranbrown.bitemp.database;
 
 import io.vavr.Tuple3;
+import io.vavr.collection.List;
 import kieranbrown.bitemp.utils.QueryUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.builder.EqualsBuilder;
@@ -28,6 +29,30 @@ public class SingleQueryFilter implements QueryFilter {
         return filter.apply((x, y, z) -> String.format("%s %s %s", x, y.getValue(), QueryUtils.toString(z)));
     }
 
+    @Override
+    public String getParameterisedFilters() {
+        return filter.apply((x, y, z) -> String.format("%s %s %s", x, y.getValue(), QueryUtils.toPlaceholder(z)));
+    }
+
+    @Override
+    public List<Object> getParameters() {
+        return QueryUtils.isSqlExpression(filter._3) ? List.empty() : List.of(filter._3);
+    }
+
+    @Override
+    public QueryShape getShape() {
+        return QueryShape.of(filter._1, filter._2, filter._3);
+    }
+
+    @Override
+    public void accept(final QueryFilterVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    public Tuple3<String, QueryEquality, Object> getFilter() {
+        return filter;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
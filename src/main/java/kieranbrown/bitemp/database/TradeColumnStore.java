@@ -0,0 +1,409 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.Tuple3;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import kieranbrown.bitemp.models.BitemporalKey;
+import kieranbrown.bitemp.models.EntityMetamodel;
+import kieranbrown.bitemp.models.Trade;
+import kieranbrown.bitemp.utils.Constants;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/*
+ * Trade versions held column by column in primitive arrays rather than as objects: valid times as epoch day ints,
+ * system times as epoch microsecond longs (the precision of the timestamp(6) columns), prices as longs of hundredths
+ * (the scale of the decimal(5,2) column), stocks as codes into a dictionary of distinct stocks, both flags packed into
+ * one int and ids as their two halves. A row takes 60 bytes, where a Trade with its key, UUID, dates, times and price
+ * takes several hundred.
+ *
+ * A scan evaluates each top level SingleQueryFilter (and those inside top level ANDs) as a tight loop over its column,
+ * narrowing a vector of the row numbers that still match, so later filters only look at those rows. Each filter's value
+ * is converted to the column's representation once: comparisons on the numeric and time columns become a range of
+ * longs, and comparisons on stock a table of which dictionary codes match. Any other filter, or one whose value has no
+ * such form, is compiled by QueryFilterCompiler and tested on the rows left once the columns are done.
+ *
+ * Rows are only appended. MARIADB_END_SYSTEM_TIME is not a whole microsecond, so it is held as the microsecond it falls
+ * in and that microsecond reads back as it, which keeps open versions open. Reads share a lock and writes take it
+ * exclusively.
+ */
+public class TradeColumnStore {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int PRICE_SCALE = 2;
+    private static final long END_OF_TIME = PeriodBounds.toEpochMicros(Constants.MARIADB_END_SYSTEM_TIME);
+
+    private final EntityMetamodel<Trade> metamodel;
+    private final Clock clock;
+    private final ReadWriteLock lock;
+    private final Map<String, Integer> stockCodes;
+    private final java.util.List<String> stocks;
+    private int size;
+    private long[] idHigh;
+    private long[] idLow;
+    private int[] validTimeStart;
+    private int[] validTimeEnd;
+    private long[] systemTimeStart;
+    private long[] systemTimeEnd;
+    private long[] price;
+    private int[] volume;
+    private int[] stock;
+    private int[] flags;
+
+    public TradeColumnStore() {
+        this(Clock.systemDefaultZone());
+    }
+
+    public TradeColumnStore(final Clock clock) {
+        this.metamodel = EntityMetamodel.forClass(Trade.class);
+        this.clock = requireNonNull(clock, "clock cannot be null");
+        this.lock = new ReentrantReadWriteLock();
+        this.stockCodes = new HashMap<>();
+        this.stocks = new ArrayList<>();
+        this.size = 0;
+        this.idHigh = new long[INITIAL_CAPACITY];
+        this.idLow = new long[INITIAL_CAPACITY];
+        this.validTimeStart = new int[INITIAL_CAPACITY];
+        this.validTimeEnd = new int[INITIAL_CAPACITY];
+        this.systemTimeStart = new long[INITIAL_CAPACITY];
+        this.systemTimeEnd = new long[INITIAL_CAPACITY];
+        this.price = new long[INITIAL_CAPACITY];
+        this.volume = new int[INITIAL_CAPACITY];
+        this.stock = new int[INITIAL_CAPACITY];
+        this.flags = new int[INITIAL_CAPACITY];
+    }
+
+    /*
+     * Prices must have at most two decimal places, as the price column does
+     */
+    public TradeColumnStore add(final Trade trade) {
+        requireNonNull(trade, "trade cannot be null");
+        write(() -> append(trade));
+        return this;
+    }
+
+    public TradeColumnStore addAll(final Iterable<? extends Trade> trades) {
+        requireNonNull(trades, "trades cannot be null");
+        write(() -> trades.forEach(this::append));
+        return this;
+    }
+
+    public int size() {
+        return read(() -> size);
+    }
+
+    /*
+     * A new Trade holding the values of the row
+     */
+    public Trade get(final int row) {
+        return read(() -> {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException(String.format("row %d is not in [0, %d)", row, size));
+            }
+            return materialise(row);
+        });
+    }
+
+    /*
+     * The numbers of the rows matching every filter, in the order they were added
+     */
+    public int[] scan(final List<QueryFilter> filters) {
+        requireNonNull(filters, "filters cannot be null");
+        return read(() -> scan(filters, LocalDateTime.now(clock)));
+    }
+
+    public int count(final List<QueryFilter> filters) {
+        return scan(filters).length;
+    }
+
+    public List<Trade> select(final List<QueryFilter> filters) {
+        requireNonNull(filters, "filters cannot be null");
+        return read(() -> {
+            final int[] rows = scan(filters, LocalDateTime.now(clock));
+            final Trade[] trades = new Trade[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                trades[i] = materialise(rows[i]);
+            }
+            return List.of(trades);
+        });
+    }
+
+    private int[] scan(final List<QueryFilter> filters, final LocalDateTime now) {
+        final int[] selection = new int[size];
+        for (int i = 0; i < size; i++) {
+            selection[i] = i;
+        }
+        int count = size;
+        final java.util.List<QueryFilter> residual = new ArrayList<>();
+        for (final QueryFilter filter : conjuncts(filters)) {
+            final int filtered = filter instanceof SingleQueryFilter
+                    ? filterColumn(((SingleQueryFilter) filter).getFilter(), now, selection, count)
+                    : -1;
+            if (filtered < 0) {
+                residual.add(filter);
+            } else {
+                count = filtered;
+            }
+        }
+        if (!residual.isEmpty()) {
+            final Predicate<Trade> remaining = QueryFilterCompiler.compile(metamodel, List.ofAll(residual), now);
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (remaining.test(materialise(selection[i]))) {
+                    selection[kept++] = selection[i];
+                }
+            }
+            count = kept;
+        }
+        return count == selection.length ? selection : Arrays.copyOf(selection, count);
+    }
+
+    /*
+     * Narrows the selection to the rows passing the comparison, returning how many are left, or -1 if the comparison
+     * cannot be evaluated on the column's representation
+     */
+    private int filterColumn(final Tuple3<String, QueryEquality, Object> filter, final LocalDateTime now,
+                             final int[] selection, final int count) {
+        final Object value = QueryFilterEvaluator.resolve(filter._3, now);
+        final QueryEquality equality = filter._2;
+        switch (filter._1) {
+            case "id":
+                return toUuid(value).map(x -> filterUuid(x, equality, selection, count)).getOrElse(-1);
+            case "stock":
+                return value instanceof String ? filterStock((String) value, equality, selection, count) : -1;
+            case "price":
+                return value instanceof Number
+                        ? filterLongs(price, LongRange.of(equality, toBigDecimal((Number) value).movePointRight(PRICE_SCALE)), selection, count)
+                        : -1;
+            case "volume":
+                return value instanceof Number ? filterInts(volume, LongRange.of(equality, toBigDecimal((Number) value)), selection, count) : -1;
+            case "valid_time_start":
+                return value instanceof LocalDate ? filterInts(validTimeStart, LongRange.of(equality, toPoint((LocalDate) value)), selection, count) : -1;
+            case "valid_time_end":
+                return value instanceof LocalDate ? filterInts(validTimeEnd, LongRange.of(equality, toPoint((LocalDate) value)), selection, count) : -1;
+            case "system_time_start":
+                return value instanceof LocalDateTime ? filterLongs(systemTimeStart, LongRange.of(equality, toPoint((LocalDateTime) value)), selection, count) : -1;
+            case "system_time_end":
+                return value instanceof LocalDateTime ? filterLongs(systemTimeEnd, LongRange.of(equality, toPoint((LocalDateTime) value)), selection, count) : -1;
+            case "buy_sell_flag":
+                return toChar(value).map(x -> filterFlag(16, LongRange.of(equality, BigDecimal.valueOf(x)), selection, count)).getOrElse(-1);
+            case "market_limit_flag":
+                return toChar(value).map(x -> filterFlag(0, LongRange.of(equality, BigDecimal.valueOf(x)), selection, count)).getOrElse(-1);
+            default:
+                return -1;
+        }
+    }
+
+    private static int filterInts(final int[] column, final LongRange range, final int[] selection, final int count) {
+        final long min = range.min;
+        final long max = range.max;
+        final boolean inside = !range.negated;
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            final int row = selection[i];
+            final int x = column[row];
+            if ((x >= min && x <= max) == inside) {
+                selection[kept++] = row;
+            }
+        }
+        return kept;
+    }
+
+    private static int filterLongs(final long[] column, final LongRange range, final int[] selection, final int count) {
+        final long min = range.min;
+        final long max = range.max;
+        final boolean inside = !range.negated;
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            final int row = selection[i];
+            final long x = column[row];
+            if ((x >= min && x <= max) == inside) {
+                selection[kept++] = row;
+            }
+        }
+        return kept;
+    }
+
+    private int filterFlag(final int shift, final LongRange range, final int[] selection, final int count) {
+        final long min = range.min;
+        final long max = range.max;
+        final boolean inside = !range.negated;
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            final int row = selection[i];
+            final int x = (flags[row] >>> shift) & 0xFFFF;
+            if ((x >= min && x <= max) == inside) {
+                selection[kept++] = row;
+            }
+        }
+        return kept;
+    }
+
+    //each distinct stock is compared once, then rows only look up their code
+    private int filterStock(final String value, final QueryEquality equality, final int[] selection, final int count) {
+        final boolean[] matches = new boolean[stocks.size()];
+        for (int code = 0; code < matches.length; code++) {
+            matches[code] = QueryFilterEvaluator.test(equality, stocks.get(code).compareTo(value));
+        }
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            final int row = selection[i];
+            if (matches[stock[row]]) {
+                selection[kept++] = row;
+            }
+        }
+        return kept;
+    }
+
+    //UUIDs order as their lower case strings do, which is the unsigned order of the two halves
+    private int filterUuid(final UUID value, final QueryEquality equality, final int[] selection, final int count) {
+        final long high = value.getMostSignificantBits();
+        final long low = value.getLeastSignificantBits();
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            final int row = selection[i];
+            final int comparison = idHigh[row] != high
+                    ? Long.compareUnsigned(idHigh[row], high)
+                    : Long.compareUnsigned(idLow[row], low);
+            if (QueryFilterEvaluator.test(equality, comparison)) {
+                selection[kept++] = row;
+            }
+        }
+        return kept;
+    }
+
+    private void append(final Trade trade) {
+        final BitemporalKey key = trade.getBitemporalKey();
+        final long cents;
+        try {
+            cents = trade.getPrice().movePointRight(PRICE_SCALE).longValueExact();
+        } catch (final ArithmeticException e) {
+            throw new IllegalArgumentException(String.format("price %s cannot be held to %d decimal places",
+                    trade.getPrice(), PRICE_SCALE), e);
+        }
+        if (size == idHigh.length) {
+            grow();
+        }
+        idHigh[size] = key.getId().getMostSignificantBits();
+        idLow[size] = key.getId().getLeastSignificantBits();
+        validTimeStart[size] = Math.toIntExact(key.getValidTimeStart().toEpochDay());
+        validTimeEnd[size] = Math.toIntExact(key.getValidTimeEnd().toEpochDay());
+        systemTimeStart[size] = toMicros(trade.getSystemTimeStart());
+        systemTimeEnd[size] = toMicros(trade.getSystemTimeEnd());
+        price[size] = cents;
+        volume[size] = trade.getVolume();
+        stock[size] = stockCodes.computeIfAbsent(trade.getStock(), x -> {
+            stocks.add(x);
+            return stocks.size() - 1;
+        });
+        flags[size] = trade.getBuySellFlag() << 16 | trade.getMarketLimitFlag();
+        size++;
+    }
+
+    private void grow() {
+        final int capacity = idHigh.length * 2;
+        idHigh = Arrays.copyOf(idHigh, capacity);
+        idLow = Arrays.copyOf(idLow, capacity);
+        validTimeStart = Arrays.copyOf(validTimeStart, capacity);
+        validTimeEnd = Arrays.copyOf(validTimeEnd, capacity);
+        systemTimeStart = Arrays.copyOf(systemTimeStart, capacity);
+        systemTimeEnd = Arrays.copyOf(systemTimeEnd, capacity);
+        price = Arrays.copyOf(price, capacity);
+        volume = Arrays.copyOf(volume, capacity);
+        stock = Arrays.copyOf(stock, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+
+    private Trade materialise(final int row) {
+        return new Trade()
+                .setBitemporalKey(new BitemporalKey.Builder()
+                        .setTradeId(new UUID(idHigh[row], idLow[row]))
+                        .setValidTimeStart(LocalDate.ofEpochDay(validTimeStart[row]))
+                        .setValidTimeEnd(LocalDate.ofEpochDay(validTimeEnd[row]))
+                        .build())
+                .setStock(stocks.get(stock[row]))
+                .setPrice(BigDecimal.valueOf(price[row], PRICE_SCALE))
+                .setVolume(volume[row])
+                .setBuySellFlag((char) (flags[row] >>> 16))
+                .setMarketLimitFlag((char) flags[row])
+                .setSystemTimeStart(fromMicros(systemTimeStart[row]))
+                .setSystemTimeEnd(fromMicros(systemTimeEnd[row]));
+    }
+
+    private static long toMicros(final LocalDateTime time) {
+        return PeriodBounds.toEpochMicros(time);
+    }
+
+    private static LocalDateTime fromMicros(final long micros) {
+        if (micros == END_OF_TIME) {
+            return Constants.MARIADB_END_SYSTEM_TIME;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    private static BigDecimal toPoint(final LocalDate date) {
+        return BigDecimal.valueOf(date.toEpochDay());
+    }
+
+    //exact, so a time between two microseconds compares as the stored values either side of it would
+    private static BigDecimal toPoint(final LocalDateTime time) {
+        if (time.equals(Constants.MARIADB_END_SYSTEM_TIME)) {
+            return BigDecimal.valueOf(END_OF_TIME);
+        }
+        return BigDecimal.valueOf(time.toEpochSecond(ZoneOffset.UTC)).movePointRight(6).add(BigDecimal.valueOf(time.getNano(), 3));
+    }
+
+    private static BigDecimal toBigDecimal(final Number number) {
+        return number instanceof BigDecimal ? (BigDecimal) number : new BigDecimal(number.toString());
+    }
+
+    private static Option<UUID> toUuid(final Object value) {
+        if (value instanceof UUID) {
+            return Option.of((UUID) value);
+        }
+        return value instanceof String ? Option.of((String) value).toTry().map(UUID::fromString).toOption() : Option.none();
+    }
+
+    private static Option<Character> toChar(final Object value) {
+        if (value instanceof Character) {
+            return Option.of((Character) value);
+        }
+        return value instanceof String && ((String) value).length() == 1 ? Option.of(((String) value).charAt(0)) : Option.none();
+    }
+
+    private static List<QueryFilter> conjuncts(final List<QueryFilter> filters) {
+        return filters.flatMap(x -> x instanceof AndQueryFilter ? conjuncts(((AndQueryFilter) x).getFilterList()) : List.of(x));
+    }
+
+    private <R> R read(final Supplier<R> action) {
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void write(final Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -3,9 +3,10 @@ package kieranbrown.bitemp.database;
 import io.vavr.Tuple2;
 import io.vavr.collection.List;
 import kieranbrown.bitemp.models.BitemporalModel;
+import kieranbrown.bitemp.models.EntityMetamodel;
 import kieranbrown.bitemp.utils.QueryUtils;
 
-import javax.persistence.Entity;
+import java.util.function.Function;
 
 import static java.util.Objects.requireNonNull;
 
@@ -34,23 +35,37 @@ class UpdateQuery<T extends BitemporalModel<T>> {
         return "UPDATE " +
                 getTableName() +
                 " SET " +
-                getFieldsToUpdate() +
+                getFieldsToUpdate(QueryUtils::toString) +
                 " WHERE " +
-                getFilters();
+                getFilters(QueryFilterRenderer.literal());
+    }
+
+    String buildParameterised() {
+        return "UPDATE " +
+                getTableName() +
+                " SET " +
+                getFieldsToUpdate(QueryUtils::toPlaceholder) +
+                " WHERE " +
+                getFilters(QueryFilterRenderer.parameterised());
+    }
+
+    List<Object> getParameters() {
+        return fields.map(Tuple2::_2)
+                .filter(x -> !QueryUtils.isSqlExpression(x))
+                .appendAll(filters.flatMap(QueryFilter::getParameters));
     }
 
     private String getTableName() {
-        return queryClass.getAnnotation(Entity.class).name();
+        return EntityMetamodel.forClass(queryClass).getTableName();
     }
 
-    private String getFieldsToUpdate() {
-        return fields.map(x -> x.map2(QueryUtils::toString))
+    private String getFieldsToUpdate(final Function<Object, String> mapValue) {
+        return fields.map(x -> x.map2(mapValue))
                 .map(x -> x._1 + " = " + x._2)
                 .mkString(", ");
     }
 
-    private String getFilters() {
-        return filters.map(QueryFilter::getFilters)
-                .mkString(" AND ");
+    private String getFilters(final QueryFilterRenderer renderer) {
+        return renderer.render(filters, " AND ").toString();
     }
 }
@@ -1,20 +1,18 @@
 package kieranbrown.bitemp.database;
 
-import com.rits.cloning.Cloner;
 import io.vavr.Tuple2;
 import io.vavr.collection.List;
 import io.vavr.control.Option;
-import kieranbrown.bitemp.models.BitemporalKey;
 import kieranbrown.bitemp.models.BitemporalModel;
-import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.orm.jpa.EntityManagerFactoryInfo;
+import kieranbrown.bitemp.models.EntityMetamodel;
+import kieranbrown.bitemp.utils.Constants;
 
 import javax.persistence.EntityManager;
 import javax.sql.DataSource;
 import java.time.LocalDate;
-import java.util.ArrayList;
 
 import static java.util.Objects.requireNonNull;
+import static kieranbrown.bitemp.database.JdbcStatements.*;
 
 public class UpdateQueryBuilder<T extends BitemporalModel<T>> {
     private final Class<T> queryClass;
@@ -46,8 +44,13 @@ public class UpdateQueryBuilder<T extends BitemporalModel<T>> {
 
     public void execute(final EntityManager entityManager) throws InvalidPeriodException {
         final DataSource dataSource = getDataSource(entityManager);
-        validTimePeriod.peek(validTime -> updateValidTimePeriod(validTime, entityManager, dataSource))
-                .onEmpty(() -> update(dataSource));
+        AsOfResultCache.shared().invalidate(queryClass);
+        try {
+            validTimePeriod.peek(validTime -> updateValidTimePeriod(validTime, dataSource))
+                    .onEmpty(() -> update(dataSource));
+        } finally {
+            AsOfResultCache.shared().invalidate(queryClass);
+        }
 
 //        final List<T> results = new SelectQueryBuilder<>(queryClass).where(filters)
 //                .execute(entityManager)
@@ -73,81 +76,82 @@ public class UpdateQueryBuilder<T extends BitemporalModel<T>> {
 //                .execute(entityManager);
     }
 
-    private void updateValidTimePeriod(final Tuple2<LocalDate, LocalDate> validTime, final EntityManager entityManager, final DataSource dataSource) {
-        final SelectQueryBuilder<T> selectQueryBuilder = new SelectQueryBuilder<>(queryClass).where(filters);
-        final List<T> noTimeResults = selectQueryBuilder.execute(entityManager).getResults();
-        final List<T> timeResults = selectQueryBuilder.validTimeOverlaps(validTime._1, validTime._2).execute(entityManager).getResults();
-
-        if (timeResults.length() > 0) {
-            timeResults.forEach(entityManager::detach);
-
-            final String firstSql = new UpdateQuery<>(queryClass)
-                    .addFields(List.of(new Tuple2<>("valid_time_end", validTime._1)))
-                    .addFilters(filters.append(
-                            new OrQueryFilter(timeResults.map(y -> new SingleQueryFilter("id", QueryEquality.EQUALS, y.getBitemporalKey().getId())))
-                    ))
-                    .build();
-            new JdbcTemplate(dataSource).execute(firstSql);
-
-            final java.util.List<T> toUpdate = new ArrayList<>();
-            final java.util.List<T> toInsert = new ArrayList<>();
-
-            timeResults.forEach(result -> {
-                final BitemporalKey key = result.getBitemporalKey();
-
-                toUpdate.add(new Cloner().deepClone(result).setBitemporalKey(new BitemporalKey.Builder()
-                        .setTradeId(key.getId())
-                        .setValidTimeStart(validTime._1)
-                        .setValidTimeEnd(validTime._2)
-                        .build()
-                ));
-
-                toInsert.add(new Cloner().deepClone(result).setBitemporalKey(new BitemporalKey.Builder()
-                        .setTradeId(key.getId())
-                        .setValidTimeStart(validTime._2)
-                        .setValidTimeEnd(key.getValidTimeEnd())
-                        .build()));
-            });
-
-            try {
-                new InsertQueryBuilder<>(queryClass)
-                        .fromAll(List.ofAll(toUpdate))
-                        .execute(entityManager);
-
-                new JdbcTemplate(dataSource).execute(new UpdateQuery<>(queryClass)
+    /*
+     * Applies the update to the versions held in the store, splitting them at the period's bounds in the same way
+     */
+    public void execute(final InMemoryStore<T> store) throws InvalidPeriodException {
+        requireNonNull(store, "store cannot be null");
+        validTimePeriod.peek(validTime -> store.updateValidTimePeriod(filters, fields, validTime._1, validTime._2))
+                .onEmpty(() -> store.update(filters, fields));
+    }
+
+    /*
+     * Splits every row overlapping the period at the period's bounds and applies the update to the part inside it, all
+     * with INSERT ... SELECT and UPDATE statements so no rows are read into the application. Each statement only picks
+     * the rows it is meant to change from what the earlier ones left behind:
+     *
+     *   1. rows starting before the period get a copy covering [start, min(end, valid_time_end)) with the new values,
+     *      one statement for each side of the min
+     *   2. rows ending after the period get a copy covering [end, valid_time_end) with the old values
+     *   3. rows starting inside the period are cut at the period's end and given the new values
+     *   4. rows starting before the period are cut at its start
+     *
+     * Copies made by (1) start on the period's start and overlap it, so (3) may match them again, which leaves them as
+     * they are. Nothing else created along the way overlaps the period. Rows that match the filters but do not overlap
+     * the period are left alone.
+     */
+    private void updateValidTimePeriod(final Tuple2<LocalDate, LocalDate> validTime, final DataSource dataSource) {
+        final LocalDate start = validTime._1;
+        final LocalDate end = validTime._2;
+        final List<QueryFilter> overlapping = filters.append(SelectQueryBuilder.validTimeOverlaps.apply(start, end));
+        final List<String> columns = EntityMetamodel.forClass(queryClass).getDataColumnNames();
+        final List<String> unchangedColumns = columns.removeAll(fields.map(Tuple2::_1));
+        final List<Tuple2<String, Object>> newSystemTime = List.of(
+                new Tuple2<>("system_time_start", "CURRENT_TIMESTAMP"),
+                new Tuple2<>("system_time_end", Constants.MARIADB_END_SYSTEM_TIME));
+
+        final List<InsertSelectQuery<T>> copies = List.of(
+                new InsertSelectQuery<>(queryClass)
+                        .addCopiedColumns(unchangedColumns.prepend("id"))
+                        .addFields(fields.append(new Tuple2<>("valid_time_start", start))
+                                .append(new Tuple2<>("valid_time_end", end))
+                                .appendAll(newSystemTime))
+                        .addFilters(overlapping.append(new SingleQueryFilter("valid_time_start", QueryEquality.LESS_THAN, start))
+                                .append(new SingleQueryFilter("valid_time_end", QueryEquality.GREATER_THAN, end))),
+                new InsertSelectQuery<>(queryClass)
+                        .addCopiedColumns(unchangedColumns.prepend("id").append("valid_time_end"))
+                        .addFields(fields.append(new Tuple2<>("valid_time_start", start))
+                                .appendAll(newSystemTime))
+                        .addFilters(overlapping.append(new SingleQueryFilter("valid_time_start", QueryEquality.LESS_THAN, start))
+                                .append(new SingleQueryFilter("valid_time_end", QueryEquality.LESS_THAN_EQUAL_TO, end))),
+                new InsertSelectQuery<>(queryClass)
+                        .addCopiedColumns(columns.prepend("id").append("valid_time_end"))
+                        .addFields(List.of(new Tuple2<String, Object>("valid_time_start", end)).appendAll(newSystemTime))
+                        .addFilters(overlapping.append(new SingleQueryFilter("valid_time_end", QueryEquality.GREATER_THAN, end))));
+
+        final List<UpdateQuery<T>> updates = List.of(
+                new UpdateQuery<>(queryClass)
+                        .addFields(List.of(new Tuple2<>("valid_time_end", end)))
+                        .addFilters(overlapping.append(new SingleQueryFilter("valid_time_start", QueryEquality.GREATER_THAN_EQUAL_TO, start))
+                                .append(new SingleQueryFilter("valid_time_end", QueryEquality.GREATER_THAN, end))),
+                new UpdateQuery<>(queryClass)
                         .addFields(fields)
-                        .addFilters(filters.append(new SingleQueryFilter("valid_time_start", QueryEquality.EQUALS, validTime._1)))
-                        .build()
-                );
-
-                new InsertQueryBuilder<>(queryClass)
-                        .fromAll(List.ofAll(toInsert))
-                        .execute(entityManager);
-            } catch (final InvalidPeriodException e) {
-            }
-        }
-        if (noTimeResults.removeAll(timeResults).length() > 0) {
-            final String updateOthersSql = new UpdateQuery<>(queryClass)
-                    .addFields(fields)
-                    .addFilters(filters.append(
-                            new NotQueryFilter(new OrQueryFilter(timeResults.map(y -> new SingleQueryFilter("id", QueryEquality.EQUALS, y.getBitemporalKey().getId()))))
-                    ))
-                    .build();
-            new JdbcTemplate(dataSource).execute(updateOthersSql);
-        }
+                        .addFilters(overlapping.append(new SingleQueryFilter("valid_time_start", QueryEquality.GREATER_THAN_EQUAL_TO, start))),
+                new UpdateQuery<>(queryClass)
+                        .addFields(List.of(new Tuple2<>("valid_time_end", start)))
+                        .addFilters(overlapping.append(new SingleQueryFilter("valid_time_start", QueryEquality.LESS_THAN, start))));
+
+        inTransaction(dataSource, () -> {
+            copies.forEach(x -> executeUpdate(dataSource, x.buildParameterised(), x.getParameters()));
+            updates.forEach(x -> executeUpdate(dataSource, x.buildParameterised(), x.getParameters()));
+        });
     }
 
     private void update(final DataSource dataSource) {
-        final String sql = new UpdateQuery<>(queryClass)
+        final UpdateQuery<T> query = new UpdateQuery<>(queryClass)
                 .addFields(fields)
-                .addFilters(filters)
-                .build();
-
-//        System.out.println(sql);
-        new JdbcTemplate(dataSource).execute(sql);
-    }
+                .addFilters(filters);
 
-    private DataSource getDataSource(final EntityManager entityManager) {
-        return ((EntityManagerFactoryInfo) entityManager.getEntityManagerFactory()).getDataSource();
+        executeUpdate(dataSource, query.buildParameterised(), query.getParameters());
     }
 }
@@ -0,0 +1,307 @@
+package kieranbrown.bitemp.models;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.LinkedHashMap;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import kieranbrown.bitemp.utils.ValueCodec;
+import kieranbrown.bitemp.utils.ValueCodecs;
+
+import javax.persistence.Column;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static java.util.Objects.requireNonNull;
+
+/*
+ * What the query builders need to know about a model class, read from its annotations once and cached per class: the
+ * table, its columns in a fixed order and, for each column, MethodHandles to get and set it on a model and the codec
+ * for its values.
+ *
+ * Columns are ordered as the model's own fields, then the bitemporal key (id, valid_time_start, valid_time_end), then
+ * system_time_start and system_time_end.
+ */
+public final class EntityMetamodel<T extends BitemporalModel<T>> {
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final MethodHandle EMBEDDED_OR_NEW;
+
+    static {
+        try {
+            EMBEDDED_OR_NEW = MethodHandles.lookup().findStatic(EntityMetamodel.class, "embeddedOrNew",
+                    MethodType.methodType(Object.class, Object.class, MethodHandle.class, MethodHandle.class));
+        } catch (final NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final ClassValue<EntityMetamodel<?>> METAMODELS = new ClassValue<EntityMetamodel<?>>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        protected EntityMetamodel<?> computeValue(final Class<?> type) {
+            return new EntityMetamodel(type);
+        }
+    };
+
+    private final MethodHandle constructor;
+    private final String tableName;
+    private final List<Attribute<T>> columns;
+    private final List<Attribute<T>> dataColumns;
+    private final LinkedHashMap<String, Attribute<T>> columnsByName;
+    private final ModelCopier<T> copier;
+
+    private EntityMetamodel(final Class<T> clazz) {
+        final Entity entity = clazz.getAnnotation(Entity.class);
+        if (entity == null) {
+            throw new IllegalArgumentException(String.format("%s is not an entity", clazz.getName()));
+        }
+        this.constructor = constructor(clazz);
+        this.tableName = entity.name();
+        this.columns = getAttributes(clazz);
+        this.dataColumns = columns.filter(x -> !x.isBitemporal());
+        this.columnsByName = LinkedHashMap.ofEntries(columns.map(x -> new Tuple2<>(x.getName(), x)));
+        this.copier = new ModelCopier<>(constructor, getFieldCopiers(clazz));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T extends BitemporalModel<T>> EntityMetamodel<T> forClass(final Class<T> clazz) {
+        return (EntityMetamodel<T>) METAMODELS.get(requireNonNull(clazz, "class cannot be null"));
+    }
+
+    /*
+     * A new model with none of its columns set, for the columns to be set on one at a time
+     */
+    @SuppressWarnings("unchecked")
+    public T newInstance() {
+        try {
+            return (T) (Object) constructor.invokeExact();
+        } catch (final Throwable e) {
+            throw new IllegalStateException("error creating model", e);
+        }
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public List<Attribute<T>> getColumns() {
+        return columns;
+    }
+
+    /*
+     * The columns the model declares itself, leaving out the key and system time columns every model has
+     */
+    public List<Attribute<T>> getDataColumns() {
+        return dataColumns;
+    }
+
+    public List<String> getColumnNames() {
+        return columns.map(Attribute::getName);
+    }
+
+    public List<String> getDataColumnNames() {
+        return dataColumns.map(Attribute::getName);
+    }
+
+    public Option<Attribute<T>> getColumn(final String name) {
+        return columnsByName.get(name);
+    }
+
+    ModelCopier<T> getCopier() {
+        return copier;
+    }
+
+    private static <T> List<Attribute<T>> getAttributes(final Class<?> clazz) {
+        if (clazz == null) {
+            return List.empty();
+        }
+        final boolean bitemporal = clazz == BitemporalModel.class;
+        return List.of(clazz.getDeclaredFields())
+                .filter(x -> !Modifier.isStatic(x.getModifiers()))
+                .<Attribute<T>>flatMap(x -> {
+                    if (x.isAnnotationPresent(EmbeddedId.class)) {
+                        return EntityMetamodel.<T>getEmbeddedAttributes(x, bitemporal);
+                    } else if (x.isAnnotationPresent(Column.class)) {
+                        return List.of(new Attribute<T>(getColumnName(x), x.getType(), bitemporal,
+                                getter(x), setter(x).asType(SETTER_TYPE)));
+                    }
+                    return List.empty();
+                })
+                .appendAll(EntityMetamodel.<T>getAttributes(clazz.getSuperclass()));
+    }
+
+    /*
+     * (target, source) -> target.field = source.field for each persistent field, copying the embedded key as a whole
+     * rather than column by column
+     */
+    private static List<MethodHandle> getFieldCopiers(final Class<?> clazz) {
+        if (clazz == null) {
+            return List.empty();
+        }
+        return List.of(clazz.getDeclaredFields())
+                .filter(x -> !Modifier.isStatic(x.getModifiers()))
+                .filter(x -> x.isAnnotationPresent(Column.class) || x.isAnnotationPresent(EmbeddedId.class))
+                .map(x -> MethodHandles.filterArguments(setter(x), 1, getter(x)).asType(SETTER_TYPE))
+                .appendAll(getFieldCopiers(clazz.getSuperclass()));
+    }
+
+    /*
+     * The getter goes through the model's embedded object, and the setter creates that object first if the model does
+     * not have one yet
+     */
+    private static <T> List<Attribute<T>> getEmbeddedAttributes(final Field embedded, final boolean bitemporal) {
+        final MethodHandle embeddedGetter = getter(embedded);
+        final MethodHandle embeddedOrNew = MethodHandles.insertArguments(EMBEDDED_OR_NEW, 1, embeddedGetter, setter(embedded))
+                .asType(embeddedGetter.type());
+
+        return List.of(embedded.getType().getDeclaredFields())
+                .filter(x -> !Modifier.isStatic(x.getModifiers()))
+                .filter(x -> x.isAnnotationPresent(Column.class))
+                .map(x -> new Attribute<T>(getColumnName(x), x.getType(), bitemporal,
+                        MethodHandles.filterArguments(getter(x), 0, embeddedGetter),
+                        MethodHandles.filterArguments(setter(x), 0, embeddedOrNew).asType(SETTER_TYPE)));
+    }
+
+    private static Object embeddedOrNew(final Object model, final MethodHandle getter, final MethodHandle setter) throws Throwable {
+        final Object current = getter.invoke(model);
+        if (current != null) {
+            return current;
+        }
+        final Object created = getter.type().returnType().getDeclaredConstructor().newInstance();
+        setter.invoke(model, created);
+        return created;
+    }
+
+    private static MethodHandle constructor(final Class<?> clazz) {
+        try {
+            final Constructor<?> declaredConstructor = clazz.getDeclaredConstructor();
+            declaredConstructor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(declaredConstructor).asType(MethodType.methodType(Object.class));
+        } catch (final NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException(String.format("%s has no usable no-argument constructor", clazz.getName()), e);
+        }
+    }
+
+    private static String getColumnName(final Field field) {
+        final String annotationName = field.getAnnotation(Column.class).name();
+        return "".equals(annotationName) ? field.getName() : annotationName;
+    }
+
+    private static MethodHandle getter(final Field field) {
+        field.setAccessible(true);
+        try {
+            return MethodHandles.lookup().unreflectGetter(field);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalArgumentException(String.format("error reading field %s", field.getName()), e);
+        }
+    }
+
+    private static MethodHandle setter(final Field field) {
+        field.setAccessible(true);
+        try {
+            return MethodHandles.lookup().unreflectSetter(field);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalArgumentException(String.format("error writing field %s", field.getName()), e);
+        }
+    }
+
+    public static final class Attribute<T> {
+        private final String name;
+        private final Class<?> type;
+        private final boolean bitemporal;
+        private final MethodHandle getter;
+        //reads primitive columns without boxing, null for the others
+        private final MethodHandle primitiveGetter;
+        private final MethodHandle setter;
+        private final ValueCodec<Object> codec;
+
+        @SuppressWarnings("unchecked")
+        private Attribute(final String name, final Class<?> type, final boolean bitemporal,
+                          final MethodHandle getter, final MethodHandle setter) {
+            this.name = name;
+            this.type = type;
+            this.bitemporal = bitemporal;
+            this.getter = getter.asType(GETTER_TYPE);
+            this.primitiveGetter = type.isPrimitive() ? getter.asType(MethodType.methodType(type, Object.class)) : null;
+            this.setter = setter;
+            this.codec = (ValueCodec<Object>) ValueCodecs.forClass(type);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        public ValueCodec<Object> getCodec() {
+            return codec;
+        }
+
+        public Object get(final T model) {
+            try {
+                return (Object) getter.invokeExact((Object) model);
+            } catch (final Throwable e) {
+                throw new IllegalStateException(String.format("error retrieving value for column %s", name), e);
+            }
+        }
+
+        public int getInt(final T model) {
+            try {
+                return (int) primitiveGetter.invokeExact((Object) model);
+            } catch (final Throwable e) {
+                throw new IllegalStateException(String.format("error retrieving int value for column %s", name), e);
+            }
+        }
+
+        public long getLong(final T model) {
+            try {
+                return (long) primitiveGetter.invokeExact((Object) model);
+            } catch (final Throwable e) {
+                throw new IllegalStateException(String.format("error retrieving long value for column %s", name), e);
+            }
+        }
+
+        public char getChar(final T model) {
+            try {
+                return (char) primitiveGetter.invokeExact((Object) model);
+            } catch (final Throwable e) {
+                throw new IllegalStateException(String.format("error retrieving char value for column %s", name), e);
+            }
+        }
+
+        public void set(final T model, final Object value) {
+            try {
+                setter.invokeExact((Object) model, value);
+            } catch (final Throwable e) {
+                throw new IllegalStateException(String.format("error setting value for column %s", name), e);
+            }
+        }
+
+        public void bind(final PreparedStatement statement, final int index, final T model) throws SQLException {
+            codec.bind(statement, index, get(model));
+        }
+
+        /*
+         * Sets the column on the model from the given column of the ResultSet's current row
+         */
+        public void read(final ResultSet resultSet, final int index, final T model) throws SQLException {
+            set(model, codec.read(resultSet, index));
+        }
+
+        boolean isBitemporal() {
+            return bitemporal;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package kieranbrown.bitemp.models;
+
+import io.vavr.collection.List;
+
+import java.lang.invoke.MethodHandle;
+
+import static java.util.Objects.requireNonNull;
+
+/*
+ * Shallow copies of a model, built from the MethodHandles the class's EntityMetamodel holds for its persistent fields
+ * (those annotated with Column or EmbeddedId, including the ones inherited from BitemporalModel). Field values are
+ * shared with the source, which is safe for the immutable value types the models use. The BitemporalKey is shared too,
+ * so give the copy a new key with setBitemporalKey rather than changing the one it has.
+ */
+public final class ModelCopier<T extends BitemporalModel<T>> {
+    private final MethodHandle constructor;
+    private final MethodHandle[] fieldCopiers;
+
+    /*
+     * The constructor returns Object and each field copier is (Object target, Object source) -> void
+     */
+    ModelCopier(final MethodHandle constructor, final List<MethodHandle> fieldCopiers) {
+        this.constructor = constructor;
+        this.fieldCopiers = fieldCopiers.toJavaArray(MethodHandle[]::new);
+    }
+
+    public static <T extends BitemporalModel<T>> ModelCopier<T> forClass(final Class<T> clazz) {
+        return EntityMetamodel.forClass(clazz).getCopier();
+    }
+
+    @SuppressWarnings("unchecked")
+    public T copy(final T source) {
+        requireNonNull(source, "source cannot be null");
+        try {
+            final Object target = (Object) constructor.invokeExact();
+            for (final MethodHandle fieldCopier : fieldCopiers) {
+                fieldCopier.invokeExact(target, (Object) source);
+            }
+            return (T) target;
+        } catch (final Throwable e) {
+            throw new IllegalStateException(String.format("error copying %s", source.getClass().getName()), e);
+        }
+    }
+}
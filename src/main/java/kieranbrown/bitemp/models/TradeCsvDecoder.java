@@ -0,0 +1,132 @@
+package kieranbrown.bitemp.models;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.function.Function;
+
+/*
+ * Decodes one line of the Trade CSV format into a Trade by hand, without the reflection-based binding of CsvToBean. The
+ * columns are the ones given by the CsvBindByPosition annotations on Trade and its key: buySellFlag, id,
+ * marketLimitFlag, price, stock, systemTimeEnd, systemTimeStart, validTimeEnd, validTimeStart and volume. Dates are
+ * yyyy-MM-dd, system times are in CsvDate's default yyyyMMdd'T'HHmmss, and a field may be wrapped in the quote character.
+ *
+ * Instances hold no state, so one can be shared between threads.
+ */
+public final class TradeCsvDecoder implements Function<String, Trade> {
+    private static final int FIELD_COUNT = 10;
+
+    private final char separator;
+    private final char quote;
+
+    public TradeCsvDecoder(final char separator, final char quote) {
+        this.separator = separator;
+        this.quote = quote;
+    }
+
+    @Override
+    public Trade apply(final String line) {
+        final char[] chars = line.toCharArray();
+        final int[] starts = new int[FIELD_COUNT];
+        final int[] ends = new int[FIELD_COUNT];
+        split(chars, starts, ends);
+
+        return new Trade()
+                .setBuySellFlag(chars[starts[0]])
+                .setBitemporalKey(new BitemporalKey.Builder()
+                        .setTradeId(parseUuid(chars, starts[1], ends[1]))
+                        .setValidTimeStart(parseDate(chars, starts[8], ends[8]))
+                        .setValidTimeEnd(parseDate(chars, starts[7], ends[7]))
+                        .build())
+                .setMarketLimitFlag(chars[starts[2]])
+                .setPrice(new BigDecimal(chars, starts[3], ends[3] - starts[3]))
+                .setStock(new String(chars, starts[4], ends[4] - starts[4]))
+                .setSystemTimeEnd(parseDateTime(chars, starts[5], ends[5]))
+                .setSystemTimeStart(parseDateTime(chars, starts[6], ends[6]))
+                .setVolume(parseInt(chars, starts[9], ends[9]));
+    }
+
+    /*
+     * Records where each field starts and ends, leaving out any quote characters around it
+     */
+    private void split(final char[] chars, final int[] starts, final int[] ends) {
+        int field = 0;
+        int start = 0;
+        for (int i = 0; i <= chars.length; i++) {
+            if (i == chars.length || chars[i] == separator) {
+                if (field == FIELD_COUNT) {
+                    throw new IllegalArgumentException(String.format("expected %d fields in line '%s'", FIELD_COUNT, new String(chars)));
+                }
+                final boolean quoted = i - start >= 2 && chars[start] == quote && chars[i - 1] == quote;
+                starts[field] = quoted ? start + 1 : start;
+                ends[field] = quoted ? i - 1 : i;
+                field++;
+                start = i + 1;
+            }
+        }
+        if (field != FIELD_COUNT) {
+            throw new IllegalArgumentException(String.format("expected %d fields in line '%s'", FIELD_COUNT, new String(chars)));
+        }
+    }
+
+    private static UUID parseUuid(final char[] chars, final int start, final int end) {
+        if (end - start != 36) {
+            throw new IllegalArgumentException(String.format("invalid UUID '%s'", new String(chars, start, end - start)));
+        }
+        return new UUID(parseHex(chars, start, start + 8) << 32 | parseHex(chars, start + 9, start + 13) << 16
+                | parseHex(chars, start + 14, start + 18),
+                parseHex(chars, start + 19, start + 23) << 48 | parseHex(chars, start + 24, start + 36));
+    }
+
+    private static long parseHex(final char[] chars, final int start, final int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            final int digit = Character.digit(chars[i], 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException(String.format("invalid hex digit '%s'", chars[i]));
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    /*
+     * yyyy-MM-dd
+     */
+    private static LocalDate parseDate(final char[] chars, final int start, final int end) {
+        if (end - start != 10) {
+            throw new IllegalArgumentException(String.format("invalid date '%s'", new String(chars, start, end - start)));
+        }
+        return LocalDate.of(parseInt(chars, start, start + 4), parseInt(chars, start + 5, start + 7),
+                parseInt(chars, start + 8, start + 10));
+    }
+
+    /*
+     * yyyyMMdd'T'HHmmss
+     */
+    private static LocalDateTime parseDateTime(final char[] chars, final int start, final int end) {
+        if (end - start != 15) {
+            throw new IllegalArgumentException(String.format("invalid date time '%s'", new String(chars, start, end - start)));
+        }
+        return LocalDateTime.of(parseInt(chars, start, start + 4), parseInt(chars, start + 4, start + 6),
+                parseInt(chars, start + 6, start + 8), parseInt(chars, start + 9, start + 11),
+                parseInt(chars, start + 11, start + 13), parseInt(chars, start + 13, start + 15));
+    }
+
+    private static int parseInt(final char[] chars, final int start, final int end) {
+        final boolean negative = end > start && chars[start] == '-';
+        if (end - start == (negative ? 1 : 0)) {
+            throw new IllegalArgumentException("invalid number ''");
+        }
+        int value = 0;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            final char c = chars[i];
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException(String.format("invalid number '%s'", new String(chars, start, end - start)));
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+}
@@ -1,39 +1,50 @@
 package kieranbrown.bitemp.utils;
 
-import org.apache.commons.lang3.StringUtils;
+import io.vavr.collection.List;
 
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.util.UUID;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 
 public final class QueryUtils {
+    private static final String CURRENT_TIMESTAMP = "CURRENT_TIMESTAMP";
+
     private QueryUtils() {
     }
 
-    public static String toString(final Object o) {
-//        if (o == null) return "'null'";
-        if (o.getClass().equals(LocalDateTime.class)) {
-            final LocalDateTime date = (LocalDateTime) o;
-            return String.format("'%s-%s-%s %s:%s:%s.%s'",
-                    date.getYear(),
-                    StringUtils.leftPad(String.valueOf(date.getMonthValue()), 2, "0"),
-                    StringUtils.leftPad(String.valueOf(date.getDayOfMonth()), 2, "0"),
-                    StringUtils.leftPad(String.valueOf(date.getHour()), 2, "0"),
-                    StringUtils.leftPad(String.valueOf(date.getMinute()), 2, "0"),
-                    StringUtils.leftPad(String.valueOf(date.getSecond()), 2, "0"),
-                    StringUtils.substring(String.valueOf(date.getNano()), 0, 6));
-        } else if (o.getClass().equals(LocalDate.class)) {
-            final LocalDate date = (LocalDate) o;
-            return String.format("'%s-%s-%s'",
-                    date.getYear(),
-                    StringUtils.leftPad(String.valueOf(date.getMonthValue()), 2, "0"),
-                    StringUtils.leftPad(String.valueOf(date.getDayOfMonth()), 2, "0"));
-        } else if (o.getClass().equals(String.class) || o.getClass().equals(Character.class) || o.getClass().equals(UUID.class)) {
-            if (o.getClass().equals(String.class) && "CURRENT_TIMESTAMP".equals(o)) {
-                return (String) o;
-            }
-            return String.format("'%s'", o);
+    /*
+     * Values such as CURRENT_TIMESTAMP are SQL expressions rather than data, so they are written into the query
+     * text as-is and never bound as parameters
+     */
+    public static boolean isSqlExpression(final Object o) {
+        return CURRENT_TIMESTAMP.equals(o);
+    }
+
+    public static String toPlaceholder(final Object o) {
+        return isSqlExpression(o) ? (String) o : "?";
+    }
+
+    public static Object toJdbcValue(final Object o) {
+        return ValueCodecs.toJdbcValue(o);
+    }
+
+    public static void bind(final PreparedStatement statement, final int index, final Object o) throws SQLException {
+        ValueCodecs.bind(statement, index, o);
+    }
+
+    public static void bindAll(final PreparedStatement statement, final List<Object> parameters) throws SQLException {
+        int index = 1;
+        for (final Object parameter : parameters) {
+            bind(statement, index++, parameter);
         }
-        return o.toString();
+    }
+
+    public static String toString(final Object o) {
+        final StringBuilder builder = new StringBuilder();
+        appendLiteral(builder, o);
+        return builder.toString();
+    }
+
+    public static void appendLiteral(final StringBuilder builder, final Object o) {
+        ValueCodecs.appendLiteral(builder, o);
     }
 }
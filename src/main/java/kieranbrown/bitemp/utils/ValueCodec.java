@@ -0,0 +1,25 @@
+package kieranbrown.bitemp.utils;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/*
+ * Converts a value of one type for the database, either as a SQL literal written straight into a query being built or
+ * as a bound parameter on a PreparedStatement, and reads it back out of a ResultSet
+ */
+public interface ValueCodec<T> {
+    void appendLiteral(StringBuilder builder, T value);
+
+    void bind(PreparedStatement statement, int index, T value) throws SQLException;
+
+    /*
+     * The value as the JDBC driver expects it, for APIs such as JPA native queries that bind parameters themselves
+     */
+    Object toJdbcValue(T value);
+
+    /*
+     * The value of a column of the current row, or null if it is SQL NULL
+     */
+    T read(ResultSet resultSet, int index) throws SQLException;
+}
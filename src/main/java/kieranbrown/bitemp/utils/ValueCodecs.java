@@ -0,0 +1,264 @@
+package kieranbrown.bitemp.utils;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static java.util.Objects.requireNonNull;
+
+/*
+ * Codecs looked up by the exact class of a value. Anything without a registered codec is written with toString and
+ * bound with setObject.
+ */
+public final class ValueCodecs {
+    private static final ValueCodec<LocalDate> LOCAL_DATE = new ValueCodec<LocalDate>() {
+        @Override
+        public void appendLiteral(final StringBuilder builder, final LocalDate value) {
+            builder.append('\'');
+            appendDate(builder, value);
+            builder.append('\'');
+        }
+
+        @Override
+        public void bind(final PreparedStatement statement, final int index, final LocalDate value) throws SQLException {
+            statement.setDate(index, Date.valueOf(value));
+        }
+
+        @Override
+        public Object toJdbcValue(final LocalDate value) {
+            return Date.valueOf(value);
+        }
+
+        @Override
+        public LocalDate read(final ResultSet resultSet, final int index) throws SQLException {
+            final Date date = resultSet.getDate(index);
+            return date == null ? null : date.toLocalDate();
+        }
+    };
+
+    //written to microsecond precision, matching timestamp(6) columns
+    private static final ValueCodec<LocalDateTime> LOCAL_DATE_TIME = new ValueCodec<LocalDateTime>() {
+        @Override
+        public void appendLiteral(final StringBuilder builder, final LocalDateTime value) {
+            builder.append('\'');
+            appendDate(builder, value.toLocalDate());
+            builder.append(' ');
+            appendPadded(builder, value.getHour(), 2);
+            builder.append(':');
+            appendPadded(builder, value.getMinute(), 2);
+            builder.append(':');
+            appendPadded(builder, value.getSecond(), 2);
+            builder.append('.');
+            appendPadded(builder, value.getNano() / 1000, 6);
+            builder.append('\'');
+        }
+
+        @Override
+        public void bind(final PreparedStatement statement, final int index, final LocalDateTime value) throws SQLException {
+            statement.setTimestamp(index, Timestamp.valueOf(value));
+        }
+
+        @Override
+        public Object toJdbcValue(final LocalDateTime value) {
+            return Timestamp.valueOf(value);
+        }
+
+        @Override
+        public LocalDateTime read(final ResultSet resultSet, final int index) throws SQLException {
+            final Timestamp timestamp = resultSet.getTimestamp(index);
+            return timestamp == null ? null : timestamp.toLocalDateTime();
+        }
+    };
+
+    private static final ValueCodec<UUID> UUID_CODEC = new ValueCodec<UUID>() {
+        @Override
+        public void appendLiteral(final StringBuilder builder, final UUID value) {
+            builder.append('\'').append(value).append('\'');
+        }
+
+        @Override
+        public void bind(final PreparedStatement statement, final int index, final UUID value) throws SQLException {
+            statement.setString(index, value.toString());
+        }
+
+        @Override
+        public Object toJdbcValue(final UUID value) {
+            return value.toString();
+        }
+
+        @Override
+        public UUID read(final ResultSet resultSet, final int index) throws SQLException {
+            final String value = resultSet.getString(index);
+            return value == null ? null : UUID.fromString(value);
+        }
+    };
+
+    private static final ValueCodec<BigDecimal> BIG_DECIMAL = new ValueCodec<BigDecimal>() {
+        @Override
+        public void appendLiteral(final StringBuilder builder, final BigDecimal value) {
+            builder.append(value.toPlainString());
+        }
+
+        @Override
+        public void bind(final PreparedStatement statement, final int index, final BigDecimal value) throws SQLException {
+            statement.setBigDecimal(index, value);
+        }
+
+        @Override
+        public Object toJdbcValue(final BigDecimal value) {
+            return value;
+        }
+
+        @Override
+        public BigDecimal read(final ResultSet resultSet, final int index) throws SQLException {
+            return resultSet.getBigDecimal(index);
+        }
+    };
+
+    private static final ValueCodec<Character> CHARACTER = new ValueCodec<Character>() {
+        @Override
+        public void appendLiteral(final StringBuilder builder, final Character value) {
+            builder.append('\'');
+            appendEscaped(builder, value);
+            builder.append('\'');
+        }
+
+        @Override
+        public void bind(final PreparedStatement statement, final int index, final Character value) throws SQLException {
+            statement.setString(index, value.toString());
+        }
+
+        @Override
+        public Object toJdbcValue(final Character value) {
+            return value.toString();
+        }
+
+        @Override
+        public Character read(final ResultSet resultSet, final int index) throws SQLException {
+            final String value = resultSet.getString(index);
+            return value == null || value.isEmpty() ? null : value.charAt(0);
+        }
+    };
+
+    //SQL expressions such as CURRENT_TIMESTAMP are written as-is rather than quoted
+    private static final ValueCodec<String> STRING = new ValueCodec<String>() {
+        @Override
+        public void appendLiteral(final StringBuilder builder, final String value) {
+            if (QueryUtils.isSqlExpression(value)) {
+                builder.append(value);
+                return;
+            }
+            builder.append('\'');
+            for (int i = 0; i < value.length(); i++) {
+                appendEscaped(builder, value.charAt(i));
+            }
+            builder.append('\'');
+        }
+
+        @Override
+        public void bind(final PreparedStatement statement, final int index, final String value) throws SQLException {
+            statement.setString(index, value);
+        }
+
+        @Override
+        public Object toJdbcValue(final String value) {
+            return value;
+        }
+
+        @Override
+        public String read(final ResultSet resultSet, final int index) throws SQLException {
+            return resultSet.getString(index);
+        }
+    };
+
+    private static final ValueCodec<Object> DEFAULT = new ValueCodec<Object>() {
+        @Override
+        public void appendLiteral(final StringBuilder builder, final Object value) {
+            builder.append(value);
+        }
+
+        @Override
+        public void bind(final PreparedStatement statement, final int index, final Object value) throws SQLException {
+            statement.setObject(index, value);
+        }
+
+        @Override
+        public Object toJdbcValue(final Object value) {
+            return value;
+        }
+
+        @Override
+        public Object read(final ResultSet resultSet, final int index) throws SQLException {
+            return resultSet.getObject(index);
+        }
+    };
+
+    private static final Map<Class<?>, ValueCodec<?>> CODECS = new HashMap<>();
+
+    static {
+        CODECS.put(LocalDate.class, LOCAL_DATE);
+        CODECS.put(LocalDateTime.class, LOCAL_DATE_TIME);
+        CODECS.put(UUID.class, UUID_CODEC);
+        CODECS.put(BigDecimal.class, BIG_DECIMAL);
+        CODECS.put(Character.class, CHARACTER);
+        CODECS.put(char.class, CHARACTER);
+        CODECS.put(String.class, STRING);
+    }
+
+    private ValueCodecs() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> ValueCodec<T> forClass(final Class<T> clazz) {
+        return (ValueCodec<T>) CODECS.getOrDefault(requireNonNull(clazz, "class cannot be null"), DEFAULT);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> ValueCodec<T> forValue(final T value) {
+        return (ValueCodec<T>) forClass(requireNonNull(value, "input cannot be null").getClass());
+    }
+
+    public static void appendLiteral(final StringBuilder builder, final Object value) {
+        forValue(value).appendLiteral(builder, value);
+    }
+
+    public static void bind(final PreparedStatement statement, final int index, final Object value) throws SQLException {
+        forValue(value).bind(statement, index, value);
+    }
+
+    public static Object toJdbcValue(final Object value) {
+        return forValue(value).toJdbcValue(value);
+    }
+
+    private static void appendDate(final StringBuilder builder, final LocalDate date) {
+        appendPadded(builder, date.getYear(), 4);
+        builder.append('-');
+        appendPadded(builder, date.getMonthValue(), 2);
+        builder.append('-');
+        appendPadded(builder, date.getDayOfMonth(), 2);
+    }
+
+    private static void appendPadded(final StringBuilder builder, final int value, final int width) {
+        for (int limit = 10, i = 1; i < width; limit *= 10, i++) {
+            if (value < limit) {
+                builder.append('0');
+            }
+        }
+        builder.append(value);
+    }
+
+    private static void appendEscaped(final StringBuilder builder, final char c) {
+        if (c == '\'') {
+            builder.append('\'');
+        }
+        builder.append(c);
+    }
+}
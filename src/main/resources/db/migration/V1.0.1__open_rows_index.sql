@@ -0,0 +1,4 @@
+-- Current versions are the only rows whose system time ends in the future, so queries as of now and logical deletes
+-- find them with a short range scan on the leading column. MariaDB has no partial indexes, so the whole table is
+-- indexed in this order.
+create index if not exists trade_data_open_rows on reporting.trade_data (system_time_end, id, valid_time_start);
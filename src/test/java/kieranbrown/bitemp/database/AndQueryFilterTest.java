@@ -85,4 +85,36 @@ class AndQueryFilterTest {
     void getFilterEscapesValues() {
         assertThat(new AndQueryFilter(new Tuple3<>("id", QueryEquality.EQUALS, LocalDate.of(2020, 10, 3))).getFilters()).isEqualTo("id = '2020-10-03'");
     }
+
+    @Test
+    void getParameterisedFiltersReturnsPlaceholdersAndOrderedParameters() {
+        final AndQueryFilter queryFilter = new AndQueryFilter(
+                new AndQueryFilter(
+                        new Tuple3<>("id", QueryEquality.EQUALS, 3),
+                        new Tuple3<>("valid_time_start", QueryEquality.GREATER_THAN_EQUAL_TO, LocalDate.of(2020, 10, 3))
+                ),
+                new SingleQueryFilter(new Tuple3<>("version", QueryEquality.GREATER_THAN_EQUAL_TO, 10))
+        );
+
+        assertThat(queryFilter.getParameterisedFilters()).isEqualTo("((id = ? AND valid_time_start >= ?) AND version >= ?)");
+        assertThat(queryFilter.getParameters()).containsExactly(3, LocalDate.of(2020, 10, 3), 10);
+    }
+
+    @Test
+    void getShapeReflectsNestingButNotValues() {
+        final QueryFilter first = new AndQueryFilter(
+                new SingleQueryFilter("id", QueryEquality.EQUALS, 3),
+                new OrQueryFilter(new Tuple3<>("version", QueryEquality.GREATER_THAN_EQUAL_TO, 10))
+        );
+        final QueryFilter second = new AndQueryFilter(
+                new SingleQueryFilter("id", QueryEquality.EQUALS, 5),
+                new OrQueryFilter(new Tuple3<>("version", QueryEquality.GREATER_THAN_EQUAL_TO, 20))
+        );
+        final QueryFilter differentNesting = new AndQueryFilter(
+                new SingleQueryFilter("id", QueryEquality.EQUALS, 3),
+                new AndQueryFilter(new Tuple3<>("version", QueryEquality.GREATER_THAN_EQUAL_TO, 10))
+        );
+
+        assertThat(first.getShape()).isEqualTo(second.getShape()).isNotEqualTo(differentNesting.getShape());
+    }
 }
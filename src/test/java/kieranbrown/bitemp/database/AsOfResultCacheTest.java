@@ -0,0 +1,159 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.collection.List;
+import kieranbrown.bitemp.models.BitemporalKey;
+import kieranbrown.bitemp.models.Trade;
+import kieranbrown.bitemp.utils.Constants;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static kieranbrown.bitemp.database.QueryEquality.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AsOfResultCacheTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2020, 1, 10, 9, 0);
+    private static final LocalDateTime PAST = NOW.minusDays(1);
+
+    private final AsOfResultCache cache = new AsOfResultCache(100, Clock.fixed(NOW.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+    private final AtomicInteger queries = new AtomicInteger();
+
+    @Test
+    void pastQueriesAreAnsweredFromTheCache() {
+        final Trade trade = newTrade(PAST.minusDays(1), PAST.plusHours(1));
+        final List<QueryFilter> filters = asOf(PAST).append(new SingleQueryFilter("stock", EQUALS, "MSFT"));
+
+        assertThat(cache.get(Trade.class, filters, query(trade))).containsExactly(trade);
+        final List<Trade> cached = cache.get(Trade.class, asOf(PAST).append(new SingleQueryFilter("stock", EQUALS, "MSFT")), query(trade));
+
+        assertThat(queries.get()).isEqualTo(1);
+        assertThat(cached).hasSize(1);
+        assertThat(cached.head()).isNotSameAs(trade).usingRecursiveComparison().isEqualTo(trade);
+        assertThat(cache.stats().hitCount()).isEqualTo(1);
+        assertThat(cache.stats().missCount()).isEqualTo(1);
+
+        cache.get(Trade.class, asOf(PAST).append(new SingleQueryFilter("stock", EQUALS, "TSLA")), query(trade));
+        assertThat(queries.get()).isEqualTo(2);
+    }
+
+    @Test
+    void queriesThatCanChangeAreNotCached() {
+        final Trade closed = newTrade(PAST.minusDays(1), PAST.plusHours(1));
+        final List<List<QueryFilter>> uncacheable = List.of(
+                List.empty(),
+                asOf(NOW),
+                asOf(NOW.plusDays(1)),
+                List.of(new SingleQueryFilter("system_time_start", GREATER_THAN_EQUAL_TO, PAST)),
+                List.of(new SingleQueryFilter("system_time_start", LESS_THAN_EQUAL_TO, "CURRENT_TIMESTAMP"),
+                        new SingleQueryFilter("system_time_end", GREATER_THAN, "CURRENT_TIMESTAMP")),
+                List.of(new SingleQueryFilter("system_time_start", GREATER_THAN_EQUAL_TO, PAST.minusDays(1)),
+                        new SingleQueryFilter("system_time_end", LESS_THAN_EQUAL_TO, NOW.plusDays(1))),
+                List.of(new SingleQueryFilter("system_time_start", LESS_THAN, PAST),
+                        new SingleQueryFilter("system_time_end", LESS_THAN_EQUAL_TO, Constants.MARIADB_END_SYSTEM_TIME)),
+                asOf(PAST).append(new OrQueryFilter(
+                        new SingleQueryFilter("system_time_end", GREATER_THAN, NOW),
+                        new SingleQueryFilter("stock", EQUALS, "MSFT"))),
+                asOf(PAST).append(new SingleQueryFilter("system_time_end", DOES_NOT_EQUAL, Constants.MARIADB_END_SYSTEM_TIME)));
+
+        for (final List<QueryFilter> filters : uncacheable) {
+            cache.get(Trade.class, filters, query(closed));
+            cache.get(Trade.class, filters, query(closed));
+        }
+
+        assertThat(queries.get()).isEqualTo(2 * uncacheable.length());
+        assertThat(cache.stats().requestCount()).isEqualTo(0);
+    }
+
+    @Test
+    void resultsHoldingOpenVersionsAreNotCached() {
+        final Trade open = newTrade(PAST.minusDays(1), Constants.MARIADB_END_SYSTEM_TIME);
+
+        cache.get(Trade.class, asOf(PAST), query(open));
+        cache.get(Trade.class, asOf(PAST), query(open));
+
+        assertThat(queries.get()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    void betweenTimesInThePastIsCached() {
+        final List<QueryFilter> filters = List.of(
+                new SingleQueryFilter("system_time_start", GREATER_THAN_EQUAL_TO, PAST.minusDays(2)),
+                new SingleQueryFilter("system_time_end", LESS_THAN_EQUAL_TO, PAST));
+        final Trade trade = newTrade(PAST.minusDays(1), PAST.minusHours(1));
+
+        cache.get(Trade.class, filters, query(trade));
+        cache.get(Trade.class, filters, query(trade));
+
+        assertThat(queries.get()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidatingAClassDropsItsEntries() {
+        final Trade trade = newTrade(PAST.minusDays(1), PAST.plusHours(1));
+        cache.get(Trade.class, asOf(PAST), query(trade));
+
+        cache.invalidate(Trade.class);
+        cache.get(Trade.class, asOf(PAST), query(trade));
+
+        assertThat(queries.get()).isEqualTo(2);
+    }
+
+    @Test
+    void queriesRunningAcrossAnInvalidationAreNotCached() {
+        final Trade trade = newTrade(PAST.minusDays(1), PAST.plusHours(1));
+
+        cache.get(Trade.class, asOf(PAST), () -> {
+            cache.invalidate(Trade.class);
+            return List.of(trade);
+        });
+
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    void entriesAreWeighedByTheirRows() {
+        final Trade trade = newTrade(PAST.minusDays(1), PAST.plusHours(1));
+
+        cache.get(Trade.class, asOf(PAST), () -> List.fill(100, () -> trade));
+        assertThat(cache.size()).isEqualTo(0);
+
+        cache.get(Trade.class, asOf(PAST), () -> List.fill(10, () -> trade));
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    private static List<QueryFilter> asOf(final LocalDateTime time) {
+        return List.of(
+                new SingleQueryFilter("system_time_start", LESS_THAN_EQUAL_TO, time),
+                new SingleQueryFilter("system_time_end", GREATER_THAN, time));
+    }
+
+    private Supplier<List<Trade>> query(final Trade... rows) {
+        return () -> {
+            queries.incrementAndGet();
+            return List.of(rows);
+        };
+    }
+
+    private static Trade newTrade(final LocalDateTime systemTimeStart, final LocalDateTime systemTimeEnd) {
+        return new Trade().setBitemporalKey(new BitemporalKey.Builder()
+                .setTradeId(UUID.randomUUID())
+                .setValidTimeStart(LocalDate.of(2020, 1, 1))
+                .setValidTimeEnd(LocalDate.of(2020, 2, 1))
+                .build())
+                .setStock("MSFT")
+                .setPrice(new BigDecimal("100.00"))
+                .setVolume(100)
+                .setBuySellFlag('B')
+                .setMarketLimitFlag('M')
+                .setSystemTimeStart(systemTimeStart)
+                .setSystemTimeEnd(systemTimeEnd);
+    }
+}
@@ -0,0 +1,102 @@
+package kieranbrown.bitemp.database;
+
+import kieranbrown.bitemp.models.Trade;
+import kieranbrown.bitemp.models.TradeCsvDecoder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DataJpaTest
+@SpringJUnitConfig
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CsvIngestPipelineTest {
+    private static final String HEADER = "BUYSELLFLAG|ID|MARKETLIMITFLAG|PRICE|STOCK|SYSTEMTIMEEND|SYSTEMTIMESTART|VALIDTIMEEND|VALIDTIMESTART|VOLUME\n";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @AfterEach
+    void cleanup() {
+        JdbcTestUtils.deleteFromTables(new JdbcTemplate(dataSource), "reporting.trade_data");
+    }
+
+    @Test
+    void loadsEveryLine() throws IOException, InvalidPeriodException {
+        final CsvIngestPipeline.Result result = new CsvIngestPipeline<>(Trade.class, new TradeCsvDecoder('|', '\''))
+                .chunkSize(3)
+                .workers(3)
+                .writers(2)
+                .batchSize(4)
+                .queueCapacity(2)
+                .run(entityManager, new StringReader(HEADER + lines(50, "2020-01-21")));
+
+        assertThat(result.getRows()).isEqualTo(50);
+        assertThat(JdbcTestUtils.countRowsInTable(new JdbcTemplate(dataSource), "reporting.trade_data")).isEqualTo(50);
+    }
+
+    @Test
+    void invalidPeriodStopsTheLoad() {
+        final String input = HEADER + lines(10, "2020-01-21") + lines(1, "2020-01-19") + lines(10, "2020-01-21");
+
+        assertThrows(InvalidPeriodException.class, () -> new CsvIngestPipeline<>(Trade.class, new TradeCsvDecoder('|', '\''))
+                .chunkSize(2)
+                .run(entityManager, new StringReader(input)));
+    }
+
+    @Test
+    void overlappingVersionsInDifferentChunksAreRejected() {
+        final String line = lines(1, "2020-01-21");
+        final StringBuilder input = new StringBuilder(HEADER);
+        for (int i = 0; i < 8; i++) {
+            input.append(line);
+        }
+
+        assertThrows(OverlappingKeyException.class, () -> new CsvIngestPipeline<>(Trade.class, new TradeCsvDecoder('|', '\''))
+                .chunkSize(1)
+                .workers(4)
+                .writers(4)
+                .batchSize(2)
+                .run(entityManager, new StringReader(input.toString())));
+    }
+
+    @Test
+    void decodeErrorsStopTheLoad() {
+        assertThat(assertThrows(IllegalArgumentException.class, () -> new CsvIngestPipeline<>(Trade.class, new TradeCsvDecoder('|', '\''))
+                .run(entityManager, new StringReader(HEADER + "B|M\n"))))
+                .hasMessage("expected 10 fields in line 'B|M'");
+    }
+
+    @Test
+    void workersMustBePositive() {
+        assertThat(assertThrows(IllegalArgumentException.class, () -> new CsvIngestPipeline<>(Trade.class, new TradeCsvDecoder('|', '\'')).workers(0)))
+                .hasMessage("workers must be positive");
+    }
+
+    private static String lines(final int count, final String validTimeEnd) {
+        final StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            lines.append("B|").append(UUID.randomUUID()).append("|M|123.45|AAPL|20380119T031407|20200120T101112|")
+                    .append(validTimeEnd).append("|2020-01-20|250\n");
+        }
+        return lines.toString();
+    }
+}
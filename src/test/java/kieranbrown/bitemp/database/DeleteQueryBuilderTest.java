@@ -3,10 +3,13 @@ package kieranbrown.bitemp.database;
 import io.vavr.collection.List;
 import kieranbrown.bitemp.models.BitemporalKey;
 import kieranbrown.bitemp.models.Trade;
+import kieranbrown.bitemp.utils.Constants;
+import kieranbrown.bitemp.utils.QueryUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
 
 import javax.persistence.EntityManager;
@@ -143,6 +146,39 @@ class DeleteQueryBuilderTest {
                 .hasFieldOrPropertyWithValue("validTimeEnd", LocalDate.of(2020, 1, 20));
     }
 
+    @Test
+    void deleteForValidTimePeriodRemovesTheStartOfRowsStartingInsideIt() throws OverlappingKeyException, InvalidPeriodException {
+        final UUID tradeId = UUID.randomUUID();
+        new InsertQueryBuilder<>(Trade.class).from(new Trade().setBitemporalKey(
+                new BitemporalKey.Builder()
+                        .setTradeId(tradeId)
+                        .setValidTimeStart(LocalDate.of(2020, 1, 17))
+                        .setValidTimeEnd(LocalDate.of(2020, 1, 25))
+                        .build())
+                .setStock("AAPL")
+                .setBuySellFlag('B')
+                .setMarketLimitFlag('M')
+                .setPrice(new BigDecimal("123.45"))
+                .setVolume(200)
+        ).execute(entityManager);
+
+        new DeleteQueryBuilder<>(Trade.class)
+                .forValidTimePeriod(LocalDate.of(2020, 1, 16), LocalDate.of(2020, 1, 18))
+                .where(new SingleQueryFilter("id", QueryEquality.EQUALS, tradeId))
+                .execute(entityManager);
+
+        final List<Trade> trades = new SelectQueryBuilder<>(Trade.class)
+                .where(new SingleQueryFilter("id", QueryEquality.EQUALS, tradeId))
+                .execute(entityManager)
+                .getResults();
+
+        assertThat(trades).hasSize(1);
+        assertThat(trades.get(0))
+                .extracting("bitemporalKey")
+                .hasFieldOrPropertyWithValue("validTimeStart", LocalDate.of(2020, 1, 18))
+                .hasFieldOrPropertyWithValue("validTimeEnd", LocalDate.of(2020, 1, 25));
+    }
+
     @Test
     void deleteForValidTimePeriodAffectsOnlyThoseThatNeedIt() throws OverlappingKeyException, InvalidPeriodException {
         final UUID id1 = UUID.fromString("769fb864-f3b7-4ca5-965e-bcff80088197");
@@ -207,4 +243,112 @@ class DeleteQueryBuilderTest {
                 .hasFieldOrPropertyWithValue("validTimeStart", LocalDate.of(2020, 1, 18))
                 .hasFieldOrPropertyWithValue("validTimeEnd", LocalDate.of(2020, 1, 20));
     }
+
+    @Test
+    void deleteForValidTimePeriodStagesLargeKeySets() throws OverlappingKeyException, InvalidPeriodException {
+        final UUID outside = UUID.randomUUID();
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        //written straight to the table, going through the builder's overlap checks makes this far slower
+        jdbcTemplate.batchUpdate("INSERT INTO reporting.trade_data (id, valid_time_start, valid_time_end, system_time_start, system_time_end, stock, price, volume, buy_sell_flag, market_limit_flag) " +
+                        "VALUES (?, ?, ?, CURRENT_TIMESTAMP, ?, 'AAPL', 123.45, 200, 'B', 'M')",
+                List.range(0, KeySetQueryFilter.STAGING_THRESHOLD + 1)
+                        .map(x -> newKey(UUID.randomUUID(), LocalDate.of(2020, 1, 14), LocalDate.of(2020, 1, 20)))
+                        .append(newKey(outside, LocalDate.of(2020, 2, 14), LocalDate.of(2020, 2, 20)))
+                        .toJavaList(),
+                KeySetQueryFilter.CHUNK_SIZE,
+                (statement, key) -> {
+                    QueryUtils.bind(statement, 1, key.getId());
+                    QueryUtils.bind(statement, 2, key.getValidTimeStart());
+                    QueryUtils.bind(statement, 3, key.getValidTimeEnd());
+                    QueryUtils.bind(statement, 4, Constants.MARIADB_END_SYSTEM_TIME);
+                });
+
+        new DeleteQueryBuilder<>(Trade.class)
+                .forValidTimePeriod(LocalDate.of(2020, 1, 16), LocalDate.of(2020, 1, 18))
+                .where(new SingleQueryFilter("stock", QueryEquality.EQUALS, "AAPL"))
+                .execute(entityManager);
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reporting.trade_data_keys", Integer.class))
+                .isEqualTo(KeySetQueryFilter.STAGING_THRESHOLD + 1);
+        assertThat(new SelectQueryBuilder<>(Trade.class)
+                .where(new SingleQueryFilter("id", QueryEquality.EQUALS, outside))
+                .count(entityManager)).isEqualTo(0);
+        assertThat(new SelectQueryBuilder<>(Trade.class).count(entityManager))
+                .isEqualTo(2 * (KeySetQueryFilter.STAGING_THRESHOLD + 1));
+    }
+
+    @Test
+    void logicalDeleteClosesCurrentVersionAndKeepsHistory() throws OverlappingKeyException, InvalidPeriodException {
+        final UUID id1 = UUID.randomUUID();
+        final UUID id2 = UUID.randomUUID();
+        new InsertQueryBuilder<>(Trade.class).fromAll(List.of(id1, id2).map(x -> new Trade().setBitemporalKey(
+                new BitemporalKey.Builder()
+                        .setTradeId(x)
+                        .setValidTimeStart(LocalDate.of(2020, 1, 14))
+                        .setValidTimeEnd(LocalDate.of(2020, 1, 20))
+                        .build())
+                .setStock("AAPL")
+                .setBuySellFlag('B')
+                .setMarketLimitFlag('M')
+                .setPrice(new BigDecimal("123.45"))
+                .setVolume(200))
+        ).execute(entityManager);
+
+        new DeleteQueryBuilder<>(Trade.class)
+                .logically()
+                .where(new SingleQueryFilter("id", QueryEquality.EQUALS, id1))
+                .execute(entityManager);
+
+        final List<Trade> open = new SelectQueryBuilder<>(Trade.class)
+                .systemTimeAsOf(LocalDateTime.now())
+                .execute(entityManager)
+                .getResults();
+
+        assertThat(new SelectQueryBuilder<>(Trade.class).count(entityManager)).isEqualTo(2);
+        assertThat(open.map(x -> x.getBitemporalKey().getId())).containsExactly(id2);
+    }
+
+    @Test
+    void logicalDeleteForValidTimePeriodKeepsTheRestOfTheRowOpen() throws OverlappingKeyException, InvalidPeriodException {
+        final UUID tradeId = UUID.randomUUID();
+        new InsertQueryBuilder<>(Trade.class).from(new Trade().setBitemporalKey(
+                new BitemporalKey.Builder()
+                        .setTradeId(tradeId)
+                        .setValidTimeStart(LocalDate.of(2020, 1, 14))
+                        .setValidTimeEnd(LocalDate.of(2020, 1, 20))
+                        .build())
+                .setStock("AAPL")
+                .setBuySellFlag('B')
+                .setMarketLimitFlag('M')
+                .setPrice(new BigDecimal("123.45"))
+                .setVolume(200)
+        ).execute(entityManager);
+
+        new DeleteQueryBuilder<>(Trade.class)
+                .logically()
+                .forValidTimePeriod(LocalDate.of(2020, 1, 16), LocalDate.of(2020, 1, 18))
+                .where(new SingleQueryFilter("id", QueryEquality.EQUALS, tradeId))
+                .execute(entityManager);
+
+        final List<Trade> trades = new SelectQueryBuilder<>(Trade.class)
+                .where(new SingleQueryFilter("id", QueryEquality.EQUALS, tradeId))
+                .execute(entityManager)
+                .getResults()
+                .sortBy(x -> x.getBitemporalKey().getValidTimeEnd());
+
+        assertThat(trades.map(x -> x.getBitemporalKey().getValidTimeStart())).containsExactly(
+                LocalDate.of(2020, 1, 14), LocalDate.of(2020, 1, 14), LocalDate.of(2020, 1, 18));
+        assertThat(trades.map(x -> x.getBitemporalKey().getValidTimeEnd())).containsExactly(
+                LocalDate.of(2020, 1, 16), LocalDate.of(2020, 1, 20), LocalDate.of(2020, 1, 20));
+        assertThat(trades.map(x -> x.getSystemTimeEnd().isAfter(LocalDateTime.now())))
+                .containsExactly(true, false, true);
+    }
+
+    private static BitemporalKey newKey(final UUID tradeId, final LocalDate validTimeStart, final LocalDate validTimeEnd) {
+        return new BitemporalKey.Builder()
+                .setTradeId(tradeId)
+                .setValidTimeStart(validTimeStart)
+                .setValidTimeEnd(validTimeEnd)
+                .build();
+    }
 }
@@ -32,4 +32,16 @@ class DeleteQueryTest {
                 "DELETE FROM reporting.trade_data " +
                         "WHERE id = 5 AND valid_time_start <= '2020-02-03'");
     }
+
+    @Test
+    void buildParameterisedReturnsPlaceholders() {
+        final DeleteQuery<Trade> query = new DeleteQuery<>(Trade.class);
+        query.addFilters(List.of(
+                new SingleQueryFilter("id", QueryEquality.EQUALS, 5),
+                new SingleQueryFilter("valid_time_start", QueryEquality.LESS_THAN_EQUAL_TO, LocalDate.of(2020, 2, 3))
+        ));
+
+        assertThat(query.buildParameterised()).isEqualTo("DELETE FROM reporting.trade_data WHERE id = ? AND valid_time_start <= ?");
+        assertThat(query.getParameters()).containsExactly(5, LocalDate.of(2020, 2, 3));
+    }
 }
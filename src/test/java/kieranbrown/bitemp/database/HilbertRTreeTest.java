@@ -0,0 +1,100 @@
+package kieranbrown.bitemp.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HilbertRTreeTest {
+    private static final PeriodBounds UNBOUNDED = new PeriodBounds(Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE);
+
+    @Test
+    void searchFindsRectanglesInBothDimensions() {
+        final HilbertRTree<String> tree = new HilbertRTree<>();
+        tree.add(10, 20, 100, 200, "a");
+        tree.add(10, 20, 200, Long.MAX_VALUE, "b");
+        tree.add(20, 30, 100, Long.MAX_VALUE, "c");
+
+        //valid time overlaps [18, 22), as of system time 150
+        assertThat(search(tree, new PeriodBounds(Long.MIN_VALUE, 21, 19, Long.MAX_VALUE),
+                new PeriodBounds(Long.MIN_VALUE, 150, 151, Long.MAX_VALUE))).containsExactlyInAnyOrder("a", "c");
+        //as of system time 250
+        assertThat(search(tree, UNBOUNDED, new PeriodBounds(Long.MIN_VALUE, 250, 251, Long.MAX_VALUE)))
+                .containsExactlyInAnyOrder("b", "c");
+    }
+
+    @Test
+    void removeMatchesByIdentity() {
+        final HilbertRTree<String> tree = new HilbertRTree<>();
+        final String value = new String("a");
+        tree.add(10, 20, 100, 200, new String("a"));
+        tree.add(10, 20, 100, 200, value);
+
+        tree.remove(value);
+
+        assertThat(tree.size()).isEqualTo(1);
+        assertThat(search(tree, UNBOUNDED, UNBOUNDED)).hasSize(1).allMatch(x -> x != value);
+    }
+
+    @Test
+    void hilbertCurveStepsBetweenAdjacentCells() {
+        //the first 4^6 points of the curve fill the 64 x 64 square in the corner
+        final long[][] cells = new long[64 * 64][];
+        for (int x = 0; x < 64; x++) {
+            for (int y = 0; y < 64; y++) {
+                final long distance = HilbertRTree.hilbert(x, y);
+                assertThat(distance).isBetween(0L, 64L * 64 - 1);
+                assertThat(cells[(int) distance]).isNull();
+                cells[(int) distance] = new long[]{x, y};
+            }
+        }
+        for (int i = 1; i < cells.length; i++) {
+            assertThat(Math.abs(cells[i][0] - cells[i - 1][0]) + Math.abs(cells[i][1] - cells[i - 1][1])).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void matchesAScanThroughRandomAddsAndRemoves() {
+        final Random random = new Random(42);
+        final HilbertRTree<long[]> tree = new HilbertRTree<>();
+        final List<long[]> rectangles = new ArrayList<>();
+
+        //enough changes to pack the tree several times, leaving some in the delta buffer
+        for (int i = 0; i < 20000; i++) {
+            if (!rectangles.isEmpty() && random.nextInt(3) == 0) {
+                tree.remove(rectangles.remove(random.nextInt(rectangles.size())));
+            } else {
+                final long validStart = random.nextInt(1000);
+                final long systemStart = random.nextInt(1000);
+                final long[] rectangle = {validStart, validStart + 1 + random.nextInt(50),
+                        systemStart, random.nextInt(4) == 0 ? Long.MAX_VALUE : systemStart + 1 + random.nextInt(50)};
+                rectangles.add(rectangle);
+                tree.add(rectangle[0], rectangle[1], rectangle[2], rectangle[3], rectangle);
+            }
+        }
+        assertThat(tree.size()).isEqualTo(rectangles.size());
+        assertThat(search(tree, UNBOUNDED, UNBOUNDED)).containsExactlyInAnyOrderElementsOf(rectangles);
+
+        for (int i = 0; i < 200; i++) {
+            final long a = random.nextInt(1100);
+            final long asOf = random.nextInt(1100);
+            final PeriodBounds validTime = new PeriodBounds(Long.MIN_VALUE, a + random.nextInt(100), a, Long.MAX_VALUE);
+            final PeriodBounds systemTime = new PeriodBounds(Long.MIN_VALUE, asOf, asOf + 1, Long.MAX_VALUE);
+            final List<long[]> expected = rectangles.stream()
+                    .filter(x -> validTime.contains(x[0], x[1]) && systemTime.contains(x[2], x[3]))
+                    .collect(Collectors.toList());
+
+            assertThat(search(tree, validTime, systemTime)).containsExactlyInAnyOrderElementsOf(expected);
+        }
+    }
+
+    private static <V> List<V> search(final HilbertRTree<V> tree, final PeriodBounds validTime, final PeriodBounds systemTime) {
+        final List<V> results = new ArrayList<>();
+        tree.search(validTime, systemTime, results::add);
+        return results;
+    }
+}
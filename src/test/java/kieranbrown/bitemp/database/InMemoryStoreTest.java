@@ -0,0 +1,323 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.collection.List;
+import kieranbrown.bitemp.models.BitemporalKey;
+import kieranbrown.bitemp.models.Trade;
+import kieranbrown.bitemp.utils.Constants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import static kieranbrown.bitemp.database.QueryEquality.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InMemoryStoreTest {
+    private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 9, 0);
+
+    private MutableClock clock;
+    private InMemoryStore<Trade> store;
+
+    @BeforeEach
+    void setup() {
+        clock = new MutableClock(START);
+        store = new InMemoryStore<>(Trade.class, clock);
+    }
+
+    @Test
+    void executeThrowsForNullStore() {
+        assertThat(assertThrows(NullPointerException.class, () -> QueryBuilderFactory.select(Trade.class).execute((InMemoryStore<Trade>) null)))
+                .hasMessage("store cannot be null");
+    }
+
+    @Test
+    void insertedRowsAreOpenVersionsStartingNow() throws InvalidPeriodException {
+        final UUID tradeId = UUID.randomUUID();
+        QueryBuilderFactory.insert(Trade.class)
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 20)))
+                .from(newTrade(UUID.randomUUID(), LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 20)))
+                .execute(store);
+
+        final List<Trade> results = QueryBuilderFactory.select(Trade.class)
+                .where("id", EQUALS, tradeId)
+                .execute(store)
+                .getResults();
+
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(results).hasSize(1);
+        assertThat(results.head().getSystemTimeStart()).isEqualTo(START);
+        assertThat(results.head().getSystemTimeEnd()).isEqualTo(Constants.MARIADB_END_SYSTEM_TIME);
+    }
+
+    @Test
+    void resultsAreCopies() throws InvalidPeriodException {
+        QueryBuilderFactory.insert(Trade.class)
+                .from(newTrade(UUID.randomUUID(), LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 20)))
+                .execute(store);
+
+        final Trade result = QueryBuilderFactory.select(Trade.class).execute(store).getResults().head();
+        result.setStock("MSFT");
+        result.getBitemporalKey().setValidTimeEnd(LocalDate.of(2021, 1, 1));
+
+        final Trade stored = QueryBuilderFactory.select(Trade.class).execute(store).getResults().head();
+        assertThat(stored.getStock()).isEqualTo("GOOGL");
+        assertThat(stored.getBitemporalKey().getValidTimeEnd()).isEqualTo(LocalDate.of(2020, 1, 20));
+    }
+
+    @Test
+    void evaluatesFilterTrees() throws InvalidPeriodException {
+        final UUID first = UUID.randomUUID();
+        final UUID second = UUID.randomUUID();
+        QueryBuilderFactory.insert(Trade.class)
+                .from(newTrade(first, LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 20)).setVolume(100))
+                .from(newTrade(second, LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 20)).setVolume(300))
+                .from(newTrade(UUID.randomUUID(), LocalDate.of(2020, 1, 15), LocalDate.of(2020, 1, 30)).setStock("AAPL"))
+                .execute(store);
+
+        assertThat(QueryBuilderFactory.select(Trade.class)
+                .where(new OrQueryFilter(
+                        new SingleQueryFilter("volume", GREATER_THAN, 200),
+                        new SingleQueryFilter("stock", EQUALS, "AAPL")))
+                .execute(store)
+                .getResults()).hasSize(2);
+        assertThat(QueryBuilderFactory.select(Trade.class)
+                .where(new NotQueryFilter(new KeySetQueryFilter("id", List.of(first, second.toString()))))
+                .execute(store)
+                .getResults()).extracting(Trade::getStock).containsExactly("AAPL");
+        assertThat(QueryBuilderFactory.select(Trade.class)
+                .where("price", EQUALS, 123.45)
+                .where("buy_sell_flag", EQUALS, "B")
+                .where("system_time_start", LESS_THAN_EQUAL_TO, "CURRENT_TIMESTAMP")
+                .validTimeContains(LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 20))
+                .execute(store)
+                .getResults()).hasSize(2);
+    }
+
+    @Test
+    void insertRejectsOverlappingOpenVersions() throws InvalidPeriodException {
+        final UUID tradeId = UUID.randomUUID();
+        QueryBuilderFactory.insert(Trade.class)
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 20)))
+                .execute(store);
+
+        assertThat(assertThrows(OverlappingKeyException.class, () -> QueryBuilderFactory.insert(Trade.class)
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 19), LocalDate.of(2020, 1, 25)))
+                .execute(store)))
+                .hasMessage(String.format("Valid Time overlaps another version for ID = '%s'", tradeId));
+
+        QueryBuilderFactory.delete(Trade.class).logically().where(new SingleQueryFilter("id", EQUALS, tradeId)).execute(store);
+        QueryBuilderFactory.insert(Trade.class)
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 19), LocalDate.of(2020, 1, 25)))
+                .execute(store);
+        assertThat(store.size()).isEqualTo(2);
+    }
+
+    @Test
+    void logicalDeleteKeepsHistory() throws InvalidPeriodException {
+        final UUID tradeId = UUID.randomUUID();
+        QueryBuilderFactory.insert(Trade.class)
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 20)))
+                .execute(store);
+        clock.set(START.plusHours(1));
+
+        QueryBuilderFactory.delete(Trade.class)
+                .logically()
+                .forValidTimePeriod(LocalDate.of(2020, 1, 12), LocalDate.of(2020, 1, 15))
+                .where(new SingleQueryFilter("id", EQUALS, tradeId))
+                .execute(store);
+
+        assertThat(QueryBuilderFactory.select(Trade.class).systemTimeAsOf(START.plusMinutes(30)).execute(store).getResults())
+                .extracting(x -> x.getBitemporalKey().getValidTimeStart())
+                .containsExactly(LocalDate.of(2020, 1, 10));
+        assertThat(QueryBuilderFactory.select(Trade.class).systemTimeAsOf(START.plusHours(2)).execute(store).getResults())
+                .extracting(x -> x.getBitemporalKey().getValidTimeStart() + "/" + x.getBitemporalKey().getValidTimeEnd())
+                .containsExactlyInAnyOrder("2020-01-10/2020-01-12", "2020-01-15/2020-01-20");
+    }
+
+    @Test
+    void updateForValidTimePeriodSplitsAtTheBounds() throws InvalidPeriodException {
+        final UUID tradeId = UUID.randomUUID();
+        QueryBuilderFactory.insert(Trade.class)
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 20)))
+                .execute(store);
+
+        QueryBuilderFactory.update(Trade.class)
+                .forValidTimePeriod(LocalDate.of(2020, 1, 12), LocalDate.of(2020, 1, 15))
+                .set("volume", 999)
+                .where(new SingleQueryFilter("id", EQUALS, tradeId))
+                .execute(store);
+
+        assertThat(QueryBuilderFactory.select(Trade.class).execute(store).getResults()
+                .sortBy(x -> x.getBitemporalKey().getValidTimeStart())
+                .map(x -> x.getBitemporalKey().getValidTimeStart() + "/" + x.getBitemporalKey().getValidTimeEnd() + "=" + x.getVolume()))
+                .containsExactly("2020-01-10/2020-01-12=200", "2020-01-12/2020-01-15=999", "2020-01-15/2020-01-20=200");
+    }
+
+    @Test
+    void deleteForValidTimePeriodLeavesThePartsEitherSide() throws InvalidPeriodException {
+        final UUID tradeId = UUID.randomUUID();
+        QueryBuilderFactory.insert(Trade.class)
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 20)))
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 20), LocalDate.of(2020, 1, 22)))
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 25), LocalDate.of(2020, 1, 30)))
+                .execute(store);
+
+        QueryBuilderFactory.delete(Trade.class)
+                .forValidTimePeriod(LocalDate.of(2020, 1, 15), LocalDate.of(2020, 1, 26))
+                .where(new SingleQueryFilter("id", EQUALS, tradeId))
+                .execute(store);
+
+        assertThat(QueryBuilderFactory.select(Trade.class).execute(store).getResults()
+                .map(x -> x.getBitemporalKey().getValidTimeStart() + "/" + x.getBitemporalKey().getValidTimeEnd()))
+                .containsExactlyInAnyOrder("2020-01-10/2020-01-15", "2020-01-26/2020-01-30");
+    }
+
+    @Test
+    void deleteForValidTimePeriodRemovesMatchesOfIdsOutsideThePeriod() throws InvalidPeriodException {
+        final UUID inside = UUID.randomUUID();
+        final UUID outside = UUID.randomUUID();
+        QueryBuilderFactory.insert(Trade.class)
+                .from(newTrade(inside, LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 20)))
+                .from(newTrade(inside, LocalDate.of(2020, 2, 10), LocalDate.of(2020, 2, 20)))
+                .from(newTrade(outside, LocalDate.of(2020, 3, 10), LocalDate.of(2020, 3, 20)))
+                .from(newTrade(UUID.randomUUID(), LocalDate.of(2020, 3, 10), LocalDate.of(2020, 3, 20)).setStock("MSFT"))
+                .execute(store);
+
+        QueryBuilderFactory.delete(Trade.class)
+                .forValidTimePeriod(LocalDate.of(2020, 1, 15), LocalDate.of(2020, 1, 26))
+                .where(new SingleQueryFilter("stock", EQUALS, "GOOGL"))
+                .execute(store);
+
+        assertThat(QueryBuilderFactory.select(Trade.class).execute(store).getResults()
+                .map(x -> x.getStock() + " " + x.getBitemporalKey().getValidTimeStart() + "/" + x.getBitemporalKey().getValidTimeEnd()))
+                .containsExactlyInAnyOrder("GOOGL 2020-01-10/2020-01-15", "GOOGL 2020-02-10/2020-02-20", "MSFT 2020-03-10/2020-03-20");
+    }
+
+    @Test
+    void validTimeQueriesSeeVersionsCreatedBySplits() throws InvalidPeriodException {
+        final UUID tradeId = UUID.randomUUID();
+        QueryBuilderFactory.insert(Trade.class)
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 20)))
+                .from(newTrade(UUID.randomUUID(), LocalDate.of(2020, 2, 10), LocalDate.of(2020, 2, 20)))
+                .execute(store);
+        QueryBuilderFactory.update(Trade.class)
+                .forValidTimePeriod(LocalDate.of(2020, 1, 12), LocalDate.of(2020, 1, 15))
+                .set("volume", 999)
+                .where(new SingleQueryFilter("id", EQUALS, tradeId))
+                .execute(store);
+
+        assertThat(QueryBuilderFactory.select(Trade.class)
+                .validTimeOverlaps(LocalDate.of(2020, 1, 14), LocalDate.of(2020, 1, 16))
+                .execute(store)
+                .getResults()
+                .map(Trade::getVolume)).containsExactlyInAnyOrder(999, 200);
+        assertThat(QueryBuilderFactory.select(Trade.class)
+                .validTimePrecedes(LocalDate.of(2020, 1, 12))
+                .execute(store)
+                .getResults()).hasSize(1);
+        assertThat(QueryBuilderFactory.select(Trade.class)
+                .where("id", EQUALS, tradeId)
+                .validTimeSucceeds(LocalDate.of(2020, 1, 12))
+                .execute(store)
+                .getResults()).hasSize(2);
+        assertThat(QueryBuilderFactory.select(Trade.class)
+                .validTimeContains(LocalDate.of(2020, 2, 1), LocalDate.of(2020, 3, 1))
+                .execute(store)
+                .getResults()).hasSize(1);
+    }
+
+    @Test
+    void systemTimeQueriesSeeHistory() throws InvalidPeriodException {
+        final UUID tradeId = UUID.randomUUID();
+        QueryBuilderFactory.insert(Trade.class)
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 20)))
+                .execute(store);
+        clock.set(START.plusHours(1));
+        QueryBuilderFactory.delete(Trade.class)
+                .logically()
+                .where(new SingleQueryFilter("id", EQUALS, tradeId))
+                .execute(store);
+        QueryBuilderFactory.insert(Trade.class)
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 20)).setVolume(300))
+                .execute(store);
+        clock.set(START.plusHours(2));
+        QueryBuilderFactory.delete(Trade.class)
+                .logically()
+                .where(new SingleQueryFilter("id", EQUALS, tradeId))
+                .execute(store);
+
+        assertThat(QueryBuilderFactory.select(Trade.class)
+                .systemTimeAsOf(START.plusMinutes(30))
+                .validTimeOverlaps(LocalDate.of(2020, 1, 14), LocalDate.of(2020, 1, 16))
+                .execute(store)
+                .getResults()
+                .map(Trade::getVolume)).containsExactly(200);
+        assertThat(QueryBuilderFactory.select(Trade.class)
+                .systemTimeAsOf(START.plusHours(1))
+                .execute(store)
+                .getResults()
+                .map(Trade::getVolume)).containsExactly(300);
+        assertThat(QueryBuilderFactory.select(Trade.class)
+                .systemTimeAsOf(START.plusHours(3))
+                .execute(store)
+                .getResults()).isEmpty();
+        assertThat(QueryBuilderFactory.select(Trade.class)
+                .systemTimeBetween(START, START.plusHours(2))
+                .execute(store)
+                .getResults()).hasSize(2);
+    }
+
+    @Test
+    void projectedQueriesCannotBeExecutedAgainstAStore() {
+        assertThat(assertThrows(IllegalStateException.class, () -> QueryBuilderFactory.select(Trade.class).select("id").execute(store)))
+                .hasMessage("projected queries must be executed with executeTuples or a RowMapper");
+    }
+
+    private static Trade newTrade(final UUID tradeId, final LocalDate validTimeStart, final LocalDate validTimeEnd) {
+        return new Trade().setBitemporalKey(new BitemporalKey.Builder()
+                .setTradeId(tradeId)
+                .setValidTimeStart(validTimeStart)
+                .setValidTimeEnd(validTimeEnd)
+                .build())
+                .setVolume(200)
+                .setPrice(new BigDecimal("123.45"))
+                .setMarketLimitFlag('M')
+                .setBuySellFlag('B')
+                .setStock("GOOGL");
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant instant;
+
+        private MutableClock(final LocalDateTime time) {
+            set(time);
+        }
+
+        private void set(final LocalDateTime time) {
+            this.instant = time.toInstant(ZoneOffset.UTC);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -8,7 +8,11 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
 import javax.persistence.FlushModeType;
@@ -149,4 +153,138 @@ class InsertQueryBuilderTest {
         assertThat(assertThrows(InvalidPeriodException.class, () -> queryBuilder.execute(entityManager)))
                 .hasMessage("Valid Time End is before Start for ID = '" + tradeId.toString() + "'");
     }
+
+    @Test
+    void batchedInsertWritesEveryRow() throws InvalidPeriodException {
+        final LocalDateTime now = LocalDateTime.now();
+        final Trade trade1 = newTrade();
+        final Trade trade2 = newTrade();
+
+        QueryBuilderFactory.insert(Trade.class).batchSize(1).fromAll(trade1, trade2).execute(entityManager);
+        assertTradesAreEqual(trade1, trade2, now);
+
+        QueryBuilderFactory.insert(Trade.class).batchSize(5).fromAll(trade1, trade2).execute(entityManager);
+        assertTradesAreEqual(trade1, trade2, now);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void batchedInsertCanCommitEachBatch() throws InvalidPeriodException {
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        try {
+            QueryBuilderFactory.insert(Trade.class)
+                    .batchSize(2)
+                    .commitEachBatch()
+                    .fromAll(io.vavr.collection.List.fill(5, this::newTrade))
+                    .execute(entityManager);
+
+            assertThat(JdbcTestUtils.countRowsInTable(jdbcTemplate, "reporting.trade_data")).isEqualTo(5);
+        } finally {
+            JdbcTestUtils.deleteFromTables(jdbcTemplate, "reporting.trade_data");
+        }
+    }
+
+    @Test
+    void batchesCannotBeCommittedInsideATransaction() {
+        final InsertQueryBuilder<Trade> queryBuilder = QueryBuilderFactory.insert(Trade.class)
+                .batchSize(2)
+                .commitEachBatch()
+                .from(newTrade());
+
+        assertThat(assertThrows(IllegalStateException.class, () -> queryBuilder.execute(entityManager)))
+                .hasMessage("batches cannot be committed inside an existing transaction");
+    }
+
+    @Test
+    void ingestWritesRowsFromIteratorsSpliteratorsAndStreams() throws InvalidPeriodException {
+        final InsertQueryBuilder<Trade> queryBuilder = QueryBuilderFactory.insert(Trade.class).batchSize(2);
+
+        assertThat(queryBuilder.ingest(entityManager, java.util.stream.Stream.generate(this::newTrade).limit(5))).isEqualTo(5);
+        assertThat(queryBuilder.ingest(entityManager, io.vavr.collection.List.fill(3, this::newTrade).iterator())).isEqualTo(3);
+        assertThat(queryBuilder.ingest(entityManager, io.vavr.collection.List.fill(2, this::newTrade).spliterator())).isEqualTo(2);
+        assertThat(queryBuilder.ingest(entityManager, java.util.Collections.emptyIterator())).isEqualTo(0);
+
+        assertThat(JdbcTestUtils.countRowsInTable(new JdbcTemplate(dataSource), "reporting.trade_data")).isEqualTo(10);
+    }
+
+    @Test
+    void ingestWritesWindowsBeforeAnInvalidRow() {
+        final Trade invalid = newTrade().setBitemporalKey(new BitemporalKey.Builder()
+                .setTradeId(UUID.randomUUID())
+                .setValidTimeStart(LocalDate.of(2020, 1, 21))
+                .setValidTimeEnd(LocalDate.of(2020, 1, 20))
+                .build());
+        final java.util.stream.Stream<Trade> rows = java.util.stream.Stream.concat(
+                java.util.stream.Stream.generate(this::newTrade).limit(3), java.util.stream.Stream.of(invalid));
+
+        assertThrows(InvalidPeriodException.class,
+                () -> QueryBuilderFactory.insert(Trade.class).batchSize(2).ingest(entityManager, rows));
+        assertThat(JdbcTestUtils.countRowsInTable(new JdbcTemplate(dataSource), "reporting.trade_data")).isEqualTo(2);
+    }
+
+    @Test
+    void batchSizeMustBePositive() {
+        assertThat(assertThrows(IllegalArgumentException.class, () -> QueryBuilderFactory.insert(Trade.class).batchSize(0)))
+                .hasMessage("batchSize must be positive");
+    }
+
+    @Test
+    void overlappingRowsInOneInsertAreRejected() {
+        final UUID tradeId = UUID.randomUUID();
+
+        assertThat(assertThrows(OverlappingKeyException.class, () -> QueryBuilderFactory.insert(Trade.class)
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 20)))
+                .from(newTrade(UUID.randomUUID(), LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 20)))
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 19), LocalDate.of(2020, 1, 25)))
+                .execute(entityManager)))
+                .hasMessage(String.format("Valid Time overlaps another version for ID = '%s'", tradeId));
+        assertThat(JdbcTestUtils.countRowsInTable(new JdbcTemplate(dataSource), "reporting.trade_data")).isEqualTo(0);
+    }
+
+    @Test
+    void rowsOverlappingAnOpenVersionAreRejected() throws InvalidPeriodException {
+        final UUID tradeId = UUID.randomUUID();
+        QueryBuilderFactory.insert(Trade.class)
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 20)))
+                .execute(entityManager);
+
+        assertThrows(OverlappingKeyException.class, () -> QueryBuilderFactory.insert(Trade.class)
+                .batchSize(2)
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 5), LocalDate.of(2020, 1, 11)))
+                .execute(entityManager));
+    }
+
+    @Test
+    void adjacentAndClosedVersionsDoNotOverlap() throws InvalidPeriodException {
+        final UUID tradeId = UUID.randomUUID();
+        QueryBuilderFactory.insert(Trade.class)
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 20)))
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 20), LocalDate.of(2020, 1, 30)))
+                .execute(entityManager);
+        new JdbcTemplate(dataSource).update("update reporting.trade_data set system_time_end = CURRENT_TIMESTAMP where valid_time_start = ?",
+                LocalDate.of(2020, 1, 10));
+
+        QueryBuilderFactory.insert(Trade.class)
+                .from(newTrade(tradeId, LocalDate.of(2020, 1, 1), LocalDate.of(2020, 1, 20)))
+                .execute(entityManager);
+
+        assertThat(JdbcTestUtils.countRowsInTable(new JdbcTemplate(dataSource), "reporting.trade_data")).isEqualTo(3);
+    }
+
+    private Trade newTrade() {
+        return newTrade(UUID.randomUUID(), LocalDate.of(2020, 1, 20), LocalDate.of(2020, 1, 21));
+    }
+
+    private Trade newTrade(final UUID tradeId, final LocalDate validTimeStart, final LocalDate validTimeEnd) {
+        return new Trade().setBitemporalKey(new BitemporalKey.Builder()
+                .setTradeId(tradeId)
+                .setValidTimeStart(validTimeStart)
+                .setValidTimeEnd(validTimeEnd)
+                .build())
+                .setVolume(200)
+                .setPrice(new BigDecimal("123.45"))
+                .setMarketLimitFlag('M')
+                .setBuySellFlag('B')
+                .setStock("GOOGL");
+    }
 }
@@ -111,4 +111,32 @@ class InsertQueryTest {
                         "VALUES ('769fb864-f3b7-4ca5-965e-bcff80088197', '2020-01-20', '2020-01-21', '2020-01-20 00:00:00.000000', '2020-01-20 00:00:01.000000', 'GOOGL', 123.45, 100, 'B', 'M'), " +
                         "('123fb864-f3b7-4ca5-965e-bcff80088123', '2020-02-20', '2020-02-21', '2020-02-20 00:00:00.000000', '2020-02-20 00:00:01.000000', 'MSFT', 321.45, 200, 'S', 'L')");
     }
+
+    @Test
+    void buildParameterisedKeepsSqlExpressionsInline() {
+        final UUID id = UUID.fromString("769fb864-f3b7-4ca5-965e-bcff80088197");
+        final List<List<Tuple2<String, Object>>> fields = List.of(
+                List.of(
+                        new Tuple2<>("id", id),
+                        new Tuple2<>("valid_time_start", LocalDate.of(2020, 1, 20)),
+                        new Tuple2<>("system_time_start", "CURRENT_TIMESTAMP"),
+                        new Tuple2<>("stock", "GOOGL")
+                ),
+                List.of(
+                        new Tuple2<>("id", id),
+                        new Tuple2<>("valid_time_start", LocalDate.of(2020, 1, 21)),
+                        new Tuple2<>("system_time_start", "CURRENT_TIMESTAMP"),
+                        new Tuple2<>("stock", "MSFT")
+                )
+        );
+
+        final InsertQuery<Trade> query = new InsertQuery<>(Trade.class);
+        query.addFields(fields);
+
+        assertThat(query.buildParameterised()).isEqualTo(
+                "INSERT INTO reporting.trade_data (id, valid_time_start, system_time_start, stock) " +
+                        "VALUES (?, ?, CURRENT_TIMESTAMP, ?), (?, ?, CURRENT_TIMESTAMP, ?)");
+        assertThat(query.getParameters()).containsExactly(
+                id, LocalDate.of(2020, 1, 20), "GOOGL", id, LocalDate.of(2020, 1, 21), "MSFT");
+    }
 }
@@ -0,0 +1,53 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
+import kieranbrown.bitemp.models.Trade;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InsertSelectQueryTest {
+
+    @Test
+    void constructorThrowsForInvalidInput() {
+        assertThat(assertThrows(NullPointerException.class, () -> new InsertSelectQuery<>(null)))
+                .hasMessage("class cannot be null");
+    }
+
+    @Test
+    void buildReturnsCorrectQuery() {
+        final InsertSelectQuery<Trade> query = new InsertSelectQuery<>(Trade.class)
+                .addCopiedColumns(List.of("id", "stock"))
+                .addFields(List.of(
+                        new Tuple2<>("valid_time_start", LocalDate.of(2020, 1, 18)),
+                        new Tuple2<>("system_time_start", "CURRENT_TIMESTAMP")))
+                .addFilters(List.of(new SingleQueryFilter("volume", QueryEquality.EQUALS, 5)));
+
+        assertThat(query.build()).isEqualTo("INSERT INTO reporting.trade_data (id, stock, valid_time_start, system_time_start) " +
+                "SELECT id, stock, '2020-01-18', CURRENT_TIMESTAMP FROM reporting.trade_data WHERE volume = 5");
+    }
+
+    @Test
+    void buildParameterisedReturnsPlaceholdersForFieldsThenFilters() {
+        final InsertSelectQuery<Trade> query = new InsertSelectQuery<>(Trade.class)
+                .addCopiedColumns(List.of("id"))
+                .addFields(List.of(
+                        new Tuple2<>("valid_time_start", LocalDate.of(2020, 1, 18)),
+                        new Tuple2<>("system_time_start", "CURRENT_TIMESTAMP")))
+                .addFilters(List.of(new SingleQueryFilter("volume", QueryEquality.EQUALS, 5)));
+
+        assertThat(query.buildParameterised()).isEqualTo("INSERT INTO reporting.trade_data (id, valid_time_start, system_time_start) " +
+                "SELECT id, ?, CURRENT_TIMESTAMP FROM reporting.trade_data WHERE volume = ?");
+        assertThat(query.getParameters()).containsExactly(LocalDate.of(2020, 1, 18), 5);
+    }
+
+    @Test
+    void buildWithoutFiltersCopiesEveryRow() {
+        assertThat(new InsertSelectQuery<>(Trade.class).addCopiedColumns(List.of("id")).build())
+                .isEqualTo("INSERT INTO reporting.trade_data (id) SELECT id FROM reporting.trade_data");
+    }
+}
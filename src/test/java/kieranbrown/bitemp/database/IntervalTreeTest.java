@@ -0,0 +1,84 @@
+package kieranbrown.bitemp.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IntervalTreeTest {
+
+    @Test
+    void searchFindsIntervalsInBothRanges() {
+        final IntervalTree<String> tree = new IntervalTree<>();
+        tree.add(10, 20, "a");
+        tree.add(15, 25, "b");
+        tree.add(20, 30, "c");
+        tree.add(10, 20, "d");
+
+        //overlaps [18, 22)
+        assertThat(search(tree, Long.MIN_VALUE, 21, 19, Long.MAX_VALUE)).containsExactly("a", "d", "b", "c");
+        //precedes 20
+        assertThat(search(tree, Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, 20)).containsExactly("a", "d");
+        //succeeds 15
+        assertThat(search(tree, 15, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE)).containsExactly("b", "c");
+        //equals [15, 25)
+        assertThat(search(tree, 15, 15, 25, 25)).containsExactly("b");
+    }
+
+    @Test
+    void removeMatchesByIdentity() {
+        final IntervalTree<String> tree = new IntervalTree<>();
+        final String value = new String("a");
+        tree.add(10, 20, new String("a"));
+        tree.add(10, 20, value);
+
+        assertThat(tree.remove(10, 20, new String("a"))).isFalse();
+        assertThat(tree.remove(10, 21, value)).isFalse();
+        assertThat(tree.remove(10, 20, value)).isTrue();
+        assertThat(tree.size()).isEqualTo(1);
+    }
+
+    @Test
+    void matchesAScanThroughRandomAddsAndRemoves() {
+        final Random random = new Random(42);
+        final IntervalTree<long[]> tree = new IntervalTree<>();
+        final List<long[]> intervals = new ArrayList<>();
+
+        for (int i = 0; i < 5000; i++) {
+            if (!intervals.isEmpty() && random.nextInt(3) == 0) {
+                final long[] removed = intervals.remove(random.nextInt(intervals.size()));
+                assertThat(tree.remove(removed[0], removed[1], removed)).isTrue();
+            } else {
+                final long start = random.nextInt(1000);
+                final long[] interval = {start, start + random.nextInt(50)};
+                intervals.add(interval);
+                tree.add(interval[0], interval[1], interval);
+            }
+        }
+        assertThat(tree.size()).isEqualTo(intervals.size());
+        assertThat(tree).containsExactlyInAnyOrderElementsOf(intervals);
+
+        for (int i = 0; i < 200; i++) {
+            final long a = random.nextInt(1100);
+            final long b = a + random.nextInt(100);
+            final long c = random.nextInt(1100);
+            final long d = c + random.nextInt(100);
+            final List<long[]> expected = intervals.stream()
+                    .filter(x -> x[0] >= a && x[0] <= b && x[1] >= c && x[1] <= d)
+                    .collect(Collectors.toList());
+
+            assertThat(search(tree, a, b, c, d)).containsExactlyInAnyOrderElementsOf(expected);
+        }
+    }
+
+    private static <V> List<V> search(final IntervalTree<V> tree, final long startMin, final long startMax,
+                                      final long endMin, final long endMax) {
+        final List<V> results = new ArrayList<>();
+        tree.search(startMin, startMax, endMin, endMax, results::add);
+        return results;
+    }
+}
@@ -0,0 +1,99 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.collection.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeySetQueryFilterTest {
+    @Test
+    void constructorThrowsForNullInput() {
+        assertThat(assertThrows(NullPointerException.class, () -> new KeySetQueryFilter("id", null)))
+                .hasMessage("keys cannot be null");
+        assertThat(assertThrows(NullPointerException.class, () -> new KeySetQueryFilter(null, List.of(1))))
+                .hasMessage("column cannot be null/blank");
+    }
+
+    @Test
+    void smallSetsRenderAsInList() {
+        final UUID id = UUID.fromString("769fb864-f3b7-4ca5-965e-bcff80088197");
+        final KeySetQueryFilter filter = new KeySetQueryFilter("id", List.of(id, 5, id));
+
+        assertThat(filter.getFilters()).isEqualTo("id IN ('769fb864-f3b7-4ca5-965e-bcff80088197', 5)");
+        assertThat(filter.getParameterisedFilters()).isEqualTo("id IN (?, ?)");
+        assertThat(filter.getParameters()).containsExactly(id, 5);
+    }
+
+    @Test
+    void largeSetsAreSplitIntoChunks() {
+        final KeySetQueryFilter filter = new KeySetQueryFilter("id", List.range(0, KeySetQueryFilter.CHUNK_SIZE + 2));
+        final String chunk = List.fill(KeySetQueryFilter.CHUNK_SIZE, "?").mkString(", ");
+
+        assertThat(filter.getParameterisedFilters()).isEqualTo("(id IN (" + chunk + ") OR id IN (" + chunk + "))");
+        assertThat(filter.getParameters()).hasSize(2 * KeySetQueryFilter.CHUNK_SIZE)
+                .endsWith(KeySetQueryFilter.CHUNK_SIZE + 1, KeySetQueryFilter.CHUNK_SIZE + 1);
+    }
+
+    @Test
+    void parametersArePaddedWithTheLastKey() {
+        final KeySetQueryFilter filter = new KeySetQueryFilter("id", List.of(1, 2, 3));
+
+        assertThat(filter.getFilters()).isEqualTo("id IN (1, 2, 3)");
+        assertThat(filter.getParameterisedFilters()).isEqualTo("id IN (?, ?, ?, ?)");
+        assertThat(filter.getParameters()).containsExactly(1, 2, 3, 3);
+    }
+
+    @Test
+    void emptySetMatchesNothing() {
+        final KeySetQueryFilter filter = new KeySetQueryFilter("id", List.empty());
+
+        assertThat(filter.getFilters()).isEqualTo("1 = 0");
+        assertThat(new NotQueryFilter(filter).getParameterisedFilters()).isEqualTo("NOT 1 = 0");
+    }
+
+    @Test
+    void setsOfSimilarSizesShareAShape() {
+        assertThat(new KeySetQueryFilter("id", List.range(0, 5)).getShape())
+                .isEqualTo(new KeySetQueryFilter("id", List.range(10, 18)).getShape())
+                .isNotEqualTo(new KeySetQueryFilter("id", List.range(0, 4)).getShape())
+                .isNotEqualTo(new KeySetQueryFilter("id", List.range(0, 9)).getShape());
+        assertThat(new KeySetQueryFilter("id", List.range(0, 600)).getShape())
+                .isEqualTo(new KeySetQueryFilter("id", List.range(0, KeySetQueryFilter.CHUNK_SIZE)).getShape());
+        assertThat(new KeySetQueryFilter("id", List.range(0, KeySetQueryFilter.CHUNK_SIZE + 1)).getShape())
+                .isEqualTo(new KeySetQueryFilter("id", List.range(0, 2 * KeySetQueryFilter.CHUNK_SIZE)).getShape());
+    }
+
+    @Test
+    void stageKeepsSmallSetsInline() {
+        final KeySetQueryFilter filter = new KeySetQueryFilter("id", List.of(1, 2));
+
+        assertThat(filter.stage(new JdbcTemplate(), "trade_data_keys")).isSameAs(filter);
+    }
+
+    @Test
+    void stageLoadsLargeSetsIntoTemporaryTable() {
+        final SingleConnectionDataSource dataSource =
+                new SingleConnectionDataSource("jdbc:h2:mem:keyset;MODE=Oracle", "sa", "", true);
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        final List<String> keys = List.range(0, KeySetQueryFilter.STAGING_THRESHOLD + 1).map(x -> "key" + x);
+
+        final KeySetQueryFilter staged = new KeySetQueryFilter("id", keys).stage(jdbcTemplate, "trade_data_keys");
+
+        assertThat(staged.isStaged()).isTrue();
+        assertThat(staged.getParameterisedFilters()).isEqualTo("id IN (SELECT key_value FROM trade_data_keys)");
+        assertThat(staged.getParameters()).isEmpty();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM trade_data_keys", Integer.class))
+                .isEqualTo(KeySetQueryFilter.STAGING_THRESHOLD + 1);
+
+        new KeySetQueryFilter("id", keys.append("another")).stage(jdbcTemplate, "trade_data_keys");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM trade_data_keys", Integer.class))
+                .isEqualTo(KeySetQueryFilter.STAGING_THRESHOLD + 2);
+
+        dataSource.destroy();
+    }
+}
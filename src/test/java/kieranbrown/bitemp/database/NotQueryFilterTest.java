@@ -24,4 +24,13 @@ class NotQueryFilterTest {
         );
         assertThat(notQueryFilter.getFilters()).isNotNull().isEqualTo("NOT (valid_time_start >= '2020-01-20' AND valid_time_end >= '2020-01-21')");
     }
+
+    @Test
+    void getParameterisedFiltersNegatesInnerFilter() {
+        final NotQueryFilter notQueryFilter = new NotQueryFilter(
+                new SingleQueryFilter("valid_time_start", QueryEquality.GREATER_THAN_EQUAL_TO, LocalDate.of(2020, 1, 20))
+        );
+        assertThat(notQueryFilter.getParameterisedFilters()).isEqualTo("NOT valid_time_start >= ?");
+        assertThat(notQueryFilter.getParameters()).containsExactly(LocalDate.of(2020, 1, 20));
+    }
 }
@@ -98,4 +98,15 @@ class OrQueryFilterTest {
     void getFilterEscapesValues() {
         assertThat(new OrQueryFilter(new Tuple3<>("id", QueryEquality.EQUALS, LocalDate.of(2020, 10, 3))).getFilters()).isEqualTo("id = '2020-10-03'");
     }
-}
\ No newline at end of file
+
+    @Test
+    void getParameterisedFiltersReturnsPlaceholdersAndOrderedParameters() {
+        final OrQueryFilter queryFilter = new OrQueryFilter(
+                new Tuple3<>("id", QueryEquality.EQUALS, 3),
+                new Tuple3<>("valid_time_start", QueryEquality.LESS_THAN, LocalDate.of(2020, 10, 20))
+        );
+
+        assertThat(queryFilter.getParameterisedFilters()).isEqualTo("(id = ? OR valid_time_start < ?)");
+        assertThat(queryFilter.getParameters()).containsExactly(3, LocalDate.of(2020, 10, 20));
+    }
+}
@@ -0,0 +1,43 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.collection.List;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static kieranbrown.bitemp.database.QueryEquality.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PeriodBoundsTest {
+    private static final LocalDate START = LocalDate.of(2020, 1, 15);
+    private static final LocalDate END = LocalDate.of(2020, 1, 17);
+
+    @Test
+    void overlapsBoundsBothEnds() {
+        final PeriodBounds bounds = PeriodBounds.validTime(List.of(SelectQueryBuilder.validTimeOverlaps.apply(START, END)));
+
+        assertThat(bounds.isBounded()).isTrue();
+        assertThat(bounds.startMax).isEqualTo(END.toEpochDay() - 1);
+        assertThat(bounds.endMin).isEqualTo(START.toEpochDay() + 1);
+        assertThat(bounds.startMin).isEqualTo(Long.MIN_VALUE);
+        assertThat(bounds.endMax).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    void onlyComparisonsEveryRowMustPassAreUsed() {
+        final PeriodBounds bounds = PeriodBounds.validTime(List.of(
+                new OrQueryFilter(new SingleQueryFilter("valid_time_start", EQUALS, START)),
+                new NotQueryFilter(new SingleQueryFilter("valid_time_end", EQUALS, END)),
+                new SingleQueryFilter("valid_time_start", DOES_NOT_EQUAL, START),
+                new SingleQueryFilter("system_time_start", EQUALS, START)));
+
+        assertThat(bounds.isBounded()).isFalse();
+    }
+
+    @Test
+    void crossingBoundsAreEmpty() {
+        assertThat(PeriodBounds.validTime(List.of(
+                new SingleQueryFilter("valid_time_start", GREATER_THAN_EQUAL_TO, END),
+                new SingleQueryFilter("valid_time_start", LESS_THAN, START))).isEmpty()).isTrue();
+    }
+}
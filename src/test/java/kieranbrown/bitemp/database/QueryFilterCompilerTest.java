@@ -0,0 +1,100 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.collection.List;
+import kieranbrown.bitemp.models.BitemporalKey;
+import kieranbrown.bitemp.models.EntityMetamodel;
+import kieranbrown.bitemp.models.Trade;
+import kieranbrown.bitemp.utils.Constants;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+import static kieranbrown.bitemp.database.QueryEquality.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QueryFilterCompilerTest {
+    private static final EntityMetamodel<Trade> METAMODEL = EntityMetamodel.forClass(Trade.class);
+    private static final LocalDateTime NOW = LocalDateTime.of(2020, 1, 10, 9, 0);
+
+    @Test
+    void compiledFiltersAgreeWithTheEvaluator() {
+        final Random random = new Random(42);
+        final java.util.List<Trade> trades = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            trades.add(newTrade(random));
+        }
+        final Trade sample = trades.get(7);
+        final UUID id = sample.getBitemporalKey().getId();
+        final List<List<QueryFilter>> queries = List.of(
+                List.of(new SingleQueryFilter("id", EQUALS, id)),
+                List.of(new SingleQueryFilter("id", GREATER_THAN, id.toString())),
+                List.of(new SingleQueryFilter("id", LESS_THAN, id.toString().toUpperCase())),
+                List.of(new KeySetQueryFilter("id", List.of(id, trades.get(8).getBitemporalKey().getId().toString()))),
+                List.of(new NotQueryFilter(new KeySetQueryFilter("volume", List.of(1, 2L, new BigDecimal("3.0"))))),
+                List.of(new SingleQueryFilter("volume", GREATER_THAN, 499.5), new SingleQueryFilter("volume", LESS_THAN_EQUAL_TO, 700L)),
+                List.of(new SingleQueryFilter("volume", EQUALS, new BigDecimal("12.00")), new SingleQueryFilter("volume", DOES_NOT_EQUAL, 12.5)),
+                List.of(new SingleQueryFilter("price", GREATER_THAN_EQUAL_TO, 50), new SingleQueryFilter("price", LESS_THAN, new BigDecimal("60.005"))),
+                List.of(new SingleQueryFilter("stock", LESS_THAN, "MSFT")),
+                List.of(new SingleQueryFilter("buy_sell_flag", EQUALS, "B"), new SingleQueryFilter("market_limit_flag", GREATER_THAN_EQUAL_TO, 'M')),
+                List.of(new SingleQueryFilter("buy_sell_flag", LESS_THAN, "BS")),
+                List.of(SelectQueryBuilder.validTimeOverlaps.apply(LocalDate.of(2020, 3, 1), LocalDate.of(2020, 4, 1))),
+                List.of(new SingleQueryFilter("system_time_start", LESS_THAN_EQUAL_TO, "CURRENT_TIMESTAMP"),
+                        new SingleQueryFilter("system_time_end", GREATER_THAN, "CURRENT_TIMESTAMP")),
+                List.of(new OrQueryFilter(
+                        new AndQueryFilter(new SingleQueryFilter("stock", EQUALS, "TSLA"), new SingleQueryFilter("volume", LESS_THAN, 100)),
+                        new NotQueryFilter(new SingleQueryFilter("price", GREATER_THAN, 10)))),
+                List.empty());
+
+        for (final List<QueryFilter> filters : queries) {
+            final Predicate<Trade> predicate = QueryFilterCompiler.compile(METAMODEL, filters, NOW);
+            for (final Trade trade : trades) {
+                assertThat(predicate.test(trade)).as(filters + " on " + trade)
+                        .isEqualTo(QueryFilterEvaluator.matches(METAMODEL, filters, trade, NOW));
+            }
+        }
+    }
+
+    @Test
+    void conjunctsAreTestedMostSelectiveFirst() {
+        final Trade trade = newTrade(new Random(1)).setVolume(10);
+        final List<QueryFilter> filters = List.of(
+                new SingleQueryFilter("stock", GREATER_THAN, 5),
+                new SingleQueryFilter("volume", EQUALS, 11));
+
+        assertThat(assertThrows(IllegalArgumentException.class, () -> QueryFilterEvaluator.matches(METAMODEL, filters, trade, NOW)))
+                .hasMessage("cannot compare String with Integer");
+        assertThat(QueryFilterCompiler.compile(METAMODEL, filters, NOW).test(trade)).isFalse();
+    }
+
+    @Test
+    void unknownColumnsFailWhenTested() {
+        final Predicate<Trade> predicate = QueryFilterCompiler.compile(METAMODEL, List.of(new SingleQueryFilter("missing", EQUALS, 1)), NOW);
+
+        assertThat(assertThrows(IllegalArgumentException.class, () -> predicate.test(new Trade())))
+                .hasMessage("unknown column missing");
+    }
+
+    private static Trade newTrade(final Random random) {
+        final LocalDate validTimeStart = LocalDate.of(2020, 1, 1).plusDays(random.nextInt(365));
+        final LocalDateTime systemTimeStart = NOW.minusDays(10).plusSeconds(random.nextInt(20 * 86_400));
+        return new Trade().setBitemporalKey(new BitemporalKey.Builder()
+                .setTradeId(new UUID(random.nextLong(), random.nextLong()))
+                .setValidTimeStart(validTimeStart)
+                .setValidTimeEnd(validTimeStart.plusDays(1 + random.nextInt(60)))
+                .build())
+                .setStock(new String[]{"AAPL", "GOOGL", "MSFT", "TSLA"}[random.nextInt(4)])
+                .setPrice(BigDecimal.valueOf(random.nextInt(10_000), 2))
+                .setVolume(random.nextInt(1000))
+                .setBuySellFlag(random.nextBoolean() ? 'B' : 'S')
+                .setMarketLimitFlag(random.nextBoolean() ? 'M' : 'L')
+                .setSystemTimeStart(systemTimeStart)
+                .setSystemTimeEnd(random.nextInt(3) == 0 ? systemTimeStart.plusHours(1 + random.nextInt(100)) : Constants.MARIADB_END_SYSTEM_TIME);
+    }
+}
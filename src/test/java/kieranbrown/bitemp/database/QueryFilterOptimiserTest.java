@@ -0,0 +1,151 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.collection.List;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static kieranbrown.bitemp.database.QueryEquality.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QueryFilterOptimiserTest {
+    private static final LocalDate START = LocalDate.of(2020, 1, 15);
+    private static final LocalDate END = LocalDate.of(2020, 1, 17);
+
+    @Test
+    void optimiseThrowsForNullInput() {
+        assertThat(assertThrows(NullPointerException.class, () -> QueryFilterOptimiser.optimise(null)))
+                .hasMessage("filters cannot be null");
+    }
+
+    @Test
+    void flattensNestedAndsAndOrs() {
+        final List<QueryFilter> optimised = QueryFilterOptimiser.optimise(List.of(
+                new AndQueryFilter(
+                        new SingleQueryFilter("id", EQUALS, 1),
+                        new AndQueryFilter(new SingleQueryFilter("stock", EQUALS, "GOOGL"))
+                ),
+                new OrQueryFilter(
+                        new SingleQueryFilter("volume", EQUALS, 1),
+                        new OrQueryFilter(
+                                new SingleQueryFilter("volume", EQUALS, 2),
+                                new SingleQueryFilter("volume", EQUALS, 3)
+                        )
+                )
+        ));
+
+        assertThat(optimised.map(QueryFilter::getFilters))
+                .containsExactly("id = 1", "stock = 'GOOGL'", "(volume = 1 OR volume = 2 OR volume = 3)");
+    }
+
+    @Test
+    void pushesNotsDownWithDeMorgansLaws() {
+        final List<QueryFilter> optimised = QueryFilterOptimiser.optimise(List.of(
+                new NotQueryFilter(new AndQueryFilter(
+                        new SingleQueryFilter("valid_time_start", GREATER_THAN_EQUAL_TO, END),
+                        new NotQueryFilter(new OrQueryFilter(
+                                new SingleQueryFilter("id", EQUALS, 1),
+                                new SingleQueryFilter("id", EQUALS, 2)
+                        ))
+                ))
+        ));
+
+        assertThat(optimised.map(QueryFilter::getFilters))
+                .containsExactly("(valid_time_start < '2020-01-17' OR id = 1 OR id = 2)");
+    }
+
+    @Test
+    void keepsNotsOverKeySets() {
+        final List<QueryFilter> optimised = QueryFilterOptimiser.optimise(List.of(
+                new NotQueryFilter(new KeySetQueryFilter("id", List.of(1, 2))),
+                new NotQueryFilter(new AndQueryFilter(
+                        new KeySetQueryFilter("volume", List.of(3)),
+                        new SingleQueryFilter("stock", EQUALS, "GOOGL")
+                ))
+        ));
+
+        assertThat(optimised.map(QueryFilter::getFilters))
+                .containsExactly("NOT id IN (1, 2)", "(NOT volume IN (3) OR stock <> 'GOOGL')");
+    }
+
+    @Test
+    void dropsTautologies() {
+        final List<QueryFilter> optimised = QueryFilterOptimiser.optimise(List.of(
+                new SingleQueryFilter("valid_time_start", EQUALS, START),
+                new OrQueryFilter(
+                        new SingleQueryFilter("valid_time_end", EQUALS, END),
+                        new SingleQueryFilter("valid_time_end", DOES_NOT_EQUAL, END)
+                )
+        ));
+
+        assertThat(optimised.map(QueryFilter::getFilters)).containsExactly("valid_time_start = '2020-01-15'");
+    }
+
+    @Test
+    void tautologyOnlyFilterIsRemovedEntirely() {
+        assertThat(QueryFilterOptimiser.optimise(List.of(new NotQueryFilter(new AndQueryFilter(
+                new SingleQueryFilter("volume", LESS_THAN, 10),
+                new SingleQueryFilter("volume", GREATER_THAN_EQUAL_TO, 10)
+        ))))).isEmpty();
+    }
+
+    @Test
+    void mergesComparisonsOnTheSameColumnIntoARange() {
+        final List<QueryFilter> optimised = QueryFilterOptimiser.optimise(List.of(
+                new SingleQueryFilter("valid_time_start", GREATER_THAN_EQUAL_TO, START),
+                new SingleQueryFilter("volume", LESS_THAN, 100),
+                new SingleQueryFilter("valid_time_start", GREATER_THAN, START),
+                new SingleQueryFilter("valid_time_start", LESS_THAN_EQUAL_TO, END),
+                new SingleQueryFilter("volume", LESS_THAN_EQUAL_TO, 50),
+                new SingleQueryFilter("valid_time_start", GREATER_THAN_EQUAL_TO, LocalDate.of(2020, 1, 10))
+        ));
+
+        assertThat(optimised.map(QueryFilter::getFilters)).containsExactly(
+                "valid_time_start > '2020-01-15'",
+                "volume <= 50",
+                "valid_time_start <= '2020-01-17'"
+        );
+    }
+
+    @Test
+    void doesNotMergeBoundsTheDatabaseOrdersDifferently() {
+        final UUID low = UUID.fromString("7fffffff-ffff-ffff-ffff-ffffffffffff");
+        final UUID high = UUID.fromString("80000000-0000-0000-0000-000000000000");
+        final List<QueryFilter> optimised = QueryFilterOptimiser.optimise(List.of(
+                new SingleQueryFilter("id", GREATER_THAN, low),
+                new SingleQueryFilter("id", GREATER_THAN, high),
+                new SingleQueryFilter("stock", LESS_THAN, "b"),
+                new SingleQueryFilter("stock", LESS_THAN, "B")
+        ));
+
+        assertThat(optimised.map(QueryFilter::getFilters)).containsExactly(
+                "id > '7fffffff-ffff-ffff-ffff-ffffffffffff'",
+                "id > '80000000-0000-0000-0000-000000000000'",
+                "stock < 'b'",
+                "stock < 'B'"
+        );
+    }
+
+    @Test
+    void doesNotMergeSqlExpressions() {
+        final List<QueryFilter> optimised = QueryFilterOptimiser.optimise(List.of(
+                new SingleQueryFilter("system_time_end", GREATER_THAN, "CURRENT_TIMESTAMP"),
+                new SingleQueryFilter("system_time_end", GREATER_THAN, "CURRENT_TIMESTAMP")
+        ));
+
+        assertThat(optimised.map(QueryFilter::getFilters)).containsExactly("system_time_end > CURRENT_TIMESTAMP");
+    }
+
+    @Test
+    void validTimeOverlapsIsASingleRange() {
+        final List<QueryFilter> optimised = QueryFilterOptimiser.optimise(List.of(
+                SelectQueryBuilder.validTimeOverlaps.apply(START, END)
+        ));
+
+        assertThat(optimised.map(QueryFilter::getParameterisedFilters))
+                .containsExactly("valid_time_start < ?", "valid_time_end > ?");
+        assertThat(optimised.flatMap(QueryFilter::getParameters)).containsExactly(END, START);
+    }
+}
@@ -0,0 +1,59 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.collection.List;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QueryFilterRendererTest {
+    private static final QueryFilter FILTER = new OrQueryFilter(
+            new AndQueryFilter(
+                    new SingleQueryFilter("id", QueryEquality.EQUALS, 3),
+                    new NotQueryFilter(new SingleQueryFilter("valid_time_start", QueryEquality.GREATER_THAN_EQUAL_TO, LocalDate.of(2020, 1, 20)))
+            ),
+            new SingleQueryFilter("system_time_end", QueryEquality.GREATER_THAN, "CURRENT_TIMESTAMP"),
+            new AndQueryFilter(new SingleQueryFilter("stock", QueryEquality.EQUALS, "GOOGL")),
+            new OrQueryFilter(List.empty())
+    );
+
+    @Test
+    void renderThrowsForNullInput() {
+        assertThat(assertThrows(NullPointerException.class, () -> QueryFilterRenderer.literal().render((QueryFilter) null)))
+                .hasMessage("filter cannot be null");
+        assertThat(assertThrows(NullPointerException.class, () -> QueryFilterRenderer.literal().render(null, " AND ")))
+                .hasMessage("filters cannot be null");
+    }
+
+    @Test
+    void literalRenderingMatchesGetFilters() {
+        assertThat(QueryFilterRenderer.literal().render(FILTER).toString())
+                .isEqualTo(FILTER.getFilters())
+                .isEqualTo("((id = 3 AND NOT valid_time_start >= '2020-01-20') OR system_time_end > CURRENT_TIMESTAMP OR stock = 'GOOGL' OR )");
+    }
+
+    @Test
+    void parameterisedRenderingMatchesGetParameterisedFilters() {
+        assertThat(QueryFilterRenderer.parameterised().render(FILTER).toString())
+                .isEqualTo(FILTER.getParameterisedFilters());
+    }
+
+    @Test
+    void renderJoinsListsWithSeparator() {
+        assertThat(QueryFilterRenderer.parameterised().render(List.of(
+                new SingleQueryFilter("id", QueryEquality.EQUALS, 3),
+                new SingleQueryFilter("volume", QueryEquality.LESS_THAN, 200)
+        ), " and ").toString()).isEqualTo("id = ? and volume < ?");
+    }
+
+    @Test
+    void resetAllowsRendererToBeReused() {
+        final QueryFilterRenderer renderer = QueryFilterRenderer.literal();
+        renderer.render(FILTER);
+
+        assertThat(renderer.reset().render(new SingleQueryFilter("id", QueryEquality.EQUALS, 3)).toString())
+                .isEqualTo("id = 3");
+    }
+}
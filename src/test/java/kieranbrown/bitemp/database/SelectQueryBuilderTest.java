@@ -14,7 +14,10 @@ import javax.sql.DataSource;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.Period;
+import java.util.ArrayList;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -997,4 +1000,213 @@ class SelectQueryBuilderTest {
                 .hasFieldOrPropertyWithValue("validTimeStart", LocalDate.of(2020, 1, 15))
                 .hasFieldOrPropertyWithValue("validTimeEnd", LocalDate.of(2020, 1, 19));
     }
+
+    @Test
+    void repeatedQueriesReuseTheCachedTemplate() {
+        QueryBuilderFactory.select(Trade.class)
+                .systemTimeAsOf(LocalDateTime.of(2020, 1, 20, 3, 45, 0))
+                .validTimeOverlaps(LocalDate.of(2020, 1, 15), LocalDate.of(2020, 1, 17))
+                .execute(entityManager);
+
+        final long hits = SelectQueryBuilder.getTemplateCacheStats().hitCount();
+
+        QueryBuilderFactory.select(Trade.class)
+                .systemTimeAsOf(LocalDateTime.of(2020, 1, 21, 3, 45, 0))
+                .validTimeOverlaps(LocalDate.of(2020, 1, 16), LocalDate.of(2020, 1, 18))
+                .execute(entityManager);
+
+        assertThat(SelectQueryBuilder.getTemplateCacheStats().hitCount()).isEqualTo(hits + 1);
+    }
+
+    @Test
+    void projectionReturnsOnlySelectedColumns() throws InvalidPeriodException {
+        final UUID id = UUID.randomUUID();
+        QueryBuilderFactory.insert(Trade.class)
+                .from(new Trade().setBitemporalKey(
+                        new BitemporalKey.Builder()
+                                .setTradeId(id)
+                                .setValidTimeStart(LocalDate.of(2020, 1, 20))
+                                .setValidTimeEnd(LocalDate.of(2020, 1, 21))
+                                .build())
+                        .setVolume(200)
+                        .setPrice(new BigDecimal("123.45"))
+                        .setMarketLimitFlag('M')
+                        .setBuySellFlag('B')
+                        .setStock("GOOGL"))
+                .execute(entityManager);
+
+        final List<Object[]> tuples = QueryBuilderFactory.select(Trade.class)
+                .select("stock", "volume")
+                .where("valid_time_start", QueryEquality.EQUALS, LocalDate.of(2020, 1, 20))
+                .executeTuples(entityManager);
+
+        assertThat(tuples).hasSize(1);
+        assertThat(tuples.head()).containsExactly("GOOGL", 200);
+
+        assertThat(QueryBuilderFactory.select(Trade.class)
+                .select("valid_time_start", "valid_time_end")
+                .execute(entityManager, (resultSet, rowNum) -> resultSet.getDate(1).toLocalDate().until(resultSet.getDate(2).toLocalDate())))
+                .containsExactly(Period.ofDays(1));
+    }
+
+    @Test
+    void projectedQueriesCannotBeExecutedAsEntities() {
+        assertThat(assertThrows(IllegalStateException.class, () -> QueryBuilderFactory.select(Trade.class)
+                .select("id")
+                .execute(entityManager)))
+                .hasMessage("projected queries must be executed with executeTuples or a RowMapper");
+    }
+
+    @Test
+    void selectThrowsForBlankColumns() {
+        assertThat(assertThrows(IllegalArgumentException.class, () -> QueryBuilderFactory.select(Trade.class).select("id", " ")))
+                .hasMessage("column cannot be null/blank");
+    }
+
+    @Test
+    void streamReadsResultsOneAtATime() throws InvalidPeriodException {
+        QueryBuilderFactory.insert(Trade.class)
+                .fromAll(List.range(0, 5).map(x -> new Trade().setBitemporalKey(
+                        new BitemporalKey.Builder()
+                                .setTradeId(UUID.randomUUID())
+                                .setValidTimeStart(LocalDate.of(2020, 1, 20 + x))
+                                .setValidTimeEnd(LocalDate.of(2020, 1, 21 + x))
+                                .build())
+                        .setVolume(200)
+                        .setPrice(new BigDecimal("123.45"))
+                        .setMarketLimitFlag('M')
+                        .setBuySellFlag('B')
+                        .setStock("GOOGL")))
+                .execute(entityManager);
+
+        try (final Stream<Trade> trades = QueryBuilderFactory.select(Trade.class)
+                .where("valid_time_start", QueryEquality.GREATER_THAN, LocalDate.of(2020, 1, 21))
+                .fetchSize(2)
+                .stream(entityManager)) {
+            assertThat(trades.filter(x -> !entityManager.contains(x)).count()).isEqualTo(3);
+        }
+
+        final java.util.List<Trade> consumed = new ArrayList<>();
+        QueryBuilderFactory.select(Trade.class).fetchSize(1).forEach(entityManager, consumed::add);
+        assertThat(consumed).hasSize(5);
+    }
+
+    @Test
+    void executeUnmanagedMapsRowsWithoutThePersistenceContext() throws InvalidPeriodException {
+        final Trade trade = new Trade().setBitemporalKey(
+                new BitemporalKey.Builder()
+                        .setTradeId(UUID.randomUUID())
+                        .setValidTimeStart(LocalDate.of(2020, 1, 20))
+                        .setValidTimeEnd(LocalDate.of(2020, 1, 21))
+                        .build())
+                .setVolume(200)
+                .setPrice(new BigDecimal("123.45"))
+                .setMarketLimitFlag('M')
+                .setBuySellFlag('B')
+                .setStock("GOOGL");
+        QueryBuilderFactory.insert(Trade.class).from(trade).execute(entityManager);
+
+        final List<Trade> unmanaged = QueryBuilderFactory.select(Trade.class)
+                .where("id", QueryEquality.EQUALS, trade.getBitemporalKey().getId())
+                .executeUnmanaged(entityManager)
+                .getResults();
+        final List<Trade> managed = QueryBuilderFactory.select(Trade.class)
+                .where("id", QueryEquality.EQUALS, trade.getBitemporalKey().getId())
+                .execute(entityManager)
+                .getResults();
+
+        assertThat(unmanaged).hasSize(1);
+        assertThat(entityManager.contains(unmanaged.get(0))).isFalse();
+        assertThat(unmanaged.get(0)).isEqualToComparingFieldByFieldRecursively(managed.get(0));
+        assertThat(unmanaged.get(0).getBitemporalKey()).isEqualTo(trade.getBitemporalKey());
+    }
+
+    @Test
+    void fetchSizeMustBePositive() {
+        assertThat(assertThrows(IllegalArgumentException.class, () -> QueryBuilderFactory.select(Trade.class).fetchSize(0)))
+                .hasMessage("fetchSize must be positive");
+    }
+
+    @Test
+    void executePageWalksAllResultsInKeyOrder() throws InvalidPeriodException {
+        QueryBuilderFactory.insert(Trade.class)
+                .fromAll(List.range(0, 7).map(x -> new Trade().setBitemporalKey(
+                        new BitemporalKey.Builder()
+                                .setTradeId(UUID.fromString("769fb864-f3b7-4ca5-965e-bcff8008819" + (x % 3)))
+                                .setValidTimeStart(LocalDate.of(2020, 1, 20 + x))
+                                .setValidTimeEnd(LocalDate.of(2020, 1, 21 + x))
+                                .build())
+                        .setVolume(200)
+                        .setPrice(new BigDecimal("123.45"))
+                        .setMarketLimitFlag('M')
+                        .setBuySellFlag('B')
+                        .setStock("GOOGL")))
+                .execute(entityManager);
+
+        final Page<Trade> first = QueryBuilderFactory.select(Trade.class).executePage(entityManager, 3);
+        assertThat(first.getResults()).hasSize(3);
+        assertThat(first.hasNext()).isTrue();
+
+        final Page<Trade> second = QueryBuilderFactory.select(Trade.class)
+                .executePage(entityManager, 3, first.getContinuationToken().get());
+        final Page<Trade> third = QueryBuilderFactory.select(Trade.class)
+                .executePage(entityManager, 3, second.getContinuationToken().get());
+        assertThat(third.getResults()).hasSize(1);
+        assertThat(third.hasNext()).isFalse();
+
+        final List<Trade> all = first.getResults().appendAll(second.getResults()).appendAll(third.getResults());
+        assertThat(all.map(x -> x.getBitemporalKey().getId().toString() + x.getBitemporalKey().getValidTimeStart()).toJavaList())
+                .isSorted()
+                .doesNotHaveDuplicates()
+                .hasSize(7);
+    }
+
+    @Test
+    void executePageRejectsInvalidInput() {
+        assertThat(assertThrows(IllegalArgumentException.class, () -> QueryBuilderFactory.select(Trade.class).executePage(entityManager, 0)))
+                .hasMessage("pageSize must be positive");
+        assertThat(assertThrows(IllegalArgumentException.class, () -> QueryBuilderFactory.select(Trade.class).executePage(entityManager, 3, "not a token")))
+                .hasMessage("invalid continuation token");
+    }
+
+    @Test
+    void aggregatesAreAnsweredByTheDatabase() throws InvalidPeriodException {
+        QueryBuilderFactory.insert(Trade.class)
+                .fromAll(List.range(0, 4).map(x -> new Trade().setBitemporalKey(
+                        new BitemporalKey.Builder()
+                                .setTradeId(UUID.randomUUID())
+                                .setValidTimeStart(LocalDate.of(2020, 1, 20 + x))
+                                .setValidTimeEnd(LocalDate.of(2020, 1, 21 + x))
+                                .build())
+                        .setVolume(100 * (x + 1))
+                        .setPrice(new BigDecimal("123.45"))
+                        .setMarketLimitFlag('M')
+                        .setBuySellFlag('B')
+                        .setStock(x % 2 == 0 ? "GOOGL" : "MSFT")))
+                .execute(entityManager);
+
+        assertThat(QueryBuilderFactory.select(Trade.class).count(entityManager)).isEqualTo(4);
+        assertThat(QueryBuilderFactory.select(Trade.class).where("stock", QueryEquality.EQUALS, "MSFT").exists(entityManager)).isTrue();
+        assertThat(QueryBuilderFactory.select(Trade.class).where("stock", QueryEquality.EQUALS, "AMZN").exists(entityManager)).isFalse();
+        assertThat(QueryBuilderFactory.select(Trade.class).sum(entityManager, "volume").map(BigDecimal::intValue)).contains(1000);
+        assertThat(QueryBuilderFactory.select(Trade.class).where("stock", QueryEquality.EQUALS, "AMZN").sum(entityManager, "volume")).isEmpty();
+        assertThat(QueryBuilderFactory.select(Trade.class).min(entityManager, "valid_time_start", LocalDate.class)).contains(LocalDate.of(2020, 1, 20));
+        assertThat(QueryBuilderFactory.select(Trade.class).max(entityManager, "volume", Integer.class)).contains(400);
+
+        final List<Object[]> grouped = QueryBuilderFactory.select(Trade.class)
+                .select("stock", Aggregates.sum("volume"), Aggregates.count())
+                .groupBy("stock")
+                .executeTuples(entityManager)
+                .sortBy(x -> (String) x[0]);
+        assertThat(grouped.map(x -> x[0] + " " + ((Number) x[1]).intValue() + " " + ((Number) x[2]).intValue()))
+                .containsExactly("GOOGL 400 2", "MSFT 600 2");
+    }
+
+    @Test
+    void groupedQueriesCannotBeExecutedAsScalarAggregates() {
+        assertThat(assertThrows(IllegalStateException.class, () -> QueryBuilderFactory.select(Trade.class)
+                .groupBy("stock")
+                .count(entityManager)))
+                .hasMessage("grouped aggregates must be selected and executed with executeTuples or a RowMapper");
+    }
 }
@@ -3,6 +3,7 @@ package kieranbrown.bitemp.database;
 import io.vavr.Tuple2;
 import io.vavr.Tuple3;
 import io.vavr.collection.HashMap;
+import io.vavr.collection.LinkedHashMap;
 import io.vavr.collection.List;
 import io.vavr.collection.Map;
 import kieranbrown.bitemp.models.Trade;
@@ -87,6 +88,26 @@ class SelectQueryTest {
                 "SELECT version, id from reporting.trade_data limit 3");
     }
 
+    @Test
+    void settingOrderByAffectsQuery() {
+        final SelectQuery<Trade> selectQuery = new SelectQuery<>(Trade.class)
+                .setOrderBy(List.of("id", "valid_time_start"))
+                .setLimit(3);
+
+        assertThat(selectQuery.build()).isEqualTo(
+                "SELECT * from reporting.trade_data order by id, valid_time_start limit 3");
+    }
+
+    @Test
+    void settingGroupByAffectsQuery() {
+        final SelectQuery<Trade> selectQuery = new SelectQuery<>(Trade.class)
+                .setFields(LinkedHashMap.of("stock", null, Aggregates.sum("volume"), null))
+                .setGroupBy(List.of("stock"));
+
+        assertThat(selectQuery.build()).isEqualTo("SELECT stock, sum(volume) from reporting.trade_data group by stock");
+        assertThat(selectQuery.getShape()).isNotEqualTo(selectQuery.setGroupBy(List.empty()).getShape());
+    }
+
     @Test
     void notSettingLimitOrSettingNoLimitDoesNotAffectQuery() {
         final Map<String, Object> fields = HashMap.ofEntries(
@@ -131,4 +152,30 @@ class SelectQueryTest {
 
         assertThat(selectQuery.build()).isEqualTo("SELECT * from reporting.trade_data where id = 3 and (version >= 10 OR version <= -10)");
     }
+
+    @Test
+    void buildParameterisedUsesPlaceholdersForFilterValues() {
+        final SelectQuery<Trade> selectQuery = new SelectQuery<>(Trade.class);
+        selectQuery.setFilters(List.of(
+                new SingleQueryFilter(new Tuple3<>("id", QueryEquality.EQUALS, 3)),
+                new OrQueryFilter(
+                        new Tuple3<>("version", QueryEquality.GREATER_THAN_EQUAL_TO, 10),
+                        new Tuple3<>("version", QueryEquality.LESS_THAN_EQUAL_TO, -10)
+                )
+        ));
+
+        assertThat(selectQuery.buildParameterised()).isEqualTo("SELECT * from reporting.trade_data where id = ? and (version >= ? OR version <= ?)");
+        assertThat(selectQuery.getParameters()).containsExactly(3, 10, -10);
+    }
+
+    @Test
+    void getShapeIsEqualForQueriesThatOnlyDifferInValues() {
+        final SelectQuery<Trade> first = new SelectQuery<>(Trade.class)
+                .setFilters(List.of(new SingleQueryFilter("id", QueryEquality.EQUALS, 3)));
+        final SelectQuery<Trade> second = new SelectQuery<>(Trade.class)
+                .setFilters(List.of(new SingleQueryFilter("id", QueryEquality.EQUALS, 4)));
+
+        assertThat(first.getShape()).isEqualTo(second.getShape());
+        assertThat(first.setLimit(3).getShape()).isNotEqualTo(second.getShape());
+    }
 }
@@ -40,4 +40,21 @@ class SingleQueryFilterTest {
     void getFilterEscapesValues() {
         assertThat(new SingleQueryFilter(new Tuple3<>("id", QueryEquality.EQUALS, LocalDate.of(2020, 10, 3))).getFilters()).isEqualTo("id = '2020-10-03'");
     }
+
+    @Test
+    void getParameterisedFiltersReplacesValueWithPlaceholder() {
+        final SingleQueryFilter filter = new SingleQueryFilter("valid_time_start", QueryEquality.GREATER_THAN, LocalDate.of(2020, 10, 3));
+        assertThat(filter.getParameterisedFilters()).isEqualTo("valid_time_start > ?");
+        assertThat(filter.getParameters()).containsExactly(LocalDate.of(2020, 10, 3));
+    }
+
+    @Test
+    void getShapeIgnoresValues() {
+        assertThat(new SingleQueryFilter("id", QueryEquality.EQUALS, 3).getShape())
+                .isEqualTo(new SingleQueryFilter("id", QueryEquality.EQUALS, 4).getShape());
+
+        assertThat(new SingleQueryFilter("id", QueryEquality.EQUALS, 3).getShape())
+                .isNotEqualTo(new SingleQueryFilter("id", QueryEquality.GREATER_THAN, 3).getShape())
+                .isNotEqualTo(new SingleQueryFilter("version", QueryEquality.EQUALS, 3).getShape());
+    }
 }
@@ -0,0 +1,107 @@
+package kieranbrown.bitemp.database;
+
+import io.vavr.collection.List;
+import kieranbrown.bitemp.models.BitemporalKey;
+import kieranbrown.bitemp.models.EntityMetamodel;
+import kieranbrown.bitemp.models.Trade;
+import kieranbrown.bitemp.utils.Constants;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static kieranbrown.bitemp.database.QueryEquality.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TradeColumnStoreTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2020, 1, 10, 9, 0);
+    private static final String[] STOCKS = {"AAPL", "GOOGL", "MSFT", "TSLA"};
+
+    private final TradeColumnStore store = new TradeColumnStore(Clock.fixed(NOW.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+
+    @Test
+    void rowsReadBackAsTheyWereAdded() {
+        final Trade trade = newTrade(new Random(1)).setSystemTimeEnd(Constants.MARIADB_END_SYSTEM_TIME);
+        store.add(trade);
+
+        final Trade row = store.get(0);
+        assertThat(row.getBitemporalKey()).isEqualTo(trade.getBitemporalKey());
+        assertThat(row.getStock()).isEqualTo(trade.getStock());
+        assertThat(row.getPrice()).isEqualByComparingTo(trade.getPrice());
+        assertThat(row.getVolume()).isEqualTo(trade.getVolume());
+        assertThat(row.getBuySellFlag()).isEqualTo(trade.getBuySellFlag());
+        assertThat(row.getMarketLimitFlag()).isEqualTo(trade.getMarketLimitFlag());
+        assertThat(row.getSystemTimeStart()).isEqualTo(trade.getSystemTimeStart());
+        assertThat(row.getSystemTimeEnd()).isEqualTo(Constants.MARIADB_END_SYSTEM_TIME);
+        assertThrows(IndexOutOfBoundsException.class, () -> store.get(1));
+    }
+
+    @Test
+    void pricesMustFitTheColumnScale() {
+        assertThat(assertThrows(IllegalArgumentException.class, () -> store.add(newTrade(new Random(1)).setPrice(new BigDecimal("1.005")))))
+                .hasMessage("price 1.005 cannot be held to 2 decimal places");
+        assertThat(store.size()).isEqualTo(0);
+    }
+
+    @Test
+    void scansAgreeWithTheEvaluator() {
+        final Random random = new Random(42);
+        final java.util.List<Trade> trades = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            trades.add(newTrade(random));
+        }
+        store.addAll(trades);
+
+        final Trade sample = trades.get(17);
+        final List<List<QueryFilter>> queries = List.of(
+                List.of(new SingleQueryFilter("id", EQUALS, sample.getBitemporalKey().getId())),
+                List.of(new SingleQueryFilter("id", LESS_THAN, sample.getBitemporalKey().getId().toString())),
+                List.of(new SingleQueryFilter("stock", GREATER_THAN_EQUAL_TO, "GOOGL"), new SingleQueryFilter("volume", LESS_THAN, 500)),
+                List.of(new SingleQueryFilter("price", GREATER_THAN, 50.005), new SingleQueryFilter("price", LESS_THAN_EQUAL_TO, 60)),
+                List.of(new SingleQueryFilter("price", EQUALS, sample.getPrice()), new SingleQueryFilter("price", DOES_NOT_EQUAL, 1.001)),
+                List.of(new SingleQueryFilter("buy_sell_flag", EQUALS, "B"), new SingleQueryFilter("market_limit_flag", DOES_NOT_EQUAL, 'M')),
+                List.of(SelectQueryBuilder.validTimeOverlaps.apply(LocalDate.of(2020, 3, 1), LocalDate.of(2020, 4, 1))),
+                List.of(new SingleQueryFilter("system_time_start", LESS_THAN_EQUAL_TO, "CURRENT_TIMESTAMP"),
+                        new SingleQueryFilter("system_time_end", GREATER_THAN, "CURRENT_TIMESTAMP")),
+                List.of(new SingleQueryFilter("system_time_start", GREATER_THAN, sample.getSystemTimeStart().plusNanos(1)),
+                        new SingleQueryFilter("system_time_end", LESS_THAN_EQUAL_TO, LocalDateTime.of(2100, 1, 1, 0, 0))),
+                List.of(new OrQueryFilter(new SingleQueryFilter("stock", EQUALS, "TSLA"), new SingleQueryFilter("volume", EQUALS, 3)),
+                        new SingleQueryFilter("buy_sell_flag", EQUALS, "BS")));
+
+        final EntityMetamodel<Trade> metamodel = EntityMetamodel.forClass(Trade.class);
+        for (final List<QueryFilter> filters : queries) {
+            final int[] expected = IntStream.range(0, trades.size())
+                    .filter(i -> QueryFilterEvaluator.matches(metamodel, filters, trades.get(i), NOW))
+                    .toArray();
+
+            assertThat(store.scan(filters)).as(filters.toString()).containsExactly(expected);
+        }
+        assertThat(store.count(List.empty())).isEqualTo(trades.size());
+        assertThat(store.select(queries.head()).map(Trade::getBitemporalKey)).containsExactly(sample.getBitemporalKey());
+    }
+
+    private static Trade newTrade(final Random random) {
+        final LocalDate validTimeStart = LocalDate.of(2020, 1, 1).plusDays(random.nextInt(365));
+        final LocalDateTime systemTimeStart = NOW.minusDays(10).plusSeconds(random.nextInt(20 * 86_400)).plusNanos(random.nextInt(1_000_000) * 1_000L);
+        return new Trade().setBitemporalKey(new BitemporalKey.Builder()
+                .setTradeId(new UUID(random.nextLong(), random.nextLong()))
+                .setValidTimeStart(validTimeStart)
+                .setValidTimeEnd(validTimeStart.plusDays(1 + random.nextInt(60)))
+                .build())
+                .setStock(STOCKS[random.nextInt(STOCKS.length)])
+                .setPrice(BigDecimal.valueOf(random.nextInt(10_000), 2))
+                .setVolume(random.nextInt(1000))
+                .setBuySellFlag(random.nextBoolean() ? 'B' : 'S')
+                .setMarketLimitFlag(random.nextBoolean() ? 'M' : 'L')
+                .setSystemTimeStart(systemTimeStart)
+                .setSystemTimeEnd(random.nextInt(3) == 0 ? systemTimeStart.plusHours(1 + random.nextInt(100)) : Constants.MARIADB_END_SYSTEM_TIME);
+    }
+}
@@ -223,4 +223,46 @@ class UpdateQueryBuilderTest {
                 .hasFieldOrPropertyWithValue("validTimeStart", LocalDate.of(2020, 1, 10))
                 .hasFieldOrPropertyWithValue("validTimeEnd", LocalDate.of(2020, 1, 16));
     }
+
+    @Test
+    void updateForValidTimePeriodSplitsOnlyAtBoundsInsideRows() throws OverlappingKeyException, InvalidPeriodException {
+        final UUID tradeId = UUID.randomUUID();
+        new InsertQueryBuilder<>(Trade.class).fromAll(List.of(
+                LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 15), LocalDate.of(2020, 1, 17))
+                .zip(List.of(LocalDate.of(2020, 1, 15), LocalDate.of(2020, 1, 17), LocalDate.of(2020, 1, 25)))
+                .map(x -> new Trade().setBitemporalKey(
+                        new BitemporalKey.Builder()
+                                .setTradeId(tradeId)
+                                .setValidTimeStart(x._1)
+                                .setValidTimeEnd(x._2)
+                                .build())
+                        .setStock("AAPL")
+                        .setBuySellFlag('B')
+                        .setMarketLimitFlag('M')
+                        .setPrice(new BigDecimal("123.45"))
+                        .setVolume(200))
+        ).execute(entityManager);
+
+        new UpdateQueryBuilder<>(Trade.class)
+                .forValidTimePeriod(LocalDate.of(2020, 1, 12), LocalDate.of(2020, 1, 20))
+                .set("stock", "MSFT")
+                .set("volume", 300)
+                .where(new SingleQueryFilter("id", QueryEquality.EQUALS, tradeId))
+                .execute(entityManager);
+
+        final List<Trade> trades = new SelectQueryBuilder<>(Trade.class)
+                .where(new SingleQueryFilter("id", QueryEquality.EQUALS, tradeId))
+                .execute(entityManager)
+                .getResults()
+                .sortBy(x -> x.getBitemporalKey().getValidTimeStart());
+
+        assertThat(trades.map(x -> x.getBitemporalKey().getValidTimeStart())).containsExactly(
+                LocalDate.of(2020, 1, 10), LocalDate.of(2020, 1, 12), LocalDate.of(2020, 1, 15),
+                LocalDate.of(2020, 1, 17), LocalDate.of(2020, 1, 20));
+        assertThat(trades.map(x -> x.getBitemporalKey().getValidTimeEnd())).containsExactly(
+                LocalDate.of(2020, 1, 12), LocalDate.of(2020, 1, 15), LocalDate.of(2020, 1, 17),
+                LocalDate.of(2020, 1, 20), LocalDate.of(2020, 1, 25));
+        assertThat(trades.map(Trade::getStock)).containsExactly("AAPL", "MSFT", "MSFT", "MSFT", "AAPL");
+        assertThat(trades.map(Trade::getVolume)).containsExactly(200, 300, 300, 300, 200);
+    }
 }
@@ -41,4 +41,14 @@ class UpdateQueryTest {
                         "SET valid_time_end = '2020-01-21', system_time_end = '2020-01-20 00:00:01.000000' " +
                         "WHERE id = 5 AND system_time_end = '9999-12-31 00:00:00.000000'");
     }
+
+    @Test
+    void buildParameterisedReturnsPlaceholdersForFieldsThenFilters() {
+        final UpdateQuery<Trade> query = new UpdateQuery<>(Trade.class);
+        query.addFields(List.of(new Tuple2<>("valid_time_end", LocalDate.of(2020, 1, 21))));
+        query.addFilters(List.of(new SingleQueryFilter("id", QueryEquality.EQUALS, 5)));
+
+        assertThat(query.buildParameterised()).isEqualTo("UPDATE reporting.trade_data SET valid_time_end = ? WHERE id = ?");
+        assertThat(query.getParameters()).containsExactly(LocalDate.of(2020, 1, 21), 5);
+    }
 }
@@ -0,0 +1,131 @@
+package kieranbrown.bitemp.evaluation;
+
+import io.vavr.collection.List;
+import kieranbrown.bitemp.database.EntityRowMapper;
+import kieranbrown.bitemp.database.InMemoryStore;
+import kieranbrown.bitemp.database.QueryBuilderFactory;
+import kieranbrown.bitemp.models.BitemporalKey;
+import kieranbrown.bitemp.models.Trade;
+import kieranbrown.bitemp.utils.Constants;
+import kieranbrown.bitemp.utils.QueryUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * A bitemporal query (as of a point in system time, overlapping a month of valid time) over 20,000 trades with five
+ * versions of history each, answered by an InMemoryStore through its HilbertRTree and by the SQL the query builders
+ * render, run against an in-memory H2 table with the open rows index. Run the main method to print the JMH results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitemporalIndexBenchmark {
+    private static final int TRADES = 20_000;
+    private static final int VERSIONS = 5;
+    private static final LocalDateTime SYSTEM_TIME = LocalDateTime.of(2020, 1, 1, 0, 0);
+    private static final LocalDate VALID_TIME = LocalDate.of(2020, 1, 1);
+    private static final LocalDateTime AS_OF = SYSTEM_TIME.plusDays(2).plusHours(12);
+    private static final LocalDate OVERLAPS_START = VALID_TIME.plusDays(300);
+    private static final LocalDate OVERLAPS_END = OVERLAPS_START.plusDays(30);
+    //what the query builders render for systemTimeAsOf(AS_OF).validTimeOverlaps(OVERLAPS_START, OVERLAPS_END)
+    private static final String SQL = "SELECT * from reporting.trade_data where (system_time_start <= ? and system_time_end > ?) " +
+            "and (valid_time_start < ? and valid_time_end > ?)";
+    private static final List<Object> PARAMETERS = List.of(AS_OF, AS_OF, OVERLAPS_END, OVERLAPS_START);
+
+    private InMemoryStore<Trade> store;
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup
+    public void setup() {
+        final java.util.List<Trade> trades = createTrades();
+        store = new InMemoryStore<>(Trade.class).load(trades);
+
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:bitemporal_index;DB_CLOSE_DELAY=-1", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create schema if not exists reporting");
+        jdbcTemplate.execute("create table reporting.trade_data (id UUID not null, stock varchar(5) not null, " +
+                "price decimal(5,2) not null, volume int not null, valid_time_start date not null, " +
+                "valid_time_end date not null, system_time_start timestamp(6), system_time_end timestamp(6), " +
+                "buy_sell_flag char(1) not null, market_limit_flag char(1) not null)");
+        jdbcTemplate.execute("create index trade_data_open_rows on reporting.trade_data (system_time_end, id, valid_time_start)");
+        jdbcTemplate.batchUpdate("insert into reporting.trade_data (id, stock, price, volume, valid_time_start, " +
+                "valid_time_end, system_time_start, system_time_end, buy_sell_flag, market_limit_flag) " +
+                "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", trades, 1000, (statement, trade) -> QueryUtils.bindAll(statement, List.of(
+                trade.getBitemporalKey().getId(), trade.getStock(), trade.getPrice(), trade.getVolume(),
+                trade.getBitemporalKey().getValidTimeStart(), trade.getBitemporalKey().getValidTimeEnd(),
+                trade.getSystemTimeStart(), trade.getSystemTimeEnd(), trade.getBuySellFlag(), trade.getMarketLimitFlag())));
+    }
+
+    @TearDown
+    public void tearDown() {
+        jdbcTemplate.execute("drop schema reporting cascade");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public List<Trade> hilbertRTree() {
+        return QueryBuilderFactory.select(Trade.class)
+                .systemTimeAsOf(AS_OF)
+                .validTimeOverlaps(OVERLAPS_START, OVERLAPS_END)
+                .execute(store)
+                .getResults();
+    }
+
+    @Benchmark
+    public java.util.List<Trade> sql() {
+        return jdbcTemplate.query(SQL, statement -> QueryUtils.bindAll(statement, PARAMETERS), new EntityRowMapper<>(Trade.class));
+    }
+
+    /*
+     * Each trade is valid for one to three months somewhere in a two year span, and is corrected once a day, each
+     * version closing as the next one opens
+     */
+    private static java.util.List<Trade> createTrades() {
+        final Random random = new Random(42);
+        final java.util.List<Trade> trades = new ArrayList<>(TRADES * VERSIONS);
+        for (int i = 0; i < TRADES; i++) {
+            final UUID id = UUID.randomUUID();
+            final LocalDate start = VALID_TIME.plusDays(random.nextInt(730));
+            final LocalDate end = start.plusDays(30 + random.nextInt(60));
+            final LocalDateTime created = SYSTEM_TIME.plusSeconds(random.nextInt(86_400));
+            for (int j = 0; j < VERSIONS; j++) {
+                trades.add(new Trade().setBitemporalKey(new BitemporalKey.Builder()
+                        .setTradeId(id)
+                        .setValidTimeStart(start)
+                        .setValidTimeEnd(end)
+                        .build())
+                        .setStock("AAPL")
+                        .setBuySellFlag('B')
+                        .setMarketLimitFlag('M')
+                        .setPrice(new BigDecimal("123.45"))
+                        .setVolume(j)
+                        .setSystemTimeStart(created.plusDays(j))
+                        .setSystemTimeEnd(j == VERSIONS - 1 ? Constants.MARIADB_END_SYSTEM_TIME : created.plusDays(j + 1)));
+            }
+        }
+        return trades;
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BitemporalIndexBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
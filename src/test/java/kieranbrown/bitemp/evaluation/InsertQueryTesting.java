@@ -6,11 +6,13 @@ import com.opencsv.bean.CsvToBean;
 import com.opencsv.bean.CsvToBeanBuilder;
 import io.vavr.collection.List;
 import jdk.nashorn.internal.ir.debug.ObjectSizeCalculator;
+import kieranbrown.bitemp.database.CsvIngestPipeline;
 import kieranbrown.bitemp.database.InsertQueryBuilder;
 import kieranbrown.bitemp.database.InvalidPeriodException;
 import kieranbrown.bitemp.database.QueryBuilderFactory;
 import kieranbrown.bitemp.models.BitemporalKey;
 import kieranbrown.bitemp.models.Trade;
+import kieranbrown.bitemp.models.TradeCsvDecoder;
 import org.flywaydb.core.Flyway;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
@@ -49,6 +51,7 @@ import java.util.function.Consumer;
 @ActiveProfiles("evaluationTesting")
 @Transactional
 class InsertQueryTesting {
+    private static final int BATCH_SIZE = 1000;
 
     //    private final List<Integer> thresholds = List.of(100, 1000, 10000, 100000, 1000000);
     private final List<Integer> thresholds = List.of(1);
@@ -120,6 +123,21 @@ class InsertQueryTesting {
         insertQuery(this::persistImplementation);
     }
 
+    @Test
+    void implementationBatchedInsertQuery() throws IOException {
+        insertQuery(this::persistImplementationBatched);
+    }
+
+    //reads, decodes and writes the whole file in parallel, committing each batch
+    @Test
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    void implementationPipelineInsertQuery() throws IOException, InvalidPeriodException {
+        final CsvIngestPipeline.Result result = new CsvIngestPipeline<>(Trade.class, new TradeCsvDecoder('|', '\''))
+                .batchSize(BATCH_SIZE)
+                .run(entityManager, new FileReader("D:\\git\\diss-server\\InsertData.csv"));
+        System.out.println(result);
+    }
+
     @Test
     void mariadbInsertQuery() throws IOException {
         insertQuery(this::persistMariadb);
@@ -181,6 +199,25 @@ class InsertQueryTesting {
         }
     }
 
+    //rows are queued on the builder and written as one JDBC batch every BATCH_SIZE rows
+    private void persistImplementationBatched(final Trade trade) {
+        if (objectCount >= thresholds.last()) {
+            return;
+        }
+        queryBuilder.from(trade);
+        ++objectCount;
+        if (objectCount % BATCH_SIZE == 0 || thresholds.contains(objectCount)) {
+            try {
+                queryBuilder.batchSize(BATCH_SIZE).execute(entityManager);
+            } catch (final InvalidPeriodException e) {
+                throw new RuntimeException("error", e);
+            }
+        }
+        if (thresholds.contains(objectCount)) {
+            results.add(String.format("%,17d | %,25d | %,23d", objectCount, System.currentTimeMillis() - systemTimeStart, (runtime.totalMemory() - runtime.freeMemory()) - initialMemory));
+        }
+    }
+
     @Configuration
     @Profile("evaluationTesting")
     static class DataSourceConfig {
@@ -193,7 +230,7 @@ class InsertQueryTesting {
         @Bean
         public DataSource dataSource() {
             System.out.println("creating right datasource");
-            return DataSourceBuilder.create().driverClassName("com.mysql.cj.jdbc.Driver").url("jdbc:mysql://localhost:3306").username("root").password("password").build();
+            return DataSourceBuilder.create().driverClassName("com.mysql.cj.jdbc.Driver").url("jdbc:mysql://localhost:3306?useServerPrepStmts=true&cachePrepStmts=true&prepStmtCacheSize=250&prepStmtCacheSqlLimit=2048").username("root").password("password").build();
         }
 
         @Bean
@@ -0,0 +1,73 @@
+package kieranbrown.bitemp.evaluation;
+
+import com.rits.cloning.Cloner;
+import io.vavr.collection.List;
+import kieranbrown.bitemp.models.BitemporalKey;
+import kieranbrown.bitemp.models.ModelCopier;
+import kieranbrown.bitemp.models.Trade;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Copies 100,000 trades the way the delete builder used to (a new Cloner deep cloning each row) against ModelCopier.
+ * Run the main method to print the JMH results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelCopierBenchmark {
+    private static final int ROWS = 100_000;
+
+    private Trade[] trades;
+
+    @Setup
+    public void setup() {
+        trades = List.range(0, ROWS).map(x -> new Trade().setBitemporalKey(
+                new BitemporalKey.Builder()
+                        .setTradeId(UUID.randomUUID())
+                        .setValidTimeStart(LocalDate.of(2020, 1, 1).plusDays(x % 365))
+                        .setValidTimeEnd(LocalDate.of(2021, 1, 1))
+                        .build())
+                .setStock("AAPL")
+                .setBuySellFlag('B')
+                .setMarketLimitFlag('M')
+                .setPrice(new BigDecimal("123.45"))
+                .setVolume(x)
+                .setSystemTimeStart(LocalDateTime.of(2020, 1, 10, 10, 0, 0)))
+                .toJavaArray(Trade[]::new);
+    }
+
+    @Benchmark
+    public void cloner(final Blackhole blackhole) {
+        for (final Trade trade : trades) {
+            blackhole.consume(new Cloner().deepClone(trade));
+        }
+    }
+
+    @Benchmark
+    public void modelCopier(final Blackhole blackhole) {
+        final ModelCopier<Trade> copier = ModelCopier.forClass(Trade.class);
+        for (final Trade trade : trades) {
+            blackhole.consume(copier.copy(trade));
+        }
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ModelCopierBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
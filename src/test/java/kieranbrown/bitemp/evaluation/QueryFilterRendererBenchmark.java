@@ -0,0 +1,66 @@
+package kieranbrown.bitemp.evaluation;
+
+import io.vavr.collection.List;
+import kieranbrown.bitemp.database.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Compares QueryFilter.getFilters against QueryFilterRenderer on an OR over 2000 ids, shaped like the filters the
+ * update and delete builders produce, for 10,001 nodes in total. Run the main method to print the JMH results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryFilterRendererBenchmark {
+    private static final int GROUPS = 2000;
+
+    private QueryFilter filter;
+    private QueryFilterRenderer renderer;
+
+    @Setup
+    public void setup() {
+        filter = new OrQueryFilter(List.range(0, GROUPS).map(x -> (QueryFilter) new AndQueryFilter(
+                new SingleQueryFilter("id", QueryEquality.EQUALS, UUID.randomUUID()),
+                new SingleQueryFilter("system_time_start", QueryEquality.EQUALS, "CURRENT_TIMESTAMP"),
+                new NotQueryFilter(new SingleQueryFilter("valid_time_start", QueryEquality.GREATER_THAN_EQUAL_TO, LocalDate.of(2020, 1, 1).plusDays(x)))
+        )));
+        renderer = QueryFilterRenderer.literal();
+    }
+
+    @Benchmark
+    public String getFilters() {
+        return filter.getFilters();
+    }
+
+    @Benchmark
+    public String renderer() {
+        return renderer.reset().render(filter).toString();
+    }
+
+    @Benchmark
+    public String getParameterisedFilters() {
+        return filter.getParameterisedFilters();
+    }
+
+    @Benchmark
+    public String parameterisedRenderer() {
+        return QueryFilterRenderer.parameterised().render(filter).toString();
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(QueryFilterRendererBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -391,6 +391,31 @@ class SelectQueryTesting {
                 .toJavaList(), false);
     }
 
+    @Test
+    @DisplayName("all records with system time between X and Y, with valid time overlapping A and B, unmanaged")
+    void implementationSelectQueryFourUnmanaged() throws InterruptedException {
+        testQuery(() -> QueryBuilderFactory.select(Trade.class)
+                .systemTimeBetween(LocalDateTime.of(2020, 5, 3, 3, 0, 0, 0), LocalDateTime.of(2020, 5, 3, 5, 0, 0, 0))
+                .validTimeOverlaps(LocalDate.of(2020, 5, 3), LocalDate.of(2020, 5, 5))
+                .executeUnmanaged(entityManager)
+                .getResults()
+                .toJavaList(), false);
+    }
+
+    @Test
+    @DisplayName("all records with system time between X and Y, with valid time overlapping A and B, streamed")
+    void implementationSelectQueryFourStreamed() throws InterruptedException {
+        testStreamedQuery(() -> {
+            final long[] count = {0};
+            QueryBuilderFactory.select(Trade.class)
+                    .systemTimeBetween(LocalDateTime.of(2020, 5, 3, 3, 0, 0, 0), LocalDateTime.of(2020, 5, 3, 5, 0, 0, 0))
+                    .validTimeOverlaps(LocalDate.of(2020, 5, 3), LocalDate.of(2020, 5, 5))
+                    .fetchSize(1000)
+                    .forEach(entityManager, x -> count[0]++);
+            return count[0];
+        });
+    }
+
     @Test
     @DisplayName("total revenue of sales for stock A for valid time now, as of system time yesterday")
     void implementedSelectQueryOne() throws InterruptedException {
@@ -506,6 +531,25 @@ class SelectQueryTesting {
         results.forEach(System.out::println);
     }
 
+    private void testStreamedQuery(final Supplier<Long> query) throws InterruptedException {
+        for (int x : thresholds) {
+            createRows3(x, false);
+            System.gc();
+            System.out.println("starting run of size " + x);
+            Thread.sleep(5000);
+            systemTimeStart = System.currentTimeMillis();
+            initialMemory = runtime.totalMemory() - runtime.freeMemory();
+            final long count = query.get();
+            System.out.println("entries in table:" + JdbcTestUtils.countRowsInTable(new JdbcTemplate(dataSource), "reporting.trade_data"));
+            System.out.println("number of results:" + count);
+            results.add(String.format("%,17d | %,25d | %,23d", x, System.currentTimeMillis() - systemTimeStart, (runtime.totalMemory() - runtime.freeMemory()) - initialMemory));
+            entityManager.createNativeQuery("delete from reporting.trade_data").executeUpdate();
+        }
+
+        System.out.println("Number of Objects | Runtime (in milliseconds) | Memory Usage (in bytes)");
+        results.forEach(System.out::println);
+    }
+
     private void testQueryBitemporal(final Supplier<java.util.List<Trade>> query, final boolean mariadb) throws
             InterruptedException {
         for (int x : thresholds) {
@@ -540,7 +584,7 @@ class SelectQueryTesting {
             System.out.println("***************************");
             System.out.println("DATA SOURCE CREATION HERE");
             System.out.println("***************************");
-            return DataSourceBuilder.create().driverClassName("com.mysql.cj.jdbc.Driver").url("jdbc:mysql://localhost:3306").username("root").password("password").build();
+            return DataSourceBuilder.create().driverClassName("com.mysql.cj.jdbc.Driver").url("jdbc:mysql://localhost:3306?useServerPrepStmts=true&cachePrepStmts=true&prepStmtCacheSize=250&prepStmtCacheSqlLimit=2048&useCursorFetch=true").username("root").password("password").build();
         }
 
         @Bean
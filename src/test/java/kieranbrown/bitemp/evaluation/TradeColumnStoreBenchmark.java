@@ -0,0 +1,89 @@
+package kieranbrown.bitemp.evaluation;
+
+import io.vavr.collection.List;
+import kieranbrown.bitemp.database.InMemoryStore;
+import kieranbrown.bitemp.database.QueryBuilderFactory;
+import kieranbrown.bitemp.database.QueryFilter;
+import kieranbrown.bitemp.database.SingleQueryFilter;
+import kieranbrown.bitemp.database.TradeColumnStore;
+import kieranbrown.bitemp.models.BitemporalKey;
+import kieranbrown.bitemp.models.Trade;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static kieranbrown.bitemp.database.QueryEquality.*;
+
+/*
+ * A full scan of 500,000 trades for a narrow price band of one stock, by the TradeColumnStore's column scans and by an
+ * InMemoryStore evaluating the filters on each Trade. Run the main method to print the JMH results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TradeColumnStoreBenchmark {
+    private static final int ROWS = 500_000;
+    private static final String[] STOCKS = {"AAPL", "GOOGL", "MSFT", "TSLA", "AMZN"};
+    private static final List<QueryFilter> FILTERS = List.of(
+            new SingleQueryFilter("stock", EQUALS, "MSFT"),
+            new SingleQueryFilter("price", GREATER_THAN_EQUAL_TO, new BigDecimal("100.00")),
+            new SingleQueryFilter("price", LESS_THAN, new BigDecimal("101.00")),
+            new SingleQueryFilter("buy_sell_flag", EQUALS, "B"));
+
+    private TradeColumnStore columnStore;
+    private InMemoryStore<Trade> objectStore;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(42);
+        final java.util.List<Trade> trades = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            final LocalDate start = LocalDate.of(2020, 1, 1).plusDays(random.nextInt(365));
+            trades.add(new Trade().setBitemporalKey(new BitemporalKey.Builder()
+                    .setTradeId(UUID.randomUUID())
+                    .setValidTimeStart(start)
+                    .setValidTimeEnd(start.plusDays(30))
+                    .build())
+                    .setStock(STOCKS[random.nextInt(STOCKS.length)])
+                    .setBuySellFlag(random.nextBoolean() ? 'B' : 'S')
+                    .setMarketLimitFlag('M')
+                    .setPrice(BigDecimal.valueOf(random.nextInt(100_000), 2))
+                    .setVolume(random.nextInt(1000))
+                    .setSystemTimeStart(LocalDateTime.of(2020, 1, 10, 10, 0, 0)));
+        }
+        columnStore = new TradeColumnStore().addAll(trades);
+        objectStore = new InMemoryStore<>(Trade.class).load(trades);
+    }
+
+    @Benchmark
+    public int[] columnScan() {
+        return columnStore.scan(FILTERS);
+    }
+
+    @Benchmark
+    public List<Trade> objectScan() {
+        return QueryBuilderFactory.select(Trade.class)
+                .where(FILTERS)
+                .execute(objectStore)
+                .getResults();
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TradeColumnStoreBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -203,7 +203,7 @@ class UpdateQueryTesting {
             System.out.println("***************************");
             System.out.println("DATA SOURCE CREATION HERE");
             System.out.println("***************************");
-            return DataSourceBuilder.create().driverClassName("com.mysql.cj.jdbc.Driver").url("jdbc:mysql://localhost:3306").username("root").password("password").build();
+            return DataSourceBuilder.create().driverClassName("com.mysql.cj.jdbc.Driver").url("jdbc:mysql://localhost:3306?useServerPrepStmts=true&cachePrepStmts=true&prepStmtCacheSize=250&prepStmtCacheSqlLimit=2048").username("root").password("password").build();
         }
 
         @Bean
@@ -0,0 +1,76 @@
+package kieranbrown.bitemp.models;
+
+import kieranbrown.bitemp.utils.ValueCodecs;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EntityMetamodelTest {
+
+    @Test
+    void forClassThrowsForNullInput() {
+        assertThat(assertThrows(NullPointerException.class, () -> EntityMetamodel.forClass(null)))
+                .hasMessage("class cannot be null");
+    }
+
+    @Test
+    void forClassReturnsTheSameMetamodelForAClass() {
+        assertThat(EntityMetamodel.forClass(Trade.class)).isSameAs(EntityMetamodel.forClass(Trade.class));
+    }
+
+    @Test
+    void readsTableAndOrderedColumns() {
+        final EntityMetamodel<Trade> metamodel = EntityMetamodel.forClass(Trade.class);
+
+        assertThat(metamodel.getTableName()).isEqualTo("reporting.trade_data");
+        assertThat(metamodel.getColumnNames()).containsExactly("stock", "price", "volume", "buy_sell_flag",
+                "market_limit_flag", "id", "valid_time_start", "valid_time_end", "system_time_start", "system_time_end");
+        assertThat(metamodel.getDataColumnNames()).containsExactly("stock", "price", "volume", "buy_sell_flag",
+                "market_limit_flag");
+    }
+
+    @Test
+    void columnsHaveCodecsForTheirTypes() {
+        final EntityMetamodel<Trade> metamodel = EntityMetamodel.forClass(Trade.class);
+
+        assertThat(metamodel.getColumn("price").get().getCodec()).isSameAs(ValueCodecs.forClass(BigDecimal.class));
+        assertThat(metamodel.getColumn("buy_sell_flag").get().getCodec()).isSameAs(ValueCodecs.forClass(Character.class));
+        assertThat(metamodel.getColumn("valid_time_start").get().getCodec()).isSameAs(ValueCodecs.forClass(LocalDate.class));
+        assertThat(metamodel.getColumn("missing")).isEmpty();
+    }
+
+    @Test
+    void getsAndSetsColumnValues() {
+        final EntityMetamodel<Trade> metamodel = EntityMetamodel.forClass(Trade.class);
+        final UUID id = UUID.randomUUID();
+        final Trade trade = new Trade();
+
+        metamodel.getColumn("id").get().set(trade, id);
+        metamodel.getColumn("valid_time_start").get().set(trade, LocalDate.of(2020, 1, 14));
+        metamodel.getColumn("volume").get().set(trade, 200);
+        metamodel.getColumn("system_time_start").get().set(trade, LocalDateTime.of(2020, 1, 10, 10, 0, 0));
+
+        assertThat(trade.getBitemporalKey().getId()).isEqualTo(id);
+        assertThat(trade.getBitemporalKey().getValidTimeStart()).isEqualTo(LocalDate.of(2020, 1, 14));
+        assertThat(trade.getVolume()).isEqualTo(200);
+        assertThat(metamodel.getColumn("id").get().get(trade)).isEqualTo(id);
+        assertThat(metamodel.getColumn("system_time_start").get().get(trade)).isEqualTo(LocalDateTime.of(2020, 1, 10, 10, 0, 0));
+    }
+
+    @Test
+    void getsPrimitiveColumnsWithoutBoxing() {
+        final EntityMetamodel<Trade> metamodel = EntityMetamodel.forClass(Trade.class);
+        final Trade trade = new Trade().setVolume(200).setBuySellFlag('B');
+
+        assertThat(metamodel.getColumn("volume").get().getInt(trade)).isEqualTo(200);
+        assertThat(metamodel.getColumn("buy_sell_flag").get().getChar(trade)).isEqualTo('B');
+        assertThat(assertThrows(IllegalStateException.class, () -> metamodel.getColumn("volume").get().getLong(trade)))
+                .hasMessage("error retrieving long value for column volume");
+    }
+}
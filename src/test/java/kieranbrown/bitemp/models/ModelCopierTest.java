@@ -0,0 +1,72 @@
+package kieranbrown.bitemp.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ModelCopierTest {
+
+    @Test
+    void forClassThrowsForNullInput() {
+        assertThat(assertThrows(NullPointerException.class, () -> ModelCopier.forClass(null)))
+                .hasMessage("class cannot be null");
+    }
+
+    @Test
+    void forClassReturnsTheSameCopierForAClass() {
+        assertThat(ModelCopier.forClass(Trade.class)).isSameAs(ModelCopier.forClass(Trade.class));
+    }
+
+    @Test
+    void copyThrowsForNullInput() {
+        assertThat(assertThrows(NullPointerException.class, () -> ModelCopier.forClass(Trade.class).copy(null)))
+                .hasMessage("source cannot be null");
+    }
+
+    @Test
+    void copyCopiesDeclaredAndInheritedFields() {
+        final Trade trade = new Trade().setBitemporalKey(
+                new BitemporalKey.Builder()
+                        .setTradeId(UUID.randomUUID())
+                        .setValidTimeStart(LocalDate.of(2020, 1, 14))
+                        .setValidTimeEnd(LocalDate.of(2020, 1, 16))
+                        .build())
+                .setStock("AAPL")
+                .setBuySellFlag('B')
+                .setMarketLimitFlag('M')
+                .setPrice(new BigDecimal("123.45"))
+                .setVolume(200)
+                .setSystemTimeStart(LocalDateTime.of(2020, 1, 10, 10, 0, 0))
+                .setSystemTimeEnd(LocalDateTime.of(2020, 1, 15, 3, 30, 0));
+
+        final Trade copy = ModelCopier.forClass(Trade.class).copy(trade);
+
+        assertThat(copy).isNotSameAs(trade).isEqualToComparingFieldByField(trade);
+        assertThat(copy.getBitemporalKey()).isSameAs(trade.getBitemporalKey());
+    }
+
+    @Test
+    void settingAKeyOnTheCopyLeavesTheSourceAlone() {
+        final BitemporalKey key = new BitemporalKey.Builder()
+                .setTradeId(UUID.randomUUID())
+                .setValidTimeStart(LocalDate.of(2020, 1, 14))
+                .setValidTimeEnd(LocalDate.of(2020, 1, 16))
+                .build();
+        final Trade trade = new Trade().setBitemporalKey(key).setStock("AAPL");
+
+        ModelCopier.forClass(Trade.class).copy(trade).setBitemporalKey(new BitemporalKey.Builder()
+                .setTradeId(key.getId())
+                .setValidTimeStart(LocalDate.of(2020, 1, 16))
+                .setValidTimeEnd(LocalDate.of(2020, 1, 20))
+                .build());
+
+        assertThat(trade.getBitemporalKey()).isSameAs(key);
+        assertThat(key.getValidTimeStart()).isEqualTo(LocalDate.of(2020, 1, 14));
+    }
+}
@@ -0,0 +1,67 @@
+package kieranbrown.bitemp.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TradeCsvDecoderTest {
+    private static final UUID ID = UUID.fromString("1c876b60-7cf3-484e-b4d8-aa510838dce0");
+
+    @Test
+    void decodesEveryColumn() {
+        final Trade trade = new TradeCsvDecoder('|', '\'')
+                .apply("B|1c876b60-7cf3-484e-b4d8-aa510838dce0|M|123.45|AAPL|20380119T031407|20200120T101112|2020-01-21|2020-01-20|250");
+
+        assertThat(trade.getBuySellFlag()).isEqualTo('B');
+        assertThat(trade.getMarketLimitFlag()).isEqualTo('M');
+        assertThat(trade.getPrice()).isEqualTo(new BigDecimal("123.45"));
+        assertThat(trade.getStock()).isEqualTo("AAPL");
+        assertThat(trade.getVolume()).isEqualTo(250);
+        assertThat(trade.getSystemTimeStart()).isEqualTo(LocalDateTime.of(2020, 1, 20, 10, 11, 12));
+        assertThat(trade.getSystemTimeEnd()).isEqualTo(LocalDateTime.of(2038, 1, 19, 3, 14, 7));
+        assertThat(trade.getBitemporalKey()).isEqualTo(new BitemporalKey.Builder()
+                .setTradeId(ID)
+                .setValidTimeStart(LocalDate.of(2020, 1, 20))
+                .setValidTimeEnd(LocalDate.of(2020, 1, 21))
+                .build());
+    }
+
+    @Test
+    void decodesQuotedFields() {
+        final Trade trade = new TradeCsvDecoder(',', '"')
+                .apply("\"S\",\"1C876B60-7CF3-484E-B4D8-AA510838DCE0\",\"L\",\"-1.5\",\"GOOGL\",\"20380119T031407\",\"20200120T101112\",\"2020-01-21\",\"2020-01-20\",\"-3\"");
+
+        assertThat(trade.getBuySellFlag()).isEqualTo('S');
+        assertThat(trade.getBitemporalKey().getId()).isEqualTo(ID);
+        assertThat(trade.getPrice()).isEqualTo(new BigDecimal("-1.5"));
+        assertThat(trade.getStock()).isEqualTo("GOOGL");
+        assertThat(trade.getVolume()).isEqualTo(-3);
+    }
+
+    @Test
+    void throwsForTheWrongNumberOfFields() {
+        assertThat(assertThrows(IllegalArgumentException.class, () -> new TradeCsvDecoder('|', '\'').apply("B|M")))
+                .hasMessage("expected 10 fields in line 'B|M'");
+    }
+
+    @Test
+    void throwsForInvalidValues() {
+        final TradeCsvDecoder decoder = new TradeCsvDecoder('|', '\'');
+
+        assertThat(assertThrows(IllegalArgumentException.class, () -> decoder
+                .apply("B|1c876b60-7cf3-484e-b4d8-aa510838dce0|M|123.45|AAPL|20380119T031407|20200120T101112|2020-01-21|2020-01-20|2x0")))
+                .hasMessage("invalid number '2x0'");
+        assertThat(assertThrows(IllegalArgumentException.class, () -> decoder
+                .apply("B|1c876b60|M|123.45|AAPL|20380119T031407|20200120T101112|2020-01-21|2020-01-20|250")))
+                .hasMessage("invalid UUID '1c876b60'");
+        assertThat(assertThrows(IllegalArgumentException.class, () -> decoder
+                .apply("B|1c876b60-7cf3-484e-b4d8-aa510838dce0|M|123.45|AAPL|20380119T031407|20200120T101112|2020-1-21|2020-01-20|250")))
+                .hasMessage("invalid date '2020-1-21'");
+    }
+}
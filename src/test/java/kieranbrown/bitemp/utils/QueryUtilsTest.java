@@ -3,6 +3,8 @@ package kieranbrown.bitemp.utils;
 import org.junit.jupiter.api.Test;
 
 import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.UUID;
@@ -27,9 +29,22 @@ class QueryUtilsTest {
         assertThat(QueryUtils.toString(LocalDateTime.of(2020, 1, 20, 0, 0, 10))).isNotNull().isEqualTo("'2020-01-20 00:00:10.000000'");
     }
 
+    @Test
+    void toStringKeepsMicrosecondPrecision() {
+        assertThat(QueryUtils.toString(LocalDateTime.of(2020, 1, 20, 13, 43, 0, 5_000))).isEqualTo("'2020-01-20 13:43:00.000005'");
+        assertThat(QueryUtils.toString(LocalDateTime.of(2020, 1, 20, 13, 43, 0, 123_456_789))).isEqualTo("'2020-01-20 13:43:00.123456'");
+        assertThat(QueryUtils.toString(LocalDateTime.of(999, 1, 20, 13, 43, 0))).isEqualTo("'0999-01-20 13:43:00.000000'");
+    }
+
     @Test
     void toStringFormatsStringsCorrectly() {
         assertThat(QueryUtils.toString("AMZN")).isNotNull().isEqualTo("'AMZN'");
+        assertThat(QueryUtils.toString("O'Neil")).isEqualTo("'O''Neil'");
+    }
+
+    @Test
+    void toStringFormatsCharactersCorrectly() {
+        assertThat(QueryUtils.toString('B')).isEqualTo("'B'");
     }
 
     @Test
@@ -47,4 +62,22 @@ class QueryUtilsTest {
     void toStringFormatsSqlCurrentTimestampCorrectly() {
         assertThat(QueryUtils.toString("CURRENT_TIMESTAMP")).isNotNull().isEqualTo("CURRENT_TIMESTAMP");
     }
+
+    @Test
+    void toPlaceholderKeepsSqlExpressionsInline() {
+        assertThat(QueryUtils.toPlaceholder("CURRENT_TIMESTAMP")).isEqualTo("CURRENT_TIMESTAMP");
+        assertThat(QueryUtils.toPlaceholder("AMZN")).isEqualTo("?");
+        assertThat(QueryUtils.toPlaceholder(LocalDate.of(2020, 2, 20))).isEqualTo("?");
+    }
+
+    @Test
+    void toJdbcValueConvertsToDriverTypes() {
+        final UUID uuid = UUID.randomUUID();
+        assertThat(QueryUtils.toJdbcValue(uuid)).isEqualTo(uuid.toString());
+        assertThat(QueryUtils.toJdbcValue('B')).isEqualTo("B");
+        assertThat(QueryUtils.toJdbcValue(LocalDate.of(2020, 2, 20))).isEqualTo(Date.valueOf("2020-02-20"));
+        assertThat(QueryUtils.toJdbcValue(LocalDateTime.of(2020, 1, 20, 13, 43, 0)))
+                .isEqualTo(Timestamp.valueOf("2020-01-20 13:43:00"));
+        assertThat(QueryUtils.toJdbcValue(new BigDecimal("123.45"))).isEqualTo(new BigDecimal("123.45"));
+    }
 }
@@ -0,0 +1,48 @@
+package kieranbrown.bitemp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ValueCodecsTest {
+    @Test
+    void forClassThrowsForNullInput() {
+        assertThat(assertThrows(NullPointerException.class, () -> ValueCodecs.forClass(null)))
+                .hasMessage("class cannot be null");
+    }
+
+    @Test
+    void forValueThrowsForNullInput() {
+        assertThat(assertThrows(NullPointerException.class, () -> ValueCodecs.forValue(null)))
+                .hasMessage("input cannot be null");
+    }
+
+    @Test
+    void registeredTypesHaveTheirOwnCodec() {
+        final ValueCodec<Object> fallback = ValueCodecs.forClass(Object.class);
+
+        assertThat(ValueCodecs.forClass(LocalDate.class)).isNotSameAs(fallback);
+        assertThat(ValueCodecs.forClass(LocalDateTime.class)).isNotSameAs(fallback);
+        assertThat(ValueCodecs.forClass(UUID.class)).isNotSameAs(fallback);
+        assertThat(ValueCodecs.forClass(BigDecimal.class)).isNotSameAs(fallback);
+        assertThat(ValueCodecs.forClass(String.class)).isNotSameAs(fallback);
+        assertThat(ValueCodecs.forClass(char.class)).isSameAs(ValueCodecs.forClass(Character.class)).isNotSameAs(fallback);
+        assertThat(ValueCodecs.forClass(Integer.class)).isSameAs(fallback);
+    }
+
+    @Test
+    void appendLiteralWritesIntoExistingBuilder() {
+        final StringBuilder builder = new StringBuilder("volume = ");
+        ValueCodecs.appendLiteral(builder, 200);
+        builder.append(" AND valid_time_start = ");
+        ValueCodecs.appendLiteral(builder, LocalDate.of(2020, 1, 5));
+
+        assertThat(builder.toString()).isEqualTo("volume = 200 AND valid_time_start = '2020-01-05'");
+    }
+}